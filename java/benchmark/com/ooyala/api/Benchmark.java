@@ -0,0 +1,204 @@
+package com.ooyala.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmarked operation, and the harness measuring it.
+ *
+ * The operation runs in a loop on one or more threads: first for the warmup time, so that the JIT compiles it,
+ * then for the measurement time. Operations are timed in batches, sized during the warmup so that a batch takes
+ * at least BATCH_NANOS; this keeps the cost of System.nanoTime() out of the measure of sub-microsecond operations,
+ * while slow operations (i.e. a request) are timed one by one. Results are consumed by a sink, so the JIT can not
+ * drop the operation.
+ */
+abstract class Benchmark {
+
+    /**
+     * Minimum time (in nanoseconds) of a timed batch of operations
+     */
+    private static final long BATCH_NANOS = 20000;
+
+    /**
+     * Consumes the results of the operations
+     */
+    private static volatile int sink;
+
+    /**
+     * The name of the benchmark, i.e. "sign.generateSignature"
+     */
+    final String name;
+
+    /**
+     * Creates a benchmark
+     * @param name The name of the benchmark
+     */
+    Benchmark(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Prepares the benchmark, before the warmup
+     * @throws Exception
+     */
+    void setUp() throws Exception {}
+
+    /**
+     * Runs the operation once
+     * @return the result of the operation, consumed by the sink
+     * @throws Exception
+     */
+    abstract Object run() throws Exception;
+
+    /**
+     * Releases what the benchmark holds, after the measurement
+     * @throws Exception
+     */
+    void tearDown() throws Exception {}
+
+    /**
+     * The measure of a benchmark
+     */
+    static class Result {
+        final String name;
+        final int threads;
+        final long operations;
+        final long elapsedNanos;
+        final LatencyHistogram latency;
+
+        Result(String name, int threads, long operations, long elapsedNanos, LatencyHistogram latency) {
+            this.name = name;
+            this.threads = threads;
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+
+        /**
+         * Gets the throughput
+         * @return the number of operations per second, all threads together
+         */
+        double getOperationsPerSecond() { return operations * 1e9 / elapsedNanos; }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %3d %14.1f %12.1f %12d %12d", name, threads, getOperationsPerSecond(),
+                    (double)latency.getMeanNanos(), latency.getPercentileNanos(50), latency.getPercentileNanos(99));
+        }
+
+        /**
+         * Gets the header of the table of results
+         * @return the header
+         */
+        static String header() {
+            return String.format("%-28s %3s %14s %12s %12s %12s", "benchmark", "thr", "ops/s", "mean ns/op", "p50 ns/op", "p99 ns/op");
+        }
+    }
+
+    /**
+     * Warms up and measures the benchmark
+     * @param threads The number of threads running the operation
+     * @param warmupMillis The warmup time in milliseconds
+     * @param measureMillis The measurement time in milliseconds
+     * @return the measure
+     * @throws Exception if the operation fails
+     */
+    Result measure(int threads, long warmupMillis, long measureMillis) throws Exception {
+        setUp();
+        try {
+            int batch = calibrate();
+            loop(threads, batch, warmupMillis, new LatencyHistogram(), new AtomicLong());
+
+            LatencyHistogram latency = new LatencyHistogram();
+            AtomicLong operations = new AtomicLong();
+            long elapsed = loop(threads, batch, measureMillis, latency, operations);
+            return new Result(name, threads, operations.get(), elapsed, latency);
+        } finally {
+            tearDown();
+        }
+    }
+
+    /**
+     * Finds the number of operations of a batch taking at least BATCH_NANOS
+     * @return the batch size
+     * @throws Exception if the operation fails
+     */
+    private int calibrate() throws Exception {
+        int batch = 1;
+        while (batch < (1 << 20)) {
+            long start = System.nanoTime();
+            runBatch(batch);
+            if (System.nanoTime() - start >= BATCH_NANOS)
+                break;
+            batch *= 2;
+        }
+        return batch;
+    }
+
+    /**
+     * Runs a batch of operations
+     * @param batch The number of operations
+     * @throws Exception if the operation fails
+     */
+    private void runBatch(int batch) throws Exception {
+        int hash = 0;
+        for (int i = 0; i < batch; i++)
+            hash ^= System.identityHashCode(run());
+        sink ^= hash;
+    }
+
+    /**
+     * Runs batches of operations on several threads for a while
+     * @param threads The number of threads
+     * @param batch The number of operations of a batch
+     * @param millis The time to run for
+     * @param latency Receives the time per operation of every batch
+     * @param operations Receives the number of operations
+     * @return the time (in nanoseconds) the threads ran for
+     * @throws Exception if the operation fails
+     */
+    private long loop(int threads, final int batch, long millis, final LatencyHistogram latency, final AtomicLong operations) throws Exception {
+        final long end = System.nanoTime() + millis * 1000000;
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        final List<Exception> failures = new ArrayList<Exception>();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    ready.countDown();
+                    try {
+                        go.await();
+                        long count = 0;
+                        long now = System.nanoTime();
+                        while (now < end) {
+                            long start = now;
+                            runBatch(batch);
+                            now = System.nanoTime();
+                            latency.record((now - start) / batch);
+                            count += batch;
+                        }
+                        operations.addAndGet(count);
+                    } catch (Exception e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            }, name + "-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        long elapsed = System.nanoTime() - start;
+        if (!failures.isEmpty())
+            throw failures.get(0);
+        return elapsed;
+    }
+}
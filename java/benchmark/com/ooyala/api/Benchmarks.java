@@ -0,0 +1,223 @@
+package com.ooyala.api;
+
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.parser.JSONParser;
+
+/**
+ * Benchmarks of the hot paths of the client: signing, URL building, JSON parsing, and whole requests sent
+ * to a local StandInServer (of the tools/ source root).
+ *
+ * Usage: java -cp build:lib/* com.ooyala.api.Benchmarks [-t threads] [-w warmup seconds] [-m measure seconds] [name prefix...]
+ *
+ * Without a name prefix every benchmark runs. Run the end-to-end ones with several threads (i.e. -t 8) to
+ * measure the throughput of a shared OoyalaAPI instance.
+ */
+public class Benchmarks {
+
+    /**
+     * Query parameters of a typical list request
+     */
+    private static HashMap<String, String> listParameters() {
+        HashMap<String, String> parameters = new HashMap<String, String>();
+        parameters.put("where", "labels INCLUDES 'Funny dogs' AND status='live'");
+        parameters.put("orderby", "created_at descending");
+        parameters.put("limit", "500");
+        parameters.put("include", "labels,metadata");
+        parameters.put("page_token", "ZmFrZS1wYWdlLXRva2Vu");
+        return parameters;
+    }
+
+    /**
+     * JSON of an asset, about 700 bytes
+     * @param index Makes the asset unique
+     */
+    private static String assetJSON(int index) {
+        return "{\"embed_code\":\"ZsdGRiMjpm" + index + "XnNLmqlIPAEYiM5xpYoQ\",\"name\":\"Funny dog " + index + "\","
+                + "\"description\":\"A dog doing funny things, with \\\"quotes\\\" and unicode \\u00e9\","
+                + "\"asset_type\":\"video\",\"status\":\"live\",\"duration\":" + (60000 + index) + ",\"original_file_name\":\"dog.mp4\","
+                + "\"preview_image_url\":\"http://cdn.ooyala.com/preview/" + index + ".jpg\",\"created_at\":\"2012-01-26T18:21:00+00:00\","
+                + "\"updated_at\":\"2012-02-01T10:00:00+00:00\",\"time_restrictions\":null,\"external_id\":null,\"hosted_at\":null,"
+                + "\"is_live_stream\":false,\"player_id\":\"a5fa5b1d1a3d4c3a8a3a7d9b6c1f8e2a\",\"publishing_rule_id\":\"f00d\","
+                + "\"labels\":[{\"id\":\"1\",\"name\":\"Funny dogs\"},{\"id\":\"2\",\"name\":\"Pets\"}],"
+                + "\"metadata\":{\"rating\":" + (index % 5) + ",\"featured\":true,\"score\":4.25}}";
+    }
+
+    /**
+     * JSON of a page of a list
+     * @param items The number of items
+     */
+    private static String listJSON(int items) {
+        StringBuilder json = new StringBuilder(items * 720 + 64).append("{\"items\":[");
+        for (int i = 0; i < items; i++)
+            json.append(i > 0 ? "," : "").append(assetJSON(i));
+        return json.append("],\"next_page\":null}").toString();
+    }
+
+    /**
+     * Reads the embed_code and name of every item of a list, like most callers of a listing do
+     * @param list The parsed list
+     * @return the number of characters read
+     */
+    @SuppressWarnings("unchecked")
+    private static int readNames(Object list) {
+        int length = 0;
+        for (Object item : (List<Object>)((Map<String, Object>)list).get("items")) {
+            Map<String, Object> asset = (Map<String, Object>)item;
+            length += ((String)asset.get("embed_code")).length() + ((String)asset.get("name")).length();
+        }
+        return length;
+    }
+
+    /**
+     * Creates every benchmark
+     * @return the benchmarks
+     */
+    private static List<Benchmark> benchmarks() {
+        final OoyalaAPI api = new OoyalaAPI("7ab06", "329b5b204d0f11e0a2d060334bfffe90ab18xqh5");
+        final HashMap<String, String> parameters = listParameters();
+        final HashMap<String, Object> patch = new HashMap<String, Object>();
+        patch.put("name", "Funny dog");
+        patch.put("description", "A dog doing funny things");
+        final String body = listJSON(2).substring(0, 1024);
+        final String asset = assetJSON(1);
+        final String list = listJSON(500);
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new Benchmark("sign.generateSignature") {
+            Object run() throws Exception { return api.generateSignature("GET", "assets", parameters, ""); }
+        });
+        benchmarks.add(new Benchmark("sign.generateSignature.1KB") {
+            Object run() throws Exception { return api.generateSignature("POST", "assets", parameters, body); }
+        });
+        benchmarks.add(new Benchmark("sign.template") {
+            RequestTemplate template;
+            void setUp() throws Exception { template = api.createRequestTemplate("GET", "assets", parameters); }
+            Object run() { return template.generateURL(api.getExpiration(), ""); }
+        });
+        benchmarks.add(new Benchmark("url.buildURL") {
+            Object run() throws Exception { return api.buildURL("GET", "assets", parameters); }
+        });
+        benchmarks.add(new Benchmark("url.appendURIEncoded") {
+            final StringBuilder builder = new StringBuilder(256);
+            Object run() throws Exception {
+                builder.setLength(0);
+                RequestSigner.appendURIEncoded(builder, "labels INCLUDES 'Funny dogs' AND status='live'");
+                RequestSigner.appendURIEncoded(builder, "created_at");
+                return builder;
+            }
+        });
+        benchmarks.add(new Benchmark("parse.asset") {
+            Object run() { return api.parseJSON(asset); }
+        });
+        benchmarks.add(new Benchmark("parse.list500") {
+            Object run() { return api.parseJSON(list); }
+        });
+        benchmarks.add(new Benchmark("parse.list500.lazy") {
+            final byte[] bytes = list.getBytes(Charset.forName("UTF-8"));
+            Object run() { return api.parseLazyJSON(bytes); }
+        });
+        benchmarks.add(new Benchmark("parse.list500.fields") {
+            Object run() { return readNames(api.parseJSON(list)); }
+        });
+        benchmarks.add(new Benchmark("parse.list500.lazy.fields") {
+            final byte[] bytes = list.getBytes(Charset.forName("UTF-8"));
+            Object run() { return readNames(api.parseLazyJSON(bytes)); }
+        });
+        benchmarks.add(new Benchmark("parse.list500.streamed") {
+            final OoyalaItemCallback callback = new OoyalaItemCallback() {
+                public void onItem(Object item) {}
+            };
+            Object run() throws Exception {
+                ItemsContentHandler handler = new ItemsContentHandler(callback);
+                new JSONParser().parse(new StringReader(list), handler);
+                return handler.getResult();
+            }
+        });
+        final HashMap<String, String> listParameters = new HashMap<String, String>(parameters);
+        listParameters.remove("page_token");
+        benchmarks.add(new EndToEndBenchmark("e2e.get.asset", api) {
+            Object run() throws Exception { return api.getRequest("assets/" + embedCode); }
+        });
+        benchmarks.add(new EndToEndBenchmark("e2e.get.list500", api) {
+            Object run() throws Exception { return api.getRequest("assets", listParameters); }
+        });
+        benchmarks.add(new EndToEndBenchmark("e2e.patch.asset", api) {
+            Object run() throws Exception { return api.patchRequest("assets/" + embedCode, patch); }
+        });
+        return benchmarks;
+    }
+
+    /**
+     * Benchmark of requests sent to a StandInServer holding 500 labeled assets, through the shared OoyalaAPI instance.
+     * The server does not compress its responses, so that the benchmarks measure the client.
+     */
+    private static abstract class EndToEndBenchmark extends Benchmark {
+        private final OoyalaAPI api;
+        private StandInServer server;
+
+        /**
+         * Embed code of the asset read and patched
+         */
+        String embedCode;
+
+        EndToEndBenchmark(String name, OoyalaAPI api) {
+            super(name);
+            this.api = api;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void setUp() throws Exception {
+            server = new StandInServer(api.getAPIKey(), api.getSecretKey());
+            server.setCompressingResponses(false);
+            String labelId = server.createLabel("Funny dogs");
+            for (int i = 0; i < 500; i++) {
+                Map<String, Object> asset = (Map<String, Object>)api.parseJSON(assetJSON(i));
+                for (String key : new String[] { "embed_code", "labels", "metadata", "created_at", "updated_at" })
+                    asset.remove(key);
+                embedCode = server.createAsset(asset);
+                server.label(embedCode, labelId);
+            }
+            api.setBaseURL(server.getBaseURL());
+            api.setMaxConnectionsPerRoute(64);
+        }
+
+        @Override
+        void tearDown() throws Exception {
+            server.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = 1;
+        long warmupMillis = 3000;
+        long measureMillis = 5000;
+        List<String> prefixes = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-t"))
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-w"))
+                warmupMillis = (long)(Double.parseDouble(args[++i]) * 1000);
+            else if (args[i].equals("-m"))
+                measureMillis = (long)(Double.parseDouble(args[++i]) * 1000);
+            else
+                prefixes.add(args[i]);
+        }
+
+        System.out.println(Benchmark.Result.header());
+        for (Benchmark benchmark : benchmarks()) {
+            boolean selected = prefixes.isEmpty();
+            for (String prefix : prefixes)
+                selected |= benchmark.name.startsWith(prefix);
+            if (selected)
+                System.out.println(benchmark.measure(threads, warmupMillis, measureMillis));
+        }
+        System.exit(0);
+    }
+}
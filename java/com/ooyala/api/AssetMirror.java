@@ -0,0 +1,794 @@
+package com.ooyala.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Local mirror of the assets of an account, with their labels and custom metadata, kept in a directory and
+ * synchronized incrementally.
+ *
+ * The first sync loads every asset page by page. The next ones only ask for the assets updated since the last
+ * one (where=updated_at>='...'), so polling a large account costs a request or two when little changed. Label and
+ * metadata changes also move the updated_at date of their assets.
+ *
+ * The assets are stored as JSON in an append-only log, keyed by embed code and memory-mapped for reading in
+ * fixed-size regions, so that only the last region is mapped again as the log grows. An updated asset is appended again, and the log is compacted once most of it is stale. Each record carries a
+ * checksum, so a record torn by a crash is dropped when the mirror is opened again, and the date of the last sync
+ * is only saved once the log is on disk. The embed codes by label and by status are indexed in memory, and rebuilt
+ * from the log when the mirror is opened.
+ *
+ * <pre>
+ * AssetMirror mirror = new AssetMirror(api, Paths.get("mirror"));
+ * mirror.sync();
+ * mirror.startPolling(60000);
+ * Map&lt;String, Object&gt; asset = mirror.getAsset(embedCode);
+ * Set&lt;String&gt; live = mirror.getEmbedCodesWithStatus("live");
+ * </pre>
+ *
+ * Deleted assets are not listed by an incremental sync; they are only removed by resync(), which loads every asset
+ * again. Only one mirror at a time can use a directory.
+ */
+public class AssetMirror implements Closeable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Size of the header of a record: its length and its checksum
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * Size of the regions the log is mapped in
+     */
+    private static final int REGION_SIZE = 64 << 20;
+
+    /**
+     * Number of assets per page
+     */
+    private static final String PAGE_SIZE = "500";
+
+    /**
+     * Size of the stale records above which the log is compacted, if they also outweigh the live ones
+     */
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+    private static final String LAST_SYNC = "last_sync";
+
+    /**
+     * The API the assets are loaded from
+     */
+    private final OoyalaAPI api;
+
+    private final Path logFile;
+    private final Path stateFile;
+
+    /**
+     * The lock of the directory
+     */
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    /**
+     * The log of the records: [length][crc32][key length][embed code][asset JSON], empty JSON for a deleted asset
+     */
+    private FileChannel log;
+
+    /**
+     * The log mapped in memory in regions of REGION_SIZE bytes, up to the last record indexed. Only the last
+     * region may be shorter.
+     */
+    private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * Size of the log
+     */
+    private long logSize;
+
+    /**
+     * Size of the records that have been replaced or deleted
+     */
+    private long staleSize;
+
+    /**
+     * The assets, by embed code
+     */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * The embed codes of the assets, by label name, by label id and by status
+     */
+    private final Map<String, Set<String>> byLabelName = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> byLabelId = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> byStatus = new HashMap<String, Set<String>>();
+
+    /**
+     * Guards the store: syncs write, lookups read
+     */
+    private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+
+    /**
+     * Serializes the syncs
+     */
+    private final Object syncLock = new Object();
+
+    /**
+     * Largest updated_at date of the mirrored assets, or null before the first sync
+     */
+    private volatile String lastSync;
+
+    /**
+     * Runs the polling, or null if not polling
+     */
+    private ScheduledExecutorService poller;
+
+    /**
+     * The failure of the last sync run by the polling, or null if it succeeded
+     */
+    private volatile Exception lastFailure;
+
+    private volatile boolean closed;
+
+    /**
+     * Where an asset is in the log, and what it is indexed by
+     */
+    private static class Entry {
+        final long offset;
+        final int size;
+        final String status;
+        final String[] labelNames;
+        final String[] labelIds;
+
+        Entry(long offset, int size, String status, String[] labelNames, String[] labelIds) {
+            this.offset = offset;
+            this.size = size;
+            this.status = status;
+            this.labelNames = labelNames;
+            this.labelIds = labelIds;
+        }
+    }
+
+    /**
+     * Opens the mirror kept in a directory, creating it if needed. The records of the log are checked and
+     * indexed; nothing is requested until sync() is called.
+     * @param api The API the assets are loaded from
+     * @param directory The directory of the mirror
+     * @throws IOException if the directory can not be read, or is used by another mirror
+     */
+    public AssetMirror(OoyalaAPI api, Path directory) throws IOException {
+        this.api = api;
+        Files.createDirectories(directory);
+        logFile = directory.resolve("assets.log");
+        stateFile = directory.resolve("mirror.properties");
+        lockChannel = FileChannel.open(directory.resolve("mirror.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock directoryLock;
+        try {
+            directoryLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            /* already locked by this process */
+            directoryLock = null;
+        }
+        lock = directoryLock;
+        if (lock == null) {
+            lockChannel.close();
+            throw new IOException("The mirror in " + directory + " is used by another process");
+        }
+        try {
+            log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            load();
+            if (Files.exists(stateFile)) {
+                Properties state = new Properties();
+                InputStream in = Files.newInputStream(stateFile);
+                try {
+                    state.load(in);
+                } finally {
+                    in.close();
+                }
+                lastSync = state.getProperty(LAST_SYNC);
+            }
+        } catch (IOException e) {
+            closeFiles();
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches the assets updated since the last sync, or every asset if the mirror is empty, and stores them
+     * @return the number of assets added or changed
+     * @throws IOException if the assets can not be fetched or stored
+     */
+    public int sync() throws IOException {
+        synchronized (syncLock) {
+            String since = lastSync;
+            HashMap<String, String> parameters = new HashMap<String, String>();
+            /* dates have a precision of a second: the assets updated in the second of the last sync are fetched
+               again, since some of them may have been updated after it */
+            if (since != null)
+                parameters.put("where", "updated_at>='" + since + "'");
+            return load(parameters, null);
+        }
+    }
+
+    /**
+     * Fetches every asset again, and removes the assets that no longer exist
+     * @return the number of assets added, changed or removed
+     * @throws IOException if the assets can not be fetched or stored
+     */
+    public int resync() throws IOException {
+        synchronized (syncLock) {
+            Set<String> seen = new HashSet<String>();
+            int changed = load(new HashMap<String, String>(), seen);
+            List<String> removed = new ArrayList<String>();
+            storeLock.readLock().lock();
+            try {
+                for (String embedCode : entries.keySet()) {
+                    if (!seen.contains(embedCode))
+                        removed.add(embedCode);
+                }
+            } finally {
+                storeLock.readLock().unlock();
+            }
+            if (!removed.isEmpty()) {
+                Map<String, byte[]> deletions = new HashMap<String, byte[]>();
+                for (String embedCode : removed)
+                    deletions.put(embedCode, new byte[0]);
+                store(deletions);
+                commit(lastSync);
+            }
+            return changed + removed.size();
+        }
+    }
+
+    /**
+     * Syncs in the background, every period. A failed sync is reported by getLastFailure() and tried again at the
+     * next period.
+     * @param periodMillis The time between the end of a sync and the start of the next one, in milliseconds
+     */
+    public synchronized void startPolling(long periodMillis) {
+        if (closed)
+            throw new IllegalStateException("The mirror has been closed");
+        stopPolling();
+        poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ooyala-asset-mirror");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        poller.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    sync();
+                    lastFailure = null;
+                } catch (Exception e) {
+                    lastFailure = e;
+                }
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the polling. A sync in progress completes.
+     */
+    public synchronized void stopPolling() {
+        if (poller != null)
+            poller.shutdown();
+        poller = null;
+    }
+
+    /**
+     * Gets the failure of the last sync run by the polling
+     * @return the failure, or null if the last sync succeeded
+     */
+    public Exception getLastFailure() { return lastFailure; }
+
+    /**
+     * Gets the largest updated_at date of the mirrored assets, from which the next sync starts
+     * @return the date, or null before the first sync
+     */
+    public String getLastSync() { return lastSync; }
+
+    /**
+     * Gets an asset
+     * @param embedCode The embed code of the asset
+     * @return the asset, with its "labels" and "metadata", as a read-only view decoded when accessed (see LazyJSON),
+     * or null if it is not mirrored
+     * @throws IOException if the record can not be decoded
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getAsset(String embedCode) throws IOException {
+        byte[] json;
+        storeLock.readLock().lock();
+        try {
+            Entry entry = entries.get(embedCode);
+            if (entry == null)
+                return null;
+            json = readJSON(entry.offset, entry.size);
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        try {
+            return (Map<String, Object>)LazyJSON.parse(json);
+        } catch (ParseException e) {
+            throw new IOException("The record of " + embedCode + " is not valid JSON", e);
+        }
+    }
+
+    /**
+     * Gets the embed codes of the assets having a label
+     * @param labelName The name of the label
+     * @return the embed codes
+     */
+    public Set<String> getEmbedCodesWithLabel(String labelName) { return lookup(byLabelName, labelName); }
+
+    /**
+     * Gets the embed codes of the assets having a label
+     * @param labelId The id of the label
+     * @return the embed codes
+     */
+    public Set<String> getEmbedCodesWithLabelId(String labelId) { return lookup(byLabelId, labelId); }
+
+    /**
+     * Gets the embed codes of the assets with a status
+     * @param status The status (i.e. "live")
+     * @return the embed codes
+     */
+    public Set<String> getEmbedCodesWithStatus(String status) { return lookup(byStatus, status); }
+
+    /**
+     * Gets the embed codes of the mirrored assets
+     * @return the embed codes
+     */
+    public Set<String> getEmbedCodes() {
+        storeLock.readLock().lock();
+        try {
+            return new HashSet<String>(entries.keySet());
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of mirrored assets
+     * @return the number of assets
+     */
+    public int size() {
+        storeLock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the current records
+     * @throws IOException if the log can not be rewritten
+     */
+    public void compact() throws IOException {
+        storeLock.writeLock().lock();
+        try {
+            if (closed)
+                throw new IOException("The mirror has been closed");
+            Path temporary = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+            FileChannel compacted = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            Map<String, Entry> moved = new HashMap<String, Entry>();
+            long position = 0;
+            try {
+                for (Map.Entry<String, Entry> asset : entries.entrySet()) {
+                    Entry entry = asset.getValue();
+                    ByteBuffer record = read(entry.offset, entry.size);
+                    while (record.hasRemaining())
+                        compacted.write(record);
+                    moved.put(asset.getKey(), new Entry(position, entry.size, entry.status, entry.labelNames, entry.labelIds));
+                    position += entry.size;
+                }
+                compacted.force(true);
+            } finally {
+                compacted.close();
+            }
+            log.close();
+            regions.clear();
+            boolean replaced = false;
+            try {
+                Files.move(temporary, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                replaced = true;
+            } finally {
+                /* the previous log is used again if it could not be replaced */
+                log = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                if (replaced) {
+                    entries.putAll(moved);
+                    logSize = position;
+                    staleSize = 0;
+                }
+                remap();
+            }
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stops the polling and closes the files. A sync in progress completes first.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            stopPolling();
+        }
+        synchronized (syncLock) {
+            storeLock.writeLock().lock();
+            try {
+                closeFiles();
+            } finally {
+                storeLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Fetches the pages of assets and stores the ones that changed, then saves the date of the sync
+     * @param parameters The query parameters of the first page, besides the included fields and the page size
+     * @param seen Receives the embed codes of the fetched assets, or null
+     * @return the number of assets added or changed
+     */
+    private int load(HashMap<String, String> parameters, Set<String> seen) throws IOException {
+        parameters.put("include", "labels,metadata");
+        parameters.put("limit", PAGE_SIZE);
+        String newestUpdate = lastSync;
+        int changed = 0;
+        Map<String, byte[]> batch = new HashMap<String, byte[]>();
+        PagedIterator assets = api.getPagedRequest("assets", parameters);
+        try {
+            int pageCount = 0;
+            while (assets.hasNext()) {
+                /* the assets are stored a page at a time, while the next page is fetched */
+                if (assets.getPageCount() != pageCount) {
+                    pageCount = assets.getPageCount();
+                    changed += store(batch);
+                    batch.clear();
+                }
+                HashMap<String, Object> asset = assets.next();
+                String embedCode = (String)asset.get("embed_code");
+                String updatedAt = (String)asset.get("updated_at");
+                if (updatedAt != null && (newestUpdate == null || updatedAt.compareTo(newestUpdate) > 0))
+                    newestUpdate = updatedAt;
+                if (seen != null)
+                    seen.add(embedCode);
+                batch.put(embedCode, JSONValue.toJSONString(asset).getBytes(UTF8));
+            }
+        } catch (PageRequestException e) {
+            throw new IOException("Could not fetch the assets", e.getCause());
+        } finally {
+            assets.close();
+        }
+        changed += store(batch);
+        commit(newestUpdate);
+        return changed;
+    }
+
+    /**
+     * Appends the records of the assets that changed, and indexes them
+     * @param assets The JSON of the assets by embed code, empty for a deleted asset
+     * @return the number of assets added, changed or deleted
+     */
+    private int store(Map<String, byte[]> assets) throws IOException {
+        if (assets.isEmpty())
+            return 0;
+        storeLock.writeLock().lock();
+        try {
+            if (closed)
+                throw new IOException("The mirror has been closed");
+            List<byte[]> records = new ArrayList<byte[]>();
+            int size = 0;
+            for (Map.Entry<String, byte[]> asset : assets.entrySet()) {
+                Entry entry = entries.get(asset.getKey());
+                byte[] json = asset.getValue();
+                if (entry == null ? json.length == 0 : Arrays.equals(readJSON(entry.offset, entry.size), json))
+                    continue;
+                byte[] record = record(asset.getKey(), json);
+                records.add(record);
+                size += record.length;
+            }
+            if (records.isEmpty())
+                return 0;
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (byte[] record : records)
+                buffer.put(record);
+            buffer.flip();
+            long position = logSize;
+            while (buffer.hasRemaining())
+                position += log.write(buffer, position);
+            long offset = logSize;
+            logSize = position;
+            remap();
+            for (byte[] record : records) {
+                index(offset, record.length);
+                offset += record.length;
+            }
+            return records.size();
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes the log to disk, saves the date of the sync and compacts the log if most of it is stale
+     * @param newestUpdate The largest updated_at date of the mirrored assets
+     */
+    private void commit(String newestUpdate) throws IOException {
+        storeLock.readLock().lock();
+        try {
+            if (closed)
+                throw new IOException("The mirror has been closed");
+            log.force(false);
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        if (newestUpdate != null) {
+            Properties state = new Properties();
+            state.setProperty(LAST_SYNC, newestUpdate);
+            Path temporary = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+            OutputStream out = Files.newOutputStream(temporary);
+            try {
+                state.store(out, "Ooyala asset mirror");
+            } finally {
+                out.close();
+            }
+            Files.move(temporary, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastSync = newestUpdate;
+        }
+        if (staleSize > MIN_COMPACTION_SIZE && staleSize > logSize - staleSize)
+            compact();
+    }
+
+    /**
+     * Reads the log when the mirror is opened: checks the records, truncates a record torn by a crash, and
+     * indexes the others
+     */
+    private void load() throws IOException {
+        logSize = log.size();
+        remap();
+        long offset = 0;
+        while (offset < logSize) {
+            int size = checkRecord(offset);
+            if (size < 0)
+                break;
+            index(offset, size);
+            offset += size;
+        }
+        if (offset < logSize) {
+            log.truncate(offset);
+            logSize = offset;
+            remap();
+        }
+    }
+
+    /**
+     * Checks a record of the log
+     * @param offset The offset of the record
+     * @return the size of the record, or -1 if it is torn or corrupt
+     */
+    private int checkRecord(long offset) {
+        if (logSize - offset < HEADER_SIZE + 2)
+            return -1;
+        ByteBuffer header = read(offset, HEADER_SIZE);
+        int length = header.getInt(0);
+        if (length < 2 || length > logSize - offset - HEADER_SIZE)
+            return -1;
+        byte[] content = new byte[length];
+        read(offset + HEADER_SIZE, length).get(content);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        if ((int)crc.getValue() != header.getInt(4))
+            return -1;
+        return HEADER_SIZE + length;
+    }
+
+    /**
+     * Indexes a record of the log, replacing the previous record of its asset. The store is locked.
+     * @param offset The offset of the record
+     * @param size The size of the record
+     */
+    @SuppressWarnings("unchecked")
+    private void index(long offset, int size) throws IOException {
+        ByteBuffer record = read(offset, size);
+        record.position(HEADER_SIZE);
+        byte[] key = new byte[record.getShort() & 0xffff];
+        record.get(key);
+        String embedCode = new String(key, UTF8);
+        Entry previous = entries.remove(embedCode);
+        if (previous != null) {
+            staleSize += previous.size;
+            unindex(embedCode, byStatus, previous.status);
+            for (String name : previous.labelNames)
+                unindex(embedCode, byLabelName, name);
+            for (String id : previous.labelIds)
+                unindex(embedCode, byLabelId, id);
+        }
+        byte[] json = readJSON(offset, size);
+        if (json.length == 0) {
+            staleSize += size;
+            return;
+        }
+        Map<String, Object> asset;
+        try {
+            asset = (Map<String, Object>)LazyJSON.parse(json);
+        } catch (ParseException e) {
+            throw new IOException("The record of " + embedCode + " is not valid JSON", e);
+        }
+        String status = (String)asset.get("status");
+        List<String> labelNames = new ArrayList<String>();
+        List<String> labelIds = new ArrayList<String>();
+        List<Object> labels = (List<Object>)asset.get("labels");
+        if (labels != null) {
+            for (Object label : labels) {
+                Map<String, Object> properties = (Map<String, Object>)label;
+                if (properties.get("name") != null)
+                    labelNames.add((String)properties.get("name"));
+                if (properties.get("id") != null)
+                    labelIds.add((String)properties.get("id"));
+            }
+        }
+        Entry entry = new Entry(offset, size, status, labelNames.toArray(new String[labelNames.size()]), labelIds.toArray(new String[labelIds.size()]));
+        entries.put(embedCode, entry);
+        index(embedCode, byStatus, status);
+        for (String name : entry.labelNames)
+            index(embedCode, byLabelName, name);
+        for (String id : entry.labelIds)
+            index(embedCode, byLabelId, id);
+    }
+
+    private static void index(String embedCode, Map<String, Set<String>> index, String value) {
+        if (value == null)
+            return;
+        Set<String> embedCodes = index.get(value);
+        if (embedCodes == null)
+            index.put(value, embedCodes = new LinkedHashSet<String>());
+        embedCodes.add(embedCode);
+    }
+
+    private static void unindex(String embedCode, Map<String, Set<String>> index, String value) {
+        if (value == null)
+            return;
+        Set<String> embedCodes = index.get(value);
+        if (embedCodes != null && embedCodes.remove(embedCode) && embedCodes.isEmpty())
+            index.remove(value);
+    }
+
+    private Set<String> lookup(Map<String, Set<String>> index, String value) {
+        storeLock.readLock().lock();
+        try {
+            Set<String> embedCodes = index.get(value);
+            return (embedCodes != null) ? new LinkedHashSet<String>(embedCodes) : Collections.<String>emptySet();
+        } finally {
+            storeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the asset JSON of a record. The store is locked.
+     * @param offset The offset of the record
+     * @param size The size of the record
+     * @return the JSON, empty for a deleted asset
+     */
+    private byte[] readJSON(long offset, int size) {
+        ByteBuffer record = read(offset, size);
+        record.position(HEADER_SIZE);
+        int keyLength = record.getShort() & 0xffff;
+        byte[] json = new byte[size - HEADER_SIZE - 2 - keyLength];
+        record.position(record.position() + keyLength);
+        record.get(json);
+        return json;
+    }
+
+    /**
+     * Builds a record of the log
+     * @param embedCode The embed code of the asset
+     * @param json The JSON of the asset, empty if it has been deleted
+     * @return the record
+     */
+    private static byte[] record(String embedCode, byte[] json) {
+        byte[] key = embedCode.getBytes(UTF8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + 2 + key.length + json.length);
+        record.putInt(2 + key.length + json.length);
+        record.putInt(0);
+        record.putShort((short)key.length);
+        record.put(key);
+        record.put(json);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, record.capacity() - HEADER_SIZE);
+        record.putInt(4, (int)crc.getValue());
+        return record.array();
+    }
+
+    /**
+     * Maps the log in memory again, after it grew or shrank. The full regions already mapped are kept; the last
+     * region is only mapped again if its size changed, so mapping the log after each page costs at most a region.
+     */
+    private void remap() throws IOException {
+        int count = (int)((logSize + REGION_SIZE - 1) / REGION_SIZE);
+        while (regions.size() > count)
+            regions.remove(regions.size() - 1);
+        for (int i = 0; i < count; i++) {
+            long start = (long)i * REGION_SIZE;
+            long size = Math.min(REGION_SIZE, logSize - start);
+            if (i < regions.size() && regions.get(i).capacity() == size)
+                continue;
+            MappedByteBuffer region = log.map(FileChannel.MapMode.READ_ONLY, start, size);
+            if (i < regions.size())
+                regions.set(i, region);
+            else
+                regions.add(region);
+        }
+    }
+
+    /**
+     * Reads a range of the log. The store is locked.
+     * @param offset The offset of the range
+     * @param length The length of the range
+     * @return the range, from position 0: a view of its region, or a copy if it spans two regions
+     */
+    private ByteBuffer read(long offset, int length) {
+        int index = (int)(offset / REGION_SIZE);
+        int position = (int)(offset % REGION_SIZE);
+        ByteBuffer region = regions.get(index).duplicate();
+        if (position + length <= region.capacity()) {
+            region.position(position).limit(position + length);
+            return region.slice();
+        }
+        ByteBuffer range = ByteBuffer.allocate(length);
+        while (range.hasRemaining()) {
+            region.position(position).limit(Math.min(region.capacity(), position + range.remaining()));
+            range.put(region);
+            if (range.hasRemaining())
+                region = regions.get(++index).duplicate();
+            position = 0;
+        }
+        range.flip();
+        return range;
+    }
+
+    private void closeFiles() throws IOException {
+        regions.clear();
+        try {
+            if (log != null)
+                log.close();
+        } finally {
+            lock.release();
+            lockChannel.close();
+        }
+    }
+}
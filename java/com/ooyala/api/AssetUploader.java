@@ -0,0 +1,365 @@
+package com.ooyala.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Uploads a (large) file as a new asset, sending its chunks in parallel.
+ *
+ * The upload follows the V2 API flow: the asset is created with its file size and chunk size,
+ * its uploading URLs are requested, every chunk is PUT to its URL and the upload status is
+ * finally set to "uploaded". Chunks are streamed straight from the file, each one is retried
+ * on its own when it fails, and the chunks already sent can be recorded in a progress file so
+ * that an interrupted upload resumes where it stopped.
+ *
+ * Remember to raise OoyalaAPI.setMaxConnectionsPerRoute if the concurrency is above its value.
+ */
+public class AssetUploader {
+
+    /**
+     * Progress file keys
+     */
+    private static final String PROGRESS_FILE = "file";
+    private static final String PROGRESS_FILE_SIZE = "file_size";
+    private static final String PROGRESS_CHUNK_SIZE = "chunk_size";
+    private static final String PROGRESS_EMBED_CODE = "embed_code";
+    private static final String PROGRESS_CHUNKS = "uploaded_chunks";
+
+    /**
+     * The API used to create the asset and send the chunks
+     */
+    private final OoyalaAPI api;
+
+    /**
+     * Size (in bytes) of each chunk. Defaults: 8MB
+     */
+    private long chunkSize;
+
+    /**
+     * Number of chunks sent at the same time. Defaults: 4
+     */
+    private int concurrency;
+
+    /**
+     * Number of times a failed chunk is retried. Defaults: 3
+     */
+    private int maxRetries;
+
+    /**
+     * Time (in milliseconds) to wait before the first retry of a chunk, doubled on every retry. Defaults: 1000
+     */
+    private long retryDelay;
+
+    /**
+     * File where the progress of the upload is recorded, or null to not record it
+     */
+    private Path progressFile;
+
+    /**
+     * Creates an uploader
+     * @param api The API used to create the asset and send the chunks
+     */
+    public AssetUploader(OoyalaAPI api) {
+        this.api = api;
+        chunkSize = 8 * 1024 * 1024;
+        concurrency = 4;
+        maxRetries = 3;
+        retryDelay = 1000;
+    }
+
+    /**
+     * Gets the size (in bytes) of each chunk
+     * @return the chunk size
+     */
+    public long getChunkSize() { return chunkSize; }
+
+    /**
+     * Sets the size (in bytes) of each chunk
+     * @param chunkSize The chunk size
+     */
+    public void setChunkSize(long chunkSize) { this.chunkSize = chunkSize; }
+
+    /**
+     * Gets the number of chunks sent at the same time
+     * @return the concurrency
+     */
+    public int getConcurrency() { return concurrency; }
+
+    /**
+     * Sets the number of chunks sent at the same time
+     * @param concurrency The concurrency
+     */
+    public void setConcurrency(int concurrency) { this.concurrency = concurrency; }
+
+    /**
+     * Gets the number of times a failed chunk is retried
+     * @return the maximum number of retries
+     */
+    public int getMaxRetries() { return maxRetries; }
+
+    /**
+     * Sets the number of times a failed chunk is retried
+     * @param maxRetries The maximum number of retries
+     */
+    public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
+
+    /**
+     * Gets the time (in milliseconds) to wait before the first retry of a chunk
+     * @return the retry delay
+     */
+    public long getRetryDelay() { return retryDelay; }
+
+    /**
+     * Sets the time (in milliseconds) to wait before the first retry of a chunk. It is doubled on every retry.
+     * @param retryDelay The retry delay
+     */
+    public void setRetryDelay(long retryDelay) { this.retryDelay = retryDelay; }
+
+    /**
+     * Gets the file where the progress of the upload is recorded
+     * @return the progress file, or null if the progress is not recorded
+     */
+    public Path getProgressFile() { return progressFile; }
+
+    /**
+     * Sets the file where the progress of the upload is recorded. If it holds the progress of a previous
+     * upload of the same file, the upload resumes with the chunks that were not sent. The file is deleted
+     * once the upload completes.
+     * @param progressFile The progress file, or null to not record the progress
+     */
+    public void setProgressFile(Path progressFile) { this.progressFile = progressFile; }
+
+    /**
+     * Uploads a file as a new video asset
+     * @param file The file to upload
+     * @param name The name of the asset
+     * @return The embed code of the asset
+     * @throws IOException if the file can not be read or a chunk can not be sent after all its retries
+     * @throws HttpStatusCodeException if the asset can not be created or its upload status can not be set
+     * @throws NoSuchAlgorithmException
+     */
+    public String upload(Path file, String name) throws IOException, HttpStatusCodeException, NoSuchAlgorithmException {
+        HashMap<String, Object> asset = new HashMap<String, Object>();
+        asset.put("name", name);
+        asset.put("asset_type", "video");
+        return upload(file, asset);
+    }
+
+    /**
+     * Uploads a file as a new asset
+     * @param file The file to upload
+     * @param asset The properties of the asset (i.e. name, asset_type). The file_name, file_size and chunk_size are added to them.
+     * @return The embed code of the asset
+     * @throws IOException if the file can not be read or a chunk can not be sent after all its retries
+     * @throws HttpStatusCodeException if the asset can not be created or its upload status can not be set
+     * @throws NoSuchAlgorithmException
+     */
+    @SuppressWarnings("unchecked")
+    public String upload(Path file, HashMap<String, Object> asset) throws IOException, HttpStatusCodeException, NoSuchAlgorithmException {
+        long fileSize = Files.size(file);
+        int chunkCount = (int)Math.max(1, (fileSize + chunkSize - 1) / chunkSize);
+
+        Properties progress = loadProgress(file, fileSize);
+        String embedCode = progress.getProperty(PROGRESS_EMBED_CODE);
+        BitSet uploaded = parseChunks(progress.getProperty(PROGRESS_CHUNKS, ""));
+
+        if (embedCode == null) {
+            HashMap<String, Object> properties = new HashMap<String, Object>(asset);
+            if (!properties.containsKey("asset_type"))
+                properties.put("asset_type", "video");
+            properties.put("file_name", file.getFileName().toString());
+            properties.put("file_size", fileSize);
+            properties.put("chunk_size", chunkSize);
+            Map<String, Object> created = (Map<String, Object>)api.postRequest("assets", properties);
+            embedCode = (String)created.get("embed_code");
+            progress.setProperty(PROGRESS_EMBED_CODE, embedCode);
+            saveProgress(progress);
+        }
+
+        List<Object> uploadingURLs = (List<Object>)api.getRequest("assets/" + embedCode + "/uploading_urls");
+        if (uploadingURLs == null || uploadingURLs.size() != chunkCount)
+            throw new IOException(String.format("Expected %d uploading URLs for asset %s but got %s", chunkCount, embedCode, (uploadingURLs == null) ? "none" : uploadingURLs.size()));
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, chunkCount)));
+        try {
+            List<Future<Void>> chunks = new ArrayList<Future<Void>>();
+            for (int i = 0; i < chunkCount; i++) {
+                if (uploaded.get(i))
+                    continue;
+                long position = i * chunkSize;
+                chunks.add(executor.submit(uploadChunk(channel, i, position, Math.min(chunkSize, fileSize - position),
+                        (String)uploadingURLs.get(i), progress, uploaded)));
+            }
+            for (Future<Void> chunk : chunks)
+                await(chunk);
+        } finally {
+            executor.shutdownNow();
+            channel.close();
+        }
+
+        HashMap<String, Object> status = new HashMap<String, Object>();
+        status.put("status", "uploaded");
+        api.putRequest("assets/" + embedCode + "/upload_status", status);
+
+        if (progressFile != null)
+            Files.deleteIfExists(progressFile);
+        return embedCode;
+    }
+
+    /**
+     * Creates the task sending one chunk, with its retries
+     * @param channel The channel of the file
+     * @param index The index of the chunk
+     * @param position The position of the chunk in the file
+     * @param size The size of the chunk
+     * @param url The uploading URL of the chunk
+     * @param progress The progress of the upload
+     * @param uploaded The chunks already sent
+     * @return the task
+     */
+    private Callable<Void> uploadChunk(final FileChannel channel, final int index, final long position, final long size,
+            final String url, final Properties progress, final BitSet uploaded) {
+        return new Callable<Void>() {
+            public Void call() throws Exception {
+                long delay = retryDelay;
+                for (int attempt = 0; ; attempt++) {
+                    try {
+                        api.sendEntity("PUT", url, new FileChannelEntity(channel, position, size));
+                        break;
+                    } catch (IOException e) {
+                        if (attempt >= maxRetries)
+                            throw e;
+                    } catch (HttpStatusCodeException e) {
+                        if (attempt >= maxRetries || (e.getCode() >= 400 && e.getCode() < 500 && e.getCode() != 408 && e.getCode() != 429))
+                            throw e;
+                    }
+                    Thread.sleep(delay);
+                    delay *= 2;
+                }
+                synchronized (progress) {
+                    uploaded.set(index);
+                    progress.setProperty(PROGRESS_CHUNKS, formatChunks(uploaded));
+                    saveProgress(progress);
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Waits for a chunk to be sent
+     * @param chunk The task sending the chunk
+     * @throws IOException if the chunk could not be sent
+     * @throws HttpStatusCodeException if the chunk was rejected
+     */
+    private void await(Future<Void> chunk) throws IOException, HttpStatusCodeException {
+        try {
+            chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpStatusCodeException)
+                throw (HttpStatusCodeException)cause;
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            throw new IOException("Could not upload a chunk", cause);
+        }
+    }
+
+    /**
+     * Loads the progress of a previous upload of the same file with the same chunk size
+     * @param file The file to upload
+     * @param fileSize The size of the file
+     * @return the progress, empty if there is no previous upload
+     * @throws IOException if the progress file can not be read
+     */
+    private Properties loadProgress(Path file, long fileSize) throws IOException {
+        Properties progress = new Properties();
+        if (progressFile != null && Files.exists(progressFile)) {
+            InputStream in = Files.newInputStream(progressFile);
+            try {
+                progress.load(in);
+            } finally {
+                in.close();
+            }
+            boolean sameUpload = file.toAbsolutePath().toString().equals(progress.getProperty(PROGRESS_FILE))
+                    && String.valueOf(fileSize).equals(progress.getProperty(PROGRESS_FILE_SIZE))
+                    && String.valueOf(chunkSize).equals(progress.getProperty(PROGRESS_CHUNK_SIZE));
+            if (sameUpload)
+                return progress;
+            progress.clear();
+        }
+        progress.setProperty(PROGRESS_FILE, file.toAbsolutePath().toString());
+        progress.setProperty(PROGRESS_FILE_SIZE, String.valueOf(fileSize));
+        progress.setProperty(PROGRESS_CHUNK_SIZE, String.valueOf(chunkSize));
+        return progress;
+    }
+
+    /**
+     * Records the progress of the upload, replacing the progress file atomically
+     * @param progress The progress
+     * @throws IOException if the progress file can not be written
+     */
+    private void saveProgress(Properties progress) throws IOException {
+        if (progressFile == null)
+            return;
+        Path temporary = progressFile.resolveSibling(progressFile.getFileName() + ".tmp");
+        OutputStream out = Files.newOutputStream(temporary);
+        try {
+            progress.store(out, "Ooyala asset upload progress");
+        } finally {
+            out.close();
+        }
+        Files.move(temporary, progressFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Parses the list of chunks already sent
+     * @param chunks The comma separated chunk indexes
+     * @return the chunks
+     */
+    private static BitSet parseChunks(String chunks) {
+        BitSet uploaded = new BitSet();
+        for (String index : chunks.split(",")) {
+            if (!index.isEmpty())
+                uploaded.set(Integer.parseInt(index.trim()));
+        }
+        return uploaded;
+    }
+
+    /**
+     * Formats the list of chunks already sent
+     * @param uploaded The chunks
+     * @return the comma separated chunk indexes
+     */
+    private static String formatChunks(BitSet uploaded) {
+        StringBuilder chunks = new StringBuilder();
+        for (int i = uploaded.nextSetBit(0); i >= 0; i = uploaded.nextSetBit(i + 1)) {
+            if (chunks.length() > 0)
+                chunks.append(',');
+            chunks.append(i);
+        }
+        return chunks.toString();
+    }
+}
@@ -0,0 +1,109 @@
+package com.ooyala.api;
+
+import java.util.HashMap;
+
+/**
+ * One request of a bulk operation: an HTTP method, a path, query parameters and a body.
+ */
+public class BulkOperation {
+
+    /**
+     * The HTTP method (verb)
+     */
+    private final String HTTPMethod;
+
+    /**
+     * The request path
+     */
+    private final String requestPath;
+
+    /**
+     * The query parameters
+     */
+    private final HashMap<String, String> parameters;
+
+    /**
+     * The request's body, may be null
+     */
+    private final HashMap<String, Object> requestBody;
+
+    /**
+     * Creates an operation
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters, may be null
+     * @param requestBody The request's body, may be null
+     */
+    public BulkOperation(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody) {
+        this.HTTPMethod = HTTPMethod;
+        this.requestPath = requestPath;
+        this.parameters = (parameters != null) ? parameters : new HashMap<String, String>();
+        this.requestBody = requestBody;
+    }
+
+    /**
+     * Creates a PATCH operation
+     * @param requestPath The request path
+     * @param requestBody The properties to change
+     * @return the operation
+     */
+    public static BulkOperation patch(String requestPath, HashMap<String, Object> requestBody) {
+        return new BulkOperation("PATCH", requestPath, null, requestBody);
+    }
+
+    /**
+     * Creates a PUT operation
+     * @param requestPath The request path
+     * @param requestBody The request's body
+     * @return the operation
+     */
+    public static BulkOperation put(String requestPath, HashMap<String, Object> requestBody) {
+        return new BulkOperation("PUT", requestPath, null, requestBody);
+    }
+
+    /**
+     * Creates a POST operation
+     * @param requestPath The request path
+     * @param requestBody The request's body
+     * @return the operation
+     */
+    public static BulkOperation post(String requestPath, HashMap<String, Object> requestBody) {
+        return new BulkOperation("POST", requestPath, null, requestBody);
+    }
+
+    /**
+     * Creates a DELETE operation
+     * @param requestPath The request path
+     * @return the operation
+     */
+    public static BulkOperation delete(String requestPath) {
+        return new BulkOperation("DELETE", requestPath, null, null);
+    }
+
+    /**
+     * Gets the HTTP method (verb)
+     * @return the HTTP method
+     */
+    public String getHTTPMethod() { return HTTPMethod; }
+
+    /**
+     * Gets the request path
+     * @return the request path
+     */
+    public String getRequestPath() { return requestPath; }
+
+    /**
+     * Gets the query parameters
+     * @return the query parameters
+     */
+    public HashMap<String, String> getParameters() { return parameters; }
+
+    /**
+     * Gets the request's body
+     * @return the body, or null if there is none
+     */
+    public HashMap<String, Object> getRequestBody() { return requestBody; }
+
+    @Override
+    public String toString() { return HTTPMethod + " " + requestPath; }
+}
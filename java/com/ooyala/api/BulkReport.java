@@ -0,0 +1,93 @@
+package com.ooyala.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Progress and outcome of a bulk request: how many operations completed, how many failed and why.
+ *
+ * Only the failed operations are kept, so that a report over tens of thousands of operations stays small;
+ * use an OoyalaBulkCallback to get the responses of the successful ones.
+ */
+public class BulkReport {
+
+    /**
+     * Number of operations completed, successfully or not
+     */
+    private long completed;
+
+    /**
+     * Number of operations that failed
+     */
+    private long failed;
+
+    /**
+     * The results of the failed operations, in completion order
+     */
+    private final List<BulkResult> failures = new ArrayList<BulkResult>();
+
+    /**
+     * Time (System.nanoTime()) the bulk request started
+     */
+    private final long start = System.nanoTime();
+
+    /**
+     * Time (in nanoseconds) the bulk request took, or -1 while it runs
+     */
+    private long elapsedNanos = -1;
+
+    /**
+     * Records the result of an operation
+     * @param result The result
+     */
+    synchronized void add(BulkResult result) {
+        completed++;
+        if (!result.isOK()) {
+            failed++;
+            failures.add(result);
+        }
+    }
+
+    /**
+     * Marks the bulk request as finished
+     */
+    synchronized void finish() { elapsedNanos = System.nanoTime() - start; }
+
+    /**
+     * Gets the number of operations completed, successfully or not
+     * @return the number of operations
+     */
+    public synchronized long getCompleted() { return completed; }
+
+    /**
+     * Gets the number of operations that succeeded
+     * @return the number of operations
+     */
+    public synchronized long getSucceeded() { return completed - failed; }
+
+    /**
+     * Gets the number of operations that failed
+     * @return the number of operations
+     */
+    public synchronized long getFailed() { return failed; }
+
+    /**
+     * Gets the results of the failed operations
+     * @return the results, in completion order
+     */
+    public synchronized List<BulkResult> getFailures() { return Collections.unmodifiableList(new ArrayList<BulkResult>(failures)); }
+
+    /**
+     * Gets the time the bulk request took
+     * @return the elapsed time in milliseconds, or the time elapsed so far while it runs
+     */
+    public synchronized long getElapsedMillis() {
+        return ((elapsedNanos >= 0) ? elapsedNanos : System.nanoTime() - start) / 1000000;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d completed, %d succeeded, %d failed in %d ms", completed, completed - failed, failed, getElapsedMillis());
+    }
+}
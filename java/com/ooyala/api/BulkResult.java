@@ -0,0 +1,72 @@
+package com.ooyala.api;
+
+/**
+ * The outcome of one operation of a bulk request: either the response of the API or the exception the
+ * request failed with.
+ */
+public class BulkResult {
+
+    /**
+     * The operation
+     */
+    private final BulkOperation operation;
+
+    /**
+     * Position of the operation among the ones of the bulk request, starting at 0
+     */
+    private final long index;
+
+    /**
+     * The response, or null if the request failed
+     */
+    private final OoyalaResponse response;
+
+    /**
+     * The exception the request failed with, or null if it succeeded
+     */
+    private final Exception exception;
+
+    /**
+     * Creates a result
+     * @param operation The operation
+     * @param index The position of the operation
+     * @param response The response, or null if the request failed
+     * @param exception The exception the request failed with, or null if it succeeded
+     */
+    BulkResult(BulkOperation operation, long index, OoyalaResponse response, Exception exception) {
+        this.operation = operation;
+        this.index = index;
+        this.response = response;
+        this.exception = exception;
+    }
+
+    /**
+     * Gets the operation
+     * @return the operation
+     */
+    public BulkOperation getOperation() { return operation; }
+
+    /**
+     * Gets the position of the operation among the ones of the bulk request
+     * @return the index, starting at 0
+     */
+    public long getIndex() { return index; }
+
+    /**
+     * Indicates if the request succeeded
+     * @return true if there is a response
+     */
+    public boolean isOK() { return exception == null; }
+
+    /**
+     * Gets the response
+     * @return the response, or null if the request failed
+     */
+    public OoyalaResponse getResponse() { return response; }
+
+    /**
+     * Gets the exception the request failed with
+     * @return the exception (i.e. an HttpStatusCodeException), or null if the request succeeded
+     */
+    public Exception getException() { return exception; }
+}
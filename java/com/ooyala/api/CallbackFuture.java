@@ -0,0 +1,52 @@
+package com.ooyala.api;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * FutureTask which notifies an optional OoyalaCallback when it completes.
+ * @param <T> The type of the result
+ */
+class CallbackFuture<T> extends FutureTask<T> {
+
+    /**
+     * The callback to notify, may be null
+     */
+    private final OoyalaCallback<T> callback;
+
+    /**
+     * Creates the task
+     * @param callable The work to execute
+     * @param callback The callback to notify when the work completes, may be null
+     */
+    CallbackFuture(Callable<T> callable, OoyalaCallback<T> callback) {
+        super(callable);
+        this.callback = callback;
+    }
+
+    @Override
+    protected void done() {
+        if (callback == null)
+            return;
+        T result;
+        try {
+            result = get();
+        } catch (CancellationException e) {
+            callback.onFailure(e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.onFailure(e);
+            return;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error)
+                throw (Error)cause;
+            callback.onFailure((Exception)cause);
+            return;
+        }
+        callback.onSuccess(result);
+    }
+}
@@ -0,0 +1,329 @@
+package com.ooyala.api;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admits the requests of several tenants (accounts) to a shared number of concurrent requests, by weighted
+ * fair queuing.
+ *
+ * While requests are admitted right away, nothing is queued. Once the shared capacity is reached, a freed slot
+ * goes to the waiting tenant with the smallest virtual start time: every admitted request advances the
+ * virtual time of its tenant by 1 / weight, so that a tenant with weight 2 is admitted twice as many requests
+ * as one with weight 1 when both wait, whatever the number of requests each one queued. A tenant becoming
+ * active again starts at the current virtual time, so idle time is not saved up as credit. A tenant is never
+ * admitted more requests than its own limit.
+ *
+ * Waiting requests are woken one by one, each by its own condition, so dozens of tenants with many waiting
+ * requests do not wake each other.
+ */
+class FairScheduler {
+
+    /**
+     * A tenant, i.e. an account
+     */
+    static class Tenant {
+        final String name;
+        double weight;
+        int maxConcurrentRequests;
+
+        /**
+         * Number of requests admitted and not released yet
+         */
+        int inFlight;
+
+        /**
+         * Virtual time at which the next request of the tenant finishes its share
+         */
+        double finishTime;
+
+        /**
+         * Indicates if the tenant has been removed, once its requests drain
+         */
+        boolean removed;
+
+        long admitted;
+        long waitNanos;
+
+        /**
+         * The waiting requests, in order
+         */
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<Waiter>();
+
+        Tenant(String name, double weight, int maxConcurrentRequests) {
+            this.name = name;
+            this.weight = weight;
+            this.maxConcurrentRequests = maxConcurrentRequests;
+        }
+    }
+
+    /**
+     * A waiting request
+     */
+    private static class Waiter {
+        final Condition admission;
+        boolean admitted;
+
+        Waiter(Condition admission) { this.admission = admission; }
+    }
+
+    /**
+     * Maximum number of requests admitted at the same time, across the tenants
+     */
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Number of requests admitted and not released yet
+     */
+    private int inFlight;
+
+    /**
+     * Virtual start time of the last request admitted
+     */
+    private double virtualTime;
+
+    private final List<Tenant> tenants = new ArrayList<Tenant>();
+
+    /**
+     * Creates a scheduler
+     * @param capacity The maximum number of requests admitted at the same time
+     */
+    FairScheduler(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("The capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets the maximum number of requests admitted at the same time
+     * @return the capacity
+     */
+    int getCapacity() { return capacity; }
+
+    /**
+     * Adds a tenant
+     * @param name The name of the tenant (i.e. its API key)
+     * @param weight Its share of the capacity, relative to the other tenants
+     * @param maxConcurrentRequests The maximum number of its requests admitted at the same time
+     * @return the tenant
+     */
+    Tenant addTenant(String name, double weight, int maxConcurrentRequests) {
+        if (weight <= 0 || maxConcurrentRequests <= 0)
+            throw new IllegalArgumentException("The weight and the number of concurrent requests must be positive");
+        Tenant tenant = new Tenant(name, weight, maxConcurrentRequests);
+        lock.lock();
+        try {
+            tenant.finishTime = virtualTime;
+            tenants.add(tenant);
+        } finally {
+            lock.unlock();
+        }
+        return tenant;
+    }
+
+    /**
+     * Changes the share and the limit of a tenant
+     * @param tenant The tenant
+     * @param weight Its share of the capacity, relative to the other tenants
+     * @param maxConcurrentRequests The maximum number of its requests admitted at the same time
+     */
+    void setLimits(Tenant tenant, double weight, int maxConcurrentRequests) {
+        if (weight <= 0 || maxConcurrentRequests <= 0)
+            throw new IllegalArgumentException("The weight and the number of concurrent requests must be positive");
+        lock.lock();
+        try {
+            tenant.weight = weight;
+            tenant.maxConcurrentRequests = maxConcurrentRequests;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a tenant, once its requests are released. Its waiting requests are still admitted.
+     * @param tenant The tenant
+     */
+    void removeTenant(Tenant tenant) {
+        lock.lock();
+        try {
+            tenant.removed = true;
+            prune(tenant);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a request of a tenant is admitted
+     * @param tenant The tenant
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    void acquire(Tenant tenant) throws InterruptedIOException {
+        lock.lock();
+        try {
+            if (inFlight < capacity && tenant.inFlight < tenant.maxConcurrentRequests && tenant.waiters.isEmpty()) {
+                admit(tenant);
+                return;
+            }
+            long start = System.nanoTime();
+            Waiter waiter = new Waiter(lock.newCondition());
+            tenant.waiters.add(waiter);
+            try {
+                while (!waiter.admitted)
+                    waiter.admission.await();
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    release(tenant);
+                } else {
+                    tenant.waiters.remove(waiter);
+                    prune(tenant);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request slot of " + tenant.name);
+            }
+            tenant.waitNanos += System.nanoTime() - start;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases an admitted request of a tenant, and admits the waiting requests the freed slot allows
+     * @param tenant The tenant
+     */
+    void release(Tenant tenant) {
+        lock.lock();
+        try {
+            inFlight--;
+            tenant.inFlight--;
+            prune(tenant);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admits a request of a tenant. The lock is held.
+     * @param tenant The tenant
+     */
+    private void admit(Tenant tenant) {
+        double start = Math.max(tenant.finishTime, virtualTime);
+        tenant.finishTime = start + 1 / tenant.weight;
+        virtualTime = start;
+        tenant.inFlight++;
+        tenant.admitted++;
+        inFlight++;
+    }
+
+    /**
+     * Admits waiting requests, the next one from the tenant with the smallest virtual start time, until the
+     * capacity is reached or no waiting tenant is under its limit. The lock is held.
+     */
+    private void dispatch() {
+        while (inFlight < capacity) {
+            Tenant next = null;
+            double nextStart = 0;
+            for (Tenant tenant : tenants) {
+                if (tenant.waiters.isEmpty() || tenant.inFlight >= tenant.maxConcurrentRequests)
+                    continue;
+                double start = Math.max(tenant.finishTime, virtualTime);
+                if (next == null || start < nextStart) {
+                    next = tenant;
+                    nextStart = start;
+                }
+            }
+            if (next == null)
+                return;
+            Waiter waiter = next.waiters.poll();
+            waiter.admitted = true;
+            admit(next);
+            waiter.admission.signal();
+        }
+    }
+
+    /**
+     * Forgets a removed tenant once it has no request left. The lock is held.
+     * @param tenant The tenant
+     */
+    private void prune(Tenant tenant) {
+        if (tenant.removed && tenant.inFlight == 0 && tenant.waiters.isEmpty())
+            tenants.remove(tenant);
+    }
+
+    /**
+     * Gets the number of requests admitted and not released yet
+     * @return the number of requests in flight
+     */
+    int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of requests of a tenant admitted and not released yet
+     * @param tenant The tenant
+     * @return the number of requests in flight
+     */
+    int getInFlight(Tenant tenant) {
+        lock.lock();
+        try {
+            return tenant.inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of waiting requests of a tenant
+     * @param tenant The tenant
+     * @return the number of waiting requests
+     */
+    int getWaiting(Tenant tenant) {
+        lock.lock();
+        try {
+            return tenant.waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of requests of a tenant admitted so far
+     * @param tenant The tenant
+     * @return the number of requests admitted
+     */
+    long getAdmitted(Tenant tenant) {
+        lock.lock();
+        try {
+            return tenant.admitted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the time the requests of a tenant spent waiting to be admitted
+     * @param tenant The tenant
+     * @return the total waiting time in nanoseconds
+     */
+    long getWaitNanos(Tenant tenant) {
+        lock.lock();
+        try {
+            return tenant.waitNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.ooyala.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Repeatable entity streaming a region of a file straight from its FileChannel, without
+ * buffering the content in memory. The channel's position is never modified.
+ */
+class FileChannelEntity extends AbstractHttpEntity {
+
+    /**
+     * The channel of the file
+     */
+    private final FileChannel channel;
+
+    /**
+     * Position of the region in the file
+     */
+    private final long position;
+
+    /**
+     * Size of the region
+     */
+    private final long size;
+
+    /**
+     * Creates the entity
+     * @param channel The channel of the file
+     * @param position Position of the region in the file
+     * @param size Size of the region
+     */
+    FileChannelEntity(FileChannel channel, long position, long size) {
+        this.channel = channel;
+        this.position = position;
+        this.size = size;
+    }
+
+    public boolean isRepeatable() { return true; }
+
+    public long getContentLength() { return size; }
+
+    public boolean isStreaming() { return false; }
+
+    public InputStream getContent() throws IOException {
+        return new InputStream() {
+            private long offset = 0;
+            private final ByteBuffer single = ByteBuffer.allocate(1);
+
+            @Override
+            public int read() throws IOException {
+                single.clear();
+                return (read(single) <= 0) ? -1 : single.get(0) & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return read(ByteBuffer.wrap(b, off, len));
+            }
+
+            private int read(ByteBuffer buffer) throws IOException {
+                long remaining = size - offset;
+                if (remaining <= 0)
+                    return -1;
+                if (buffer.remaining() > remaining)
+                    buffer.limit(buffer.position() + (int)remaining);
+                int read = channel.read(buffer, position + offset);
+                if (read > 0)
+                    offset += read;
+                return read;
+            }
+        };
+    }
+
+    public void writeTo(OutputStream outstream) throws IOException {
+        WritableByteChannel target = Channels.newChannel(outstream);
+        long written = 0;
+        while (written < size) {
+            long transferred = channel.transferTo(position + written, size - written, target);
+            if (transferred <= 0)
+                throw new IOException("The file was truncated while it was being sent");
+            written += transferred;
+        }
+        outstream.flush();
+    }
+}
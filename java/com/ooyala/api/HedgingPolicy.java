@@ -0,0 +1,245 @@
+package com.ooyala.api;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hedging of GET requests, to cut their tail latency.
+ *
+ * When no response to a GET request has arrived after a delay, a duplicate of the request (same signed URL)
+ * is sent, the first response of the two is returned and the other request is aborted. The delay is either
+ * fixed or a percentile (i.e. the 95th) of the latencies recently observed on the endpoint of the request,
+ * so that only the slowest requests are hedged.
+ *
+ * Hedges are limited to a share of the requests by a token bucket: every request earns maxHedgeRatio of a
+ * token, and a hedge spends one. With the default 5%, hedging adds at most about 5% to the load of the API,
+ * even when all of it slows down.
+ *
+ * Requests streaming their items to a callback are never hedged, since items handed to a callback can not be
+ * taken back. A policy can be shared by several OoyalaAPI instances.
+ */
+public class HedgingPolicy {
+
+    /**
+     * Number of latencies observed on an endpoint before its percentile is used instead of the fixed delay
+     */
+    private static final int MIN_SAMPLES = 100;
+
+    /**
+     * Number of latencies an endpoint window holds before a new window starts, so that the percentile follows
+     * the recent latencies
+     */
+    private static final int WINDOW_SIZE = 2000;
+
+    /**
+     * Largest number of hedges that can be sent in a burst
+     */
+    private static final double MAX_TOKENS = 10;
+
+    /**
+     * Delay (in nanoseconds) after which a request is hedged, or until enough latencies are observed when a percentile is used
+     */
+    private volatile long delayNanos;
+
+    /**
+     * Percentile of the observed latencies after which a request is hedged, or 0 to always use the fixed delay
+     */
+    private volatile double percentile;
+
+    /**
+     * Shortest delay (in nanoseconds) after which a request is hedged, whatever the percentile
+     */
+    private volatile long minDelayNanos;
+
+    /**
+     * Maximum share of the requests that are hedged. Defaults: 0.05
+     */
+    private volatile double maxHedgeRatio = 0.05;
+
+    /**
+     * Tokens currently in the bucket
+     */
+    private double tokens = MAX_TOKENS;
+
+    /**
+     * The observed latencies, by endpoint (i.e. "GET assets/{id}")
+     */
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<String, Window>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    /**
+     * Latencies observed on an endpoint: the window being filled, and the previous full one
+     */
+    private static class Window {
+        volatile LatencyHistogram current = new LatencyHistogram();
+        volatile LatencyHistogram previous;
+    }
+
+    /**
+     * Creates a policy hedging the requests without a response after a fixed delay
+     * @param delayMillis The delay in milliseconds, i.e. the 95th percentile of the latency of the API
+     */
+    public HedgingPolicy(long delayMillis) {
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    /**
+     * Creates a policy hedging the requests slower than a percentile of the latencies observed on their endpoint
+     * @param percentile The percentile, between 0 and 100 (i.e. 95)
+     * @param initialDelayMillis The delay in milliseconds used until enough latencies are observed on an endpoint
+     * @return the policy
+     */
+    public static HedgingPolicy percentile(double percentile, long initialDelayMillis) {
+        HedgingPolicy policy = new HedgingPolicy(initialDelayMillis);
+        policy.setPercentile(percentile);
+        return policy;
+    }
+
+    /**
+     * Gets the fixed delay
+     * @return the delay in milliseconds
+     */
+    public long getDelayMillis() { return TimeUnit.NANOSECONDS.toMillis(delayNanos); }
+
+    /**
+     * Sets the fixed delay after which a request is hedged, or until enough latencies are observed when a percentile is used
+     * @param delayMillis The delay in milliseconds
+     */
+    public void setDelayMillis(long delayMillis) { this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis); }
+
+    /**
+     * Gets the percentile of the observed latencies after which a request is hedged
+     * @return the percentile, or 0 if the fixed delay is always used
+     */
+    public double getPercentile() { return percentile; }
+
+    /**
+     * Sets the percentile of the latencies observed on an endpoint after which its requests are hedged
+     * @param percentile The percentile, between 0 and 100 (i.e. 95), or 0 to always use the fixed delay
+     */
+    public void setPercentile(double percentile) {
+        if (percentile < 0 || percentile >= 100)
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+        this.percentile = percentile;
+    }
+
+    /**
+     * Gets the shortest delay after which a request is hedged
+     * @return the delay in milliseconds
+     */
+    public long getMinDelayMillis() { return TimeUnit.NANOSECONDS.toMillis(minDelayNanos); }
+
+    /**
+     * Sets the shortest delay after which a request is hedged, whatever the percentile. Defaults: 0
+     * @param minDelayMillis The delay in milliseconds
+     */
+    public void setMinDelayMillis(long minDelayMillis) { this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis); }
+
+    /**
+     * Gets the maximum share of the requests that are hedged
+     * @return the share, between 0 and 1
+     */
+    public double getMaxHedgeRatio() { return maxHedgeRatio; }
+
+    /**
+     * Sets the maximum share of the requests that are hedged. Defaults: 0.05
+     * @param maxHedgeRatio The share, between 0 and 1
+     */
+    public void setMaxHedgeRatio(double maxHedgeRatio) {
+        if (maxHedgeRatio < 0 || maxHedgeRatio > 1)
+            throw new IllegalArgumentException("The hedge ratio must be between 0 and 1");
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    /**
+     * Gets the number of requests sent under this policy
+     * @return the number of requests
+     */
+    public long getRequestCount() { return requests.get(); }
+
+    /**
+     * Gets the number of hedges sent
+     * @return the number of hedges
+     */
+    public long getHedgeCount() { return hedges.get(); }
+
+    /**
+     * Gets the number of hedges that answered before the request they duplicated
+     * @return the number of hedges returned
+     */
+    public long getHedgeWinCount() { return hedgeWins.get(); }
+
+    /**
+     * Gets the delay after which a request is hedged, and counts the request
+     * @param endpoint The endpoint of the request (i.e. "GET assets/{id}")
+     * @return the delay in nanoseconds
+     */
+    long getDelayNanos(String endpoint) {
+        requests.incrementAndGet();
+        synchronized (this) {
+            tokens = Math.min(MAX_TOKENS, tokens + maxHedgeRatio);
+        }
+        double percentile = this.percentile;
+        Window window = windows.get(endpoint);
+        if (percentile == 0 || window == null)
+            return delayNanos;
+        LatencyHistogram latencies = window.current;
+        if (latencies.getCount() < MIN_SAMPLES && window.previous != null)
+            latencies = window.previous;
+        if (latencies.getCount() < MIN_SAMPLES)
+            return delayNanos;
+        return Math.max(minDelayNanos, latencies.getPercentileNanos(percentile));
+    }
+
+    /**
+     * Takes a token to send a hedge, if there is one
+     * @return true if the hedge can be sent
+     */
+    synchronized boolean tryHedge() {
+        if (tokens < 1)
+            return false;
+        tokens--;
+        hedges.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Records the latency of a request
+     * @param endpoint The endpoint of the request (i.e. "GET assets/{id}")
+     * @param nanos The time until its first response, in nanoseconds
+     * @param hedgeWon true if the response came from the hedge
+     */
+    void record(String endpoint, long nanos, boolean hedgeWon) {
+        if (hedgeWon)
+            hedgeWins.incrementAndGet();
+        if (percentile == 0)
+            return;
+        Window window = windows.get(endpoint);
+        if (window == null) {
+            Window created = new Window();
+            window = windows.putIfAbsent(endpoint, created);
+            if (window == null)
+                window = created;
+        }
+        LatencyHistogram latencies = window.current;
+        latencies.record(nanos);
+        if (latencies.getCount() >= WINDOW_SIZE) {
+            synchronized (window) {
+                if (window.current == latencies) {
+                    window.previous = latencies;
+                    window.current = new LatencyHistogram();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests=%d hedges=%d hedgeWins=%d", getRequestCount(), getHedgeCount(), getHedgeWinCount());
+    }
+}
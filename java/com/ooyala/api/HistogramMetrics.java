@@ -0,0 +1,191 @@
+package com.ooyala.api;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default OoyalaMetrics, aggregating the traces of the requests per endpoint (i.e. "GET assets/{id}"):
+ * a latency histogram for the whole request and for each of its phases, the bytes sent and received,
+ * the retries, the responses served by the cache and the number of responses per status code.
+ *
+ * Recording a request only takes atomic increments, so it can stay enabled in production. Read the
+ * statistics with getEndpoints() and export them to a dashboard, or print toString() for a summary.
+ */
+public class HistogramMetrics implements OoyalaMetrics {
+
+    /**
+     * Statistics of one endpoint
+     */
+    public static class EndpointMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram[] phases = new LatencyHistogram[RequestTrace.Phase.values().length];
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong cached = new AtomicLong();
+        private final AtomicLong hedged = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+
+        EndpointMetrics() {
+            for (int i = 0; i < phases.length; i++)
+                phases[i] = new LatencyHistogram();
+        }
+
+        /**
+         * Records the trace of a request
+         * @param trace The trace
+         */
+        void record(RequestTrace trace) {
+            latency.record(trace.getElapsedNanos());
+            for (RequestTrace.Phase phase : RequestTrace.Phase.values()) {
+                long nanos = trace.getPhaseNanos(phase);
+                if (nanos > 0)
+                    phases[phase.ordinal()].record(nanos);
+            }
+            bytesSent.addAndGet(trace.getBytesSent());
+            bytesReceived.addAndGet(trace.getBytesReceived());
+            retries.addAndGet(trace.getRetries());
+            if (trace.isCached())
+                cached.incrementAndGet();
+            if (trace.isHedged())
+                hedged.incrementAndGet();
+            if (trace.getFailure() != null)
+                failures.incrementAndGet();
+            AtomicLong counter = statusCodes.get(trace.getStatusCode());
+            if (counter == null) {
+                AtomicLong created = new AtomicLong();
+                counter = statusCodes.putIfAbsent(trace.getStatusCode(), created);
+                if (counter == null)
+                    counter = created;
+            }
+            counter.incrementAndGet();
+        }
+
+        /**
+         * Gets the latency of the whole requests
+         * @return the histogram
+         */
+        public LatencyHistogram getLatency() { return latency; }
+
+        /**
+         * Gets the latency of a phase of the requests. Phases that did not happen (i.e. PARSE for an empty
+         * body, or anything but the whole request for a cached response) are not recorded.
+         * @param phase The phase
+         * @return the histogram
+         */
+        public LatencyHistogram getLatency(RequestTrace.Phase phase) { return phases[phase.ordinal()]; }
+
+        /**
+         * Gets the number of requests
+         * @return the number of requests
+         */
+        public long getRequests() { return latency.getCount(); }
+
+        /**
+         * Gets the number of bytes of the request bodies
+         * @return the bytes sent
+         */
+        public long getBytesSent() { return bytesSent.get(); }
+
+        /**
+         * Gets the number of bytes of the response bodies
+         * @return the bytes received
+         */
+        public long getBytesReceived() { return bytesReceived.get(); }
+
+        /**
+         * Gets the number of retries
+         * @return the retries
+         */
+        public long getRetries() { return retries.get(); }
+
+        /**
+         * Gets the number of responses served by the response cache without contacting the API
+         * @return the number of cached responses
+         */
+        public long getCached() { return cached.get(); }
+
+        /**
+         * Gets the number of requests sent a second time by the hedging policy
+         * @return the number of hedged requests
+         */
+        public long getHedged() { return hedged.get(); }
+
+        /**
+         * Gets the number of failed requests
+         * @return the number of failures
+         */
+        public long getFailures() { return failures.get(); }
+
+        /**
+         * Gets the number of responses per HTTP status code. Requests that got no response are counted under 0.
+         * @return the counts, by status code
+         */
+        public Map<Integer, Long> getStatusCodes() {
+            Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+            for (Map.Entry<Integer, AtomicLong> entry : statusCodes.entrySet())
+                counts.put(entry.getKey(), entry.getValue().get());
+            return counts;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("  total: ").append(latency).append('\n');
+            for (RequestTrace.Phase phase : RequestTrace.Phase.values()) {
+                if (phases[phase.ordinal()].getCount() > 0)
+                    builder.append("  ").append(phase.name().toLowerCase()).append(": ").append(phases[phase.ordinal()]).append('\n');
+            }
+            builder.append(String.format("  sent=%dB received=%dB retries=%d cached=%d hedged=%d failures=%d status=%s",
+                    getBytesSent(), getBytesReceived(), getRetries(), getCached(), getHedged(), getFailures(), getStatusCodes()));
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The statistics of every endpoint
+     */
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+
+    public void onRequest(RequestTrace trace) {
+        String endpoint = trace.getEndpoint();
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (metrics == null) {
+            EndpointMetrics created = new EndpointMetrics();
+            metrics = endpoints.putIfAbsent(endpoint, created);
+            if (metrics == null)
+                metrics = created;
+        }
+        metrics.record(trace);
+    }
+
+    /**
+     * Gets the statistics of every endpoint
+     * @return the statistics, by endpoint (i.e. "GET assets/{id}"), sorted
+     */
+    public Map<String, EndpointMetrics> getEndpoints() { return new TreeMap<String, EndpointMetrics>(endpoints); }
+
+    /**
+     * Gets the statistics of an endpoint
+     * @param endpoint The endpoint, i.e. "GET assets/{id}"
+     * @return the statistics, or null if no request was sent to that endpoint
+     */
+    public EndpointMetrics getEndpoint(String endpoint) { return endpoints.get(endpoint); }
+
+    /**
+     * Drops the statistics of every endpoint
+     */
+    public void reset() { endpoints.clear(); }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, EndpointMetrics> entry : getEndpoints().entrySet())
+            builder.append(entry.getKey()).append('\n').append(entry.getValue()).append('\n');
+        return builder.toString();
+    }
+}
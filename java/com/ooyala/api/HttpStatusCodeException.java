@@ -1,18 +1,33 @@
 package com.ooyala.api;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 public class HttpStatusCodeException extends Exception {
     private String response;
     private int code;
+    private Map<String, List<String>> headers;
     
     protected static final long serialVersionUID = 1;
 
     public HttpStatusCodeException(String response, int code) {
+        this(response, code, Collections.<String, List<String>>emptyMap());
+    }
+
+    public HttpStatusCodeException(String response, int code, Map<String, List<String>> headers) {
         super(response);
         this.response = response;
         this.code = code;
+        this.headers = headers;
     }
 
     public String getResponse() { return response; }
     public int getCode() { return code; }
+    public Map<String, List<String>> getHeaders() { return headers; }
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return (values == null || values.isEmpty()) ? null : values.get(0);
+    }
     public void printError() { System.out.println(String.format("HTTP Status Code: %d Message: %s", code, response)); }
 }
@@ -0,0 +1,130 @@
+package com.ooyala.api;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.ParseException;
+
+/**
+ * SAX-style JSON handler which hands every element of the items array to an OoyalaItemCallback
+ * as soon as it is parsed, instead of adding it to the array. Only one item is held in memory
+ * at a time, whatever the size of the response.
+ *
+ * The rest of the response (i.e. next_page) is built as usual and returned by getResult(),
+ * with an empty items array. When the response itself is an array, each of its elements is
+ * handed to the callback.
+ */
+class ItemsContentHandler implements ContentHandler {
+
+    /**
+     * Name of the entry holding the items of a list response
+     */
+    private static final String ITEMS = "items";
+
+    /**
+     * The callback receiving the items
+     */
+    private final OoyalaItemCallback callback;
+
+    /**
+     * Containers (and pending entry keys) being built, innermost last
+     */
+    private final LinkedList<Object> stack = new LinkedList<Object>();
+
+    /**
+     * The top level value
+     */
+    private Object result;
+
+    /**
+     * Creates the handler
+     * @param callback The callback receiving the items
+     */
+    ItemsContentHandler(OoyalaItemCallback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Gets the top level value of the response, without its items
+     * @return the response
+     */
+    Object getResult() { return result; }
+
+    public void startJSON() throws ParseException, IOException {
+        stack.clear();
+        result = null;
+    }
+
+    public void endJSON() throws ParseException, IOException {}
+
+    public boolean startObject() throws ParseException, IOException {
+        stack.addLast(new LinkedHashMap<String, Object>());
+        return true;
+    }
+
+    public boolean endObject() throws ParseException, IOException {
+        value(stack.removeLast());
+        return true;
+    }
+
+    public boolean startObjectEntry(String key) throws ParseException, IOException {
+        stack.addLast(key);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public boolean endObjectEntry() throws ParseException, IOException {
+        Object value = stack.removeLast();
+        String key = (String)stack.removeLast();
+        ((Map<String, Object>)stack.getLast()).put(key, value);
+        return true;
+    }
+
+    public boolean startArray() throws ParseException, IOException {
+        stack.addLast(new LinkedList<Object>());
+        return true;
+    }
+
+    public boolean endArray() throws ParseException, IOException {
+        value(stack.removeLast());
+        return true;
+    }
+
+    public boolean primitive(Object value) throws ParseException, IOException {
+        value(value);
+        return true;
+    }
+
+    /**
+     * Stores a complete value in its parent, or hands it to the callback if it is an item
+     * @param value The value
+     */
+    @SuppressWarnings("unchecked")
+    private void value(Object value) {
+        if (stack.isEmpty()) {
+            result = value;
+        } else if (stack.getLast() instanceof String) {
+            /* value of an object entry, stored by endObjectEntry */
+            stack.addLast(value);
+        } else if (isItemsArray()) {
+            callback.onItem(value);
+        } else {
+            ((List<Object>)stack.getLast()).add(value);
+        }
+    }
+
+    /**
+     * Indicates if the innermost container is the items array: either the response itself or
+     * the items entry of the response
+     * @return true if the values being added are items
+     */
+    private boolean isItemsArray() {
+        if (stack.size() == 1)
+            return stack.getLast() instanceof List;
+        return stack.size() == 3 && ITEMS.equals(stack.get(1));
+    }
+}
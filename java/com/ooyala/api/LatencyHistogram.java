@@ -0,0 +1,149 @@
+package com.ooyala.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations, with logarithmic buckets.
+ *
+ * Every power of two (in nanoseconds) is split in 8 buckets, so that percentiles are within 12.5% of the
+ * recorded values whatever their magnitude, in a fixed 4KB of memory. Recording a value is a couple of
+ * atomic increments.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits of a value, after its highest one, that select its bucket within its power of two
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * Number of buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of values recorded in each bucket
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    /**
+     * Number of values recorded
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Sum of the values recorded
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Largest value recorded
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration
+     * @param nanos The duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        buckets.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            /* another thread recorded a value at the same time */
+        }
+    }
+
+    /**
+     * Gets the bucket of a value
+     * @param value The value, positive
+     * @return the index of its bucket
+     */
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int)value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the highest value of a bucket
+     * @param bucket The index of the bucket
+     * @return the highest value it holds
+     */
+    private static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (1L << exponent) | ((long)(bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Gets the number of values recorded
+     * @return the count
+     */
+    public long getCount() { return count.get(); }
+
+    /**
+     * Gets the sum of the values recorded
+     * @return the sum in nanoseconds
+     */
+    public long getTotalNanos() { return sum.get(); }
+
+    /**
+     * Gets the mean of the values recorded
+     * @return the mean in nanoseconds, or 0 if no value was recorded
+     */
+    public long getMeanNanos() {
+        long n = count.get();
+        return (n == 0) ? 0 : sum.get() / n;
+    }
+
+    /**
+     * Gets the largest value recorded
+     * @return the maximum in nanoseconds
+     */
+    public long getMaxNanos() { return max.get(); }
+
+    /**
+     * Gets a percentile of the values recorded
+     * @param percentile The percentile, between 0 and 100 (i.e. 99.9)
+     * @return the value in nanoseconds under which that percentage of the values fall, or 0 if no value was recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long n = count.get();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long)Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(highestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Drops every value recorded. Values recorded at the same time may be partially dropped.
+     */
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++)
+            buckets.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms", getCount(), getMeanNanos() / 1e6,
+                getPercentileNanos(50) / 1e6, getPercentileNanos(99) / 1e6, getMaxNanos() / 1e6);
+    }
+}
@@ -0,0 +1,533 @@
+package com.ooyala.api;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * JSON document parsed lazily: the raw UTF-8 bytes of the response are kept, and parsing only builds a compact
+ * index of where every value starts and ends. Objects and arrays are read through Map and List views backed by
+ * that index, and strings and numbers are only decoded when they are accessed (then remembered by their view).
+ *
+ * The index takes six ints per value, instead of a LinkedHashMap entry or a LinkedList node plus the decoded
+ * value, and items of an array are reached in constant time. For a listing of which only a few fields
+ * (i.e. embed_code and name) are read, this takes a fraction of the memory and time of the eager parsing.
+ *
+ * The views are read-only, and compare equal to maps and lists with the same content. They are immutable, so
+ * they can be shared between threads. Like JSONParser, get() returns the last of duplicate keys, but the
+ * duplicates are not collapsed when iterating (the API never sends any).
+ */
+public final class LazyJSON {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Marks the values a view did not decode yet
+     */
+    private static final Object UNDECODED = new Object();
+
+    /**
+     * The JSON text
+     */
+    private final byte[] data;
+
+    /**
+     * The offset of the first byte of each value, in document order
+     */
+    private int[] starts;
+
+    /**
+     * The offset after the last byte of each value
+     */
+    private int[] ends;
+
+    /**
+     * For the members of an object, the offset of the opening quote of their key; otherwise -1
+     */
+    private int[] keys;
+
+    /**
+     * For objects and arrays, the position in children of their first member or item
+     */
+    private int[] firstChildren;
+
+    /**
+     * For objects and arrays, their number of members or items
+     */
+    private int[] childCounts;
+
+    /**
+     * The values of the members and items of every object and array, each container's ones being contiguous
+     */
+    private int[] children;
+
+    private int nodeCount;
+    private int childCount;
+
+    private LazyJSON(byte[] data, int capacity) {
+        this.data = data;
+        starts = new int[capacity];
+        ends = new int[capacity];
+        keys = new int[capacity];
+        firstChildren = new int[capacity];
+        childCounts = new int[capacity];
+        children = new int[capacity];
+    }
+
+    /**
+     * Parses a JSON document
+     * @param data The UTF-8 encoded JSON text, which must not be modified afterwards
+     * @return the root value: a Map<String, Object> or List<Object> view, a String, a Long, a Double, a Boolean
+     * or null
+     * @throws ParseException if the text is not valid JSON
+     */
+    public static Object parse(byte[] data) throws ParseException {
+        LazyJSON document = new LazyJSON(data, Math.max(data.length / 16, 16));
+        document.index();
+        return document.value(0);
+    }
+
+    /**
+     * Parses a JSON document
+     * @param json The JSON text
+     * @return the root value (see parse(byte[]))
+     * @throws ParseException if the text is not valid JSON
+     */
+    public static Object parse(String json) throws ParseException {
+        return parse(json.getBytes(UTF8));
+    }
+
+    /**
+     * Adds a value to the index
+     * @param start The offset of its first byte
+     * @param key The offset of its key, or -1
+     * @return the value's position in the index
+     */
+    private int addNode(int start, int key) {
+        if (nodeCount == starts.length) {
+            int capacity = nodeCount * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+        }
+        starts[nodeCount] = start;
+        keys[nodeCount] = key;
+        return nodeCount++;
+    }
+
+    /**
+     * Builds the index, checking the structure of the text. Containers are tracked with explicit stacks rather
+     * than recursion, so deeply nested documents do not overflow the thread's stack.
+     * @throws ParseException if the text is not valid JSON
+     */
+    private void index() throws ParseException {
+        /* the open containers, and the values of their members or items found so far */
+        int[] open = new int[16];
+        int depth = 0;
+        int[] pending = new int[64];
+        int pendingCount = 0;
+        int[] pendingStarts = new int[16];
+
+        int position = skipWhitespace(0);
+        while (true) {
+            /* a value is expected, preceded by its key in an object */
+            int key = -1;
+            if (depth > 0 && data[starts[open[depth - 1]]] == '{') {
+                if (position >= data.length || data[position] != '"')
+                    throw error(position);
+                key = position;
+                position = skipWhitespace(skipString(position));
+                if (position >= data.length || data[position] != ':')
+                    throw error(position);
+                position = skipWhitespace(position + 1);
+            }
+            if (position >= data.length)
+                throw error(position);
+            int node = addNode(position, key);
+            if (depth > 0) {
+                if (pendingCount == pending.length)
+                    pending = Arrays.copyOf(pending, pendingCount * 2);
+                pending[pendingCount++] = node;
+            }
+
+            byte c = data[position];
+            boolean empty = false;
+            if (c == '{' || c == '[') {
+                if (depth == open.length) {
+                    open = Arrays.copyOf(open, depth * 2);
+                    pendingStarts = Arrays.copyOf(pendingStarts, depth * 2);
+                }
+                open[depth] = node;
+                pendingStarts[depth++] = pendingCount;
+                position = skipWhitespace(position + 1);
+                empty = position < data.length && data[position] == (c == '{' ? '}' : ']');
+                if (!empty)
+                    continue;
+            } else {
+                position = ends[node] = skipScalar(position);
+            }
+
+            /* after a value: closes the containers it ends, or moves to the next member or item */
+            while (true) {
+                if (!empty)
+                    position = skipWhitespace(position);
+                empty = false;
+                if (depth == 0) {
+                    if (position != data.length)
+                        throw error(position);
+                    return;
+                }
+                if (position >= data.length)
+                    throw error(position);
+                int container = open[depth - 1];
+                byte close = (data[starts[container]] == '{') ? (byte)'}' : (byte)']';
+                if (data[position] == ',') {
+                    position = skipWhitespace(position + 1);
+                    break;
+                }
+                if (data[position] != close)
+                    throw error(position);
+                ends[container] = ++position;
+                int from = pendingStarts[--depth];
+                int count = pendingCount - from;
+                if (childCount + count > children.length)
+                    children = Arrays.copyOf(children, Math.max(children.length * 2, childCount + count));
+                System.arraycopy(pending, from, children, childCount, count);
+                firstChildren[container] = childCount;
+                childCounts[container] = count;
+                childCount += count;
+                pendingCount = from;
+            }
+        }
+    }
+
+    private int skipWhitespace(int position) {
+        while (position < data.length) {
+            byte c = data[position];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                break;
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Skips a string
+     * @param position The offset of its opening quote
+     * @return the offset after its closing quote
+     * @throws ParseException if the string is not terminated
+     */
+    private int skipString(int position) throws ParseException {
+        for (int i = position + 1; i < data.length; i++) {
+            byte c = data[i];
+            if (c == '"')
+                return i + 1;
+            if (c == '\\') {
+                if (i + 1 < data.length && data[i + 1] == 'u') {
+                    for (int digit = i + 2; digit < i + 6; digit++) {
+                        if (digit >= data.length || Character.digit(data[digit], 16) < 0)
+                            throw error(digit);
+                    }
+                    i += 4;
+                }
+                i++;
+            } else if (c >= 0 && c < ' ')
+                throw error(i);
+        }
+        throw error(data.length);
+    }
+
+    /**
+     * Skips a string, number, true, false or null
+     * @param position The offset of its first byte
+     * @return the offset after its last byte
+     * @throws ParseException if it is not a valid value
+     */
+    private int skipScalar(int position) throws ParseException {
+        byte c = data[position];
+        if (c == '"')
+            return skipString(position);
+        if (c == 't')
+            return skipLiteral(position, "true");
+        if (c == 'f')
+            return skipLiteral(position, "false");
+        if (c == 'n')
+            return skipLiteral(position, "null");
+        /* -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)? */
+        int end = position;
+        if (data[end] == '-')
+            end++;
+        if (end < data.length && data[end] == '0')
+            end++;
+        else
+            end = skipDigits(end);
+        if (end < data.length && data[end] == '.')
+            end = skipDigits(end + 1);
+        if (end < data.length && (data[end] == 'e' || data[end] == 'E')) {
+            end++;
+            if (end < data.length && (data[end] == '+' || data[end] == '-'))
+                end++;
+            end = skipDigits(end);
+        }
+        return end;
+    }
+
+    /**
+     * Skips one or more digits
+     * @param position The offset of the first digit
+     * @return the offset after the last digit
+     * @throws ParseException if there is no digit
+     */
+    private int skipDigits(int position) throws ParseException {
+        int end = position;
+        while (end < data.length && data[end] >= '0' && data[end] <= '9')
+            end++;
+        if (end == position)
+            throw error(position);
+        return end;
+    }
+
+    private int skipLiteral(int position, String literal) throws ParseException {
+        if (position + literal.length() > data.length)
+            throw error(position);
+        for (int i = 0; i < literal.length(); i++) {
+            if (data[position + i] != literal.charAt(i))
+                throw error(position);
+        }
+        return position + literal.length();
+    }
+
+    private ParseException error(int position) {
+        Object unexpected = (position < data.length) ? (Object)(char)(data[position] & 0xff) : null;
+        return new ParseException(position, ParseException.ERROR_UNEXPECTED_CHAR, unexpected);
+    }
+
+    /**
+     * Gets a value, decoding it if it is a scalar
+     * @param node The value's position in the index
+     * @return a view for an object or an array, the decoded value otherwise
+     */
+    private Object value(int node) {
+        int start = starts[node];
+        switch (data[start]) {
+            case '{': return new ObjectView(this, node);
+            case '[': return new ArrayView(this, node);
+            case '"': return decodeString(start);
+            case 't': return Boolean.TRUE;
+            case 'f': return Boolean.FALSE;
+            case 'n': return null;
+            default: return decodeNumber(start, ends[node]);
+        }
+    }
+
+    /**
+     * Decodes a number the way JSONParser does: a Long, unless it has a fraction or an exponent
+     */
+    private Object decodeNumber(int start, int end) {
+        String number = new String(data, start, end - start, UTF8);
+        for (int i = start; i < end; i++) {
+            if (data[i] == '.' || data[i] == 'e' || data[i] == 'E')
+                return Double.valueOf(number);
+        }
+        try {
+            return Long.valueOf(number);
+        } catch (NumberFormatException e) {
+            return Double.valueOf(number);
+        }
+    }
+
+    /**
+     * Decodes a string
+     * @param start The offset of its opening quote
+     * @return the string
+     */
+    private String decodeString(int start) {
+        int end = start + 1;
+        while (data[end] != '"' && data[end] != '\\')
+            end++;
+        if (data[end] == '"')
+            return new String(data, start + 1, end - start - 1, UTF8);
+
+        /* escape sequences are ASCII and multi-byte UTF-8 sequences never contain a quote nor a backslash,
+           so the text between escapes can be decoded in one go */
+        StringBuilder builder = new StringBuilder(end - start + 16);
+        int segment = start + 1;
+        int i = end;
+        while (data[i] != '"') {
+            if (data[i] != '\\') {
+                i++;
+                continue;
+            }
+            builder.append(new String(data, segment, i - segment, UTF8));
+            char escaped = (char)data[i + 1];
+            switch (escaped) {
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'n': builder.append('\n'); break;
+                case 'r': builder.append('\r'); break;
+                case 't': builder.append('\t'); break;
+                case 'u':
+                    builder.append((char)Integer.parseInt(new String(data, i + 2, 4, UTF8), 16));
+                    i += 4;
+                    break;
+                default: builder.append(escaped);
+            }
+            i += 2;
+            segment = i;
+        }
+        return builder.append(new String(data, segment, i - segment, UTF8)).toString();
+    }
+
+    /**
+     * Compares the key of a member to a string without decoding it, unless it has escapes or non ASCII characters
+     * @param keyStart The offset of the key's opening quote
+     * @param name The string
+     * @return true if the key is the string
+     */
+    private boolean keyEquals(int keyStart, String name) {
+        int length = name.length();
+        for (int i = 0; ; i++) {
+            byte c = data[keyStart + 1 + i];
+            if (c == '"')
+                return i == length;
+            if (c == '\\' || c < 0)
+                return decodeString(keyStart).equals(name);
+            if (i >= length || c != name.charAt(i))
+                return false;
+        }
+    }
+
+    /**
+     * Read-only Map view of a JSON object. Values are decoded on first access, and members are found by
+     * comparing the raw keys.
+     */
+    static final class ObjectView extends AbstractMap<String, Object> {
+        private final LazyJSON document;
+        private final int first;
+        private final int size;
+
+        /**
+         * The decoded values, by member, filled as they are accessed. Threads racing to decode a value
+         * decode it twice, to equal (and immutable) results.
+         */
+        private final Object[] values;
+
+        ObjectView(LazyJSON document, int node) {
+            this.document = document;
+            this.first = document.firstChildren[node];
+            this.size = document.childCounts[node];
+            this.values = new Object[size];
+            Arrays.fill(values, UNDECODED);
+        }
+
+        /**
+         * Finds a member
+         * @param key The key of the member
+         * @return its position in the object, or -1
+         */
+        private int find(Object key) {
+            if (!(key instanceof String))
+                return -1;
+            /* like JSONParser, the last of duplicate keys wins */
+            for (int i = size - 1; i >= 0; i--) {
+                if (document.keyEquals(document.keys[document.children[first + i]], (String)key))
+                    return i;
+            }
+            return -1;
+        }
+
+        private Object valueAt(int i) {
+            Object value = values[i];
+            if (value == UNDECODED)
+                values[i] = value = document.value(document.children[first + i]);
+            return value;
+        }
+
+        private String keyAt(int i) { return document.decodeString(document.keys[document.children[first + i]]); }
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public boolean containsKey(Object key) { return find(key) >= 0; }
+
+        @Override
+        public Object get(Object key) {
+            int i = find(key);
+            return (i >= 0) ? valueAt(i) : null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                public int size() { return size; }
+
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        private int next = 0;
+
+                        public boolean hasNext() { return next < size; }
+
+                        public Map.Entry<String, Object> next() {
+                            if (next >= size)
+                                throw new NoSuchElementException();
+                            int i = next++;
+                            return new AbstractMap.SimpleImmutableEntry<String, Object>(keyAt(i), valueAt(i));
+                        }
+
+                        public void remove() { throw new UnsupportedOperationException(); }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     * Read-only List view of a JSON array, with constant time access to its items. Items are decoded on first access.
+     */
+    static final class ArrayView extends AbstractList<Object> implements RandomAccess {
+        private final LazyJSON document;
+        private final int first;
+        private final int size;
+        private final Object[] values;
+
+        ArrayView(LazyJSON document, int node) {
+            this.document = document;
+            this.first = document.firstChildren[node];
+            this.size = document.childCounts[node];
+            this.values = new Object[size];
+            Arrays.fill(values, UNDECODED);
+        }
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            Object value = values[index];
+            if (value == UNDECODED)
+                values[index] = value = document.value(document.children[first + index]);
+            return value;
+        }
+    }
+
+    /**
+     * Indicates if a value is a view of a lazily parsed document
+     * @param value The value
+     * @return true if it is an object or array view
+     */
+    static boolean isView(Object value) { return value instanceof ObjectView || value instanceof ArrayView; }
+}
@@ -16,38 +16,56 @@
 
 package com.ooyala.api;
 
-import java.util.Collections;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.io.Closeable;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.zip.GZIPOutputStream;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.ResponseHandler;
 import org.apache.http.entity.AbstractHttpEntity;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.util.EntityUtils;
-import org.apache.http.client.methods.HttpDelete;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpPut;
-import org.apache.http.client.methods.HttpRequestBase;
 
 import org.json.simple.JSONValue;
 import org.json.simple.parser.ContainerFactory;
@@ -61,7 +79,7 @@ import org.json.simple.parser.ParseException;
  * 
  * Please keep in mind that when creating your HashMap to send the JSON body, align to using Maps and Lists as the Simple.JSON library indicates.
  * */
-public class OoyalaAPI {
+public class OoyalaAPI implements Closeable {
 
     /**
      * the Secret key
@@ -74,27 +92,34 @@ public class OoyalaAPI {
     private  String apiKey;
 
     /**
-     * HttpPatch class which allows PATCH requests
+     * Base URL to Ooyala API
      */
-    private  class HttpPatch extends HttpPost {
-        public HttpPatch(String s) { super(s); }
-        public String getMethod() { return "PATCH"; }
-    }
+    private String baseURL;
 
     /**
-     * Base URL to Ooyala API
+     * The charset of the API's responses
      */
-    private String baseURL;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Size of the regions of a file mapped in memory at once to sign it
+     */
+    private static final long MAPPED_REGION_SIZE = 64 * 1024 * 1024;
 
     /**
-     * Holds the instance of a BASE64 encoder for performance.
+     * Represents the HTTP Status Code from the last response (of any thread)
      */
-    private  Base64 base64Encoder;
+    private volatile int responseCode;
 
     /**
-     * Represents the HTTP Status Code from the last response
+     * Container factory used to parse JSON responses. It holds no state so it is shared by all the requests.
      */
-    private  int responseCode;
+    private static final ContainerFactory containerFactory = new ContainerFactory(){
+        @SuppressWarnings("rawtypes")
+        public List creatArrayContainer(){ return new LinkedList(); }
+        @SuppressWarnings("rawtypes")
+        public java.util.Map createObjectContainer(){ return new LinkedHashMap(); }
+    };
 
     /**
      * Value (in seconds) which indicates the (time) 'window' where the request remains valid. Defaults: 15
@@ -111,6 +136,152 @@ public class OoyalaAPI {
      */
     private String contentType;
 
+    /**
+     * Pooled HTTP client shared by all the requests. Created on the first request, unless another transport is set.
+     */
+    private PooledHttpClient pooledHttpClient;
+
+    /**
+     * Name of the HTTP/2 transport, compiled from the java11 source root and loaded reflectively
+     */
+    private static final String HTTP2_TRANSPORT = "com.ooyala.api.Http2Transport";
+
+    /**
+     * Whether the requests are sent by the HTTP/2 transport instead of the pooled HTTP client
+     */
+    private boolean http2;
+
+    /**
+     * HTTP/2 transport shared by all the requests. Created on the first request, if enabled.
+     */
+    private OoyalaTransport http2Transport;
+
+    /**
+     * Transport set with setTransport(), used instead of the pooled HTTP client
+     */
+    private OoyalaTransport transport;
+
+    /**
+     * Indicates if the instance has been closed
+     */
+    private boolean closed;
+
+    /**
+     * Maximum number of pooled connections. Defaults: 50
+     */
+    private int maxTotalConnections;
+
+    /**
+     * Maximum number of pooled connections per route (host). Defaults: 20
+     */
+    private int maxConnectionsPerRoute;
+
+    /**
+     * Time (in milliseconds) to wait for a connection to be established. Defaults: 10000
+     */
+    private int connectionTimeout;
+
+    /**
+     * Time (in milliseconds) to wait for data on an established connection. Defaults: 60000
+     */
+    private int socketTimeout;
+
+    /**
+     * Time (in milliseconds) after which an idle pooled connection is closed. Defaults: 30000
+     */
+    private long idleConnectionTimeout;
+
+    /**
+     * Cache of signed URLs of requests without a body, or null if disabled
+     */
+    private volatile SignedURLCache signedURLCache;
+
+    /**
+     * Cache of GET responses, or null if disabled
+     */
+    private volatile ResponseCache responseCache;
+
+    /**
+     * Throttle of the requests, or null if disabled
+     */
+    private volatile RateLimiter rateLimiter;
+
+    /**
+     * Coalescer of identical GET requests in flight, or null if disabled
+     */
+    private volatile RequestCoalescer requestCoalescer;
+
+    /**
+     * Hedging of GET requests, or null if disabled
+     */
+    private volatile HedgingPolicy hedgingPolicy;
+
+    /**
+     * Executor sending the hedged requests and their duplicates. Created on the first hedged request.
+     */
+    private ExecutorService hedgeExecutor;
+
+    /**
+     * Receiver of the traces of the requests, or null if disabled
+     */
+    private volatile OoyalaMetrics metrics;
+
+    /**
+     * Whether response bodies are parsed lazily (see LazyJSON)
+     */
+    private volatile boolean lazyParsing;
+
+    /**
+     * Whether compressed responses are requested
+     */
+    private boolean responseCompression;
+
+    /**
+     * Size (in bytes) from which JSON request bodies are sent gzipped, or 0 to never compress them
+     */
+    private volatile int requestCompressionThreshold;
+
+    /**
+     * Executor running the asynchronous requests. Created on the first asynchronous request unless one is set.
+     */
+    private ExecutorService asyncExecutor;
+
+    /**
+     * Indicates if asyncExecutor was created by this instance (and must be shut down by it)
+     */
+    private boolean ownsAsyncExecutor;
+
+    /**
+     * Maximum number of asynchronous requests in flight at the same time. Defaults: 20
+     */
+    private int maxInFlightRequests;
+
+    /**
+     * Permits for the asynchronous requests in flight, resized along with maxInFlightRequests
+     */
+    private final ResizableSemaphore inFlightPermits = new ResizableSemaphore();
+
+    /**
+     * Semaphore whose number of permits can be lowered while they are held
+     */
+    private static class ResizableSemaphore extends Semaphore {
+        private static final long serialVersionUID = 1;
+
+        ResizableSemaphore() { super(0); }
+
+        /**
+         * Changes the number of permits by a difference. Lowering it below the permits held makes the next
+         * acquisitions wait until enough permits are released.
+         * @param difference The number of permits to add, or to remove if negative
+         */
+        void resize(int difference) {
+            if (difference > 0)
+                release(difference);
+            else if (difference < 0)
+                reducePermits(-difference);
+        }
+    }
+
     /**
      * Constructor with keys
      * @param apiKey The API key
@@ -122,8 +293,15 @@ public class OoyalaAPI {
         baseURL = "https://api.ooyala.com/v2/";
         expirationWindow = 15;
         roundUpTime = 300;
-        base64Encoder = new Base64();
         contentType = "application/json";
+        maxTotalConnections = 50;
+        maxConnectionsPerRoute = 20;
+        connectionTimeout = 10000;
+        socketTimeout = 60000;
+        idleConnectionTimeout = 30000;
+        responseCompression = true;
+        maxInFlightRequests = 20;
+        inFlightPermits.resize(maxInFlightRequests);
     }
 
     /**
@@ -142,13 +320,19 @@ public class OoyalaAPI {
      * Sets the secret key
      * @param secretKey The secret key to be set
      */
-    public void setSecretKey(String secretKey) { this.secretKey = secretKey; }
+    public void setSecretKey(String secretKey) {
+        this.secretKey = secretKey;
+        clearSignedURLCache();
+    }
 
     /**
      * Sets the API key
      * @param apiKey The secret key to be set
      */
-    public void setAPIKey(String apiKey) { this.apiKey = apiKey; }
+    public void setAPIKey(String apiKey) {
+        this.apiKey = apiKey;
+        clearSignedURLCache();
+    }
 
     /**
      * Gets the URL where requests are sent
@@ -161,14 +345,122 @@ public class OoyalaAPI {
      * @param baseURL The URL to be set
      * @return
      */
-    public void setBaseURL(String baseURL) { this.baseURL = baseURL; }
+    public void setBaseURL(String baseURL) {
+        this.baseURL = baseURL;
+        clearSignedURLCache();
+    }
 
     /**
-     * Get the response code from previous request
+     * Get the response code from previous request. When the instance is shared between threads, the
+     * previous request may have been sent by another thread; use the request methods and
+     * OoyalaResponse.getStatusCode() instead.
      * @return
      */
     public int getResponseCode() { return responseCode; }
 
+    /**
+     * Enables the cache of signed URLs. Requests without a body sent with the same method, path and query parameters
+     * within the same roundUpTime window share the same signed URL, which is then only computed once. The cache is
+     * dropped every time the window rolls over.
+     * @param maxEntries The maximum number of cached URLs, or 0 to disable the cache
+     */
+    public void setSignedURLCacheSize(int maxEntries) {
+        signedURLCache = (maxEntries > 0) ? new SignedURLCache(maxEntries) : null;
+    }
+
+    /**
+     * Sets the cache of GET responses. GET requests without an item callback are then answered from the cache
+     * while their response is fresh, and revalidated with a conditional GET once it is stale. Successful POST,
+     * PUT, PATCH and DELETE requests invalidate the cached responses of their path.
+     * @param responseCache The cache, or null to disable it
+     */
+    public void setResponseCache(ResponseCache responseCache) { this.responseCache = responseCache; }
+
+    /**
+     * Gets the cache of GET responses
+     * @return the cache, or null if it is disabled
+     */
+    public ResponseCache getResponseCache() { return responseCache; }
+
+    /**
+     * Sets the throttle of the requests sent to the API. Requests then wait for the limiter before being sent, and the
+     * ones failing with 429 or 5xx are retried as the limiter allows, instead of throwing an HttpStatusCodeException.
+     * @param rateLimiter The limiter, or null to send requests right away and never retry them
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) { this.rateLimiter = rateLimiter; }
+
+    /**
+     * Gets the throttle of the requests sent to the API
+     * @return the limiter, or null if it is disabled
+     */
+    public RateLimiter getRateLimiter() { return rateLimiter; }
+
+    /**
+     * Enables the coalescing of identical GET requests. A GET request (without a body nor an item callback) sent
+     * while another one with the same path and query parameters is in flight waits for the outcome of that one
+     * instead of being sent, and gets its own copy of the response.
+     * @param enabled true to coalesce identical GET requests
+     */
+    public void setRequestCoalescing(boolean enabled) {
+        requestCoalescer = enabled ? new RequestCoalescer() : null;
+    }
+
+    /**
+     * Indicates if identical GET requests are coalesced
+     * @return true if they are
+     */
+    public boolean isRequestCoalescing() { return requestCoalescer != null; }
+
+    /**
+     * Sets the hedging of GET requests: a request without a response after the delay of the policy is sent a second
+     * time, and the first response of the two is returned. Requests streaming their items to a callback are never hedged.
+     * Hedged requests are sent from a pool of daemon threads, so the phases of their traces (but the URL building,
+     * signing and parsing) are not recorded.
+     * @param hedgingPolicy The policy, or null to never hedge requests
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) { this.hedgingPolicy = hedgingPolicy; }
+
+    /**
+     * Gets the hedging of GET requests
+     * @return the policy, or null if requests are not hedged
+     */
+    public HedgingPolicy getHedgingPolicy() { return hedgingPolicy; }
+
+    /**
+     * Sets the receiver of the timings and counters of every request (see HistogramMetrics)
+     * @param metrics The metrics, or null to not trace requests
+     */
+    public void setMetrics(OoyalaMetrics metrics) { this.metrics = metrics; }
+
+    /**
+     * Gets the receiver of the timings and counters of every request
+     * @return the metrics, or null if requests are not traced
+     */
+    public OoyalaMetrics getMetrics() { return metrics; }
+
+    /**
+     * Enables the lazy parsing of the responses. Instead of a tree of LinkedHashMap and LinkedList, a response
+     * body is then a read-only Map<String, Object> or List<Object> view over its raw bytes (see LazyJSON), whose
+     * values are only decoded when accessed. Worth it for large listings of which only a few fields are read.
+     * @param lazyParsing true to parse the responses lazily
+     */
+    public void setLazyParsing(boolean lazyParsing) { this.lazyParsing = lazyParsing; }
+
+    /**
+     * Indicates if the responses are parsed lazily
+     * @return true if they are
+     */
+    public boolean isLazyParsing() { return lazyParsing; }
+
+    /**
+     * Drops the cached signed URLs, if the cache is enabled
+     */
+    private void clearSignedURLCache() {
+        SignedURLCache cache = signedURLCache;
+        if (cache != null)
+            cache.clear();
+    }
+
     /**
      * Get expiration date (in seconds).
      * @return the expiration date in seconds
@@ -192,35 +484,244 @@ public class OoyalaAPI {
     public void setContentType(String contentType) { this.contentType = contentType; }
 
     /**
-     * Concatenates the key-values of parameters using a separator in between
-     *
-     * @param parameters HashMap with the key-value elements to be concatenated
-     * @param separator The separator (a char) which is added between hash elements
-     * @return the concatenated string
-     */
-    private String concatenateParams(HashMap<String, String> parameters, String separator) {
-        Vector<String> keys = new Vector<String>(parameters.keySet());
-        Collections.sort(keys);
-
-        String string = ""; 
-        for (Enumeration<String> e = keys.elements(); e.hasMoreElements();) {
-            String key    = (String)e.nextElement();
-            String value  = (String)parameters.get(key);
-            if (!string.isEmpty())
-                string += separator;
-            string += key + "=" + value;
+     * Gets the maximum number of pooled connections
+     * @return the maximum number of connections
+     */
+    public int getMaxTotalConnections() { return maxTotalConnections; }
+
+    /**
+     * Sets the maximum number of pooled connections
+     * @param maxTotalConnections The maximum number of connections
+     */
+    public synchronized void setMaxTotalConnections(int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+        if (pooledHttpClient != null)
+            pooledHttpClient.setMaxTotalConnections(maxTotalConnections);
+    }
+
+    /**
+     * Gets the maximum number of pooled connections per route (host)
+     * @return the maximum number of connections per route
+     */
+    public int getMaxConnectionsPerRoute() { return maxConnectionsPerRoute; }
+
+    /**
+     * Sets the maximum number of pooled connections per route (host)
+     * @param maxConnectionsPerRoute The maximum number of connections per route
+     */
+    public synchronized void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        if (pooledHttpClient != null)
+            pooledHttpClient.setMaxConnectionsPerRoute(maxConnectionsPerRoute);
+    }
+
+    /**
+     * Gets the time (in milliseconds) to wait for a connection to be established
+     * @return the connection timeout
+     */
+    public int getConnectionTimeout() { return connectionTimeout; }
+
+    /**
+     * Sets the time (in milliseconds) to wait for a connection to be established
+     * @param connectionTimeout The connection timeout
+     */
+    public synchronized void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+        if (pooledHttpClient != null)
+            pooledHttpClient.setConnectionTimeout(connectionTimeout);
+    }
+
+    /**
+     * Gets the time (in milliseconds) to wait for data on an established connection
+     * @return the socket timeout
+     */
+    public int getSocketTimeout() { return socketTimeout; }
+
+    /**
+     * Sets the time (in milliseconds) to wait for data on an established connection
+     * @param socketTimeout The socket timeout
+     */
+    public synchronized void setSocketTimeout(int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+        if (pooledHttpClient != null)
+            pooledHttpClient.setSocketTimeout(socketTimeout);
+    }
+
+    /**
+     * Gets the time (in milliseconds) after which an idle pooled connection is closed
+     * @return the idle connection timeout
+     */
+    public long getIdleConnectionTimeout() { return idleConnectionTimeout; }
+
+    /**
+     * Sets the time (in milliseconds) after which an idle pooled connection is closed.
+     * Only applies if set before the first request.
+     * @param idleConnectionTimeout The idle connection timeout
+     */
+    public synchronized void setIdleConnectionTimeout(long idleConnectionTimeout) { this.idleConnectionTimeout = idleConnectionTimeout; }
+
+    /**
+     * Indicates if compressed (gzip or deflate) responses are requested
+     * @return true if they are
+     */
+    public boolean isResponseCompression() { return responseCompression; }
+
+    /**
+     * Sets whether compressed (gzip or deflate) responses are requested. They are decompressed while being read,
+     * so the responses (and the streaming of their items) are the same either way. Enabled by default.
+     * @param responseCompression false to request uncompressed responses
+     */
+    public synchronized void setResponseCompression(boolean responseCompression) {
+        this.responseCompression = responseCompression;
+        if (pooledHttpClient != null)
+            pooledHttpClient.setAcceptingCompression(responseCompression);
+    }
+
+    /**
+     * Indicates if the requests are sent over HTTP/2
+     * @return true if they are
+     */
+    public synchronized boolean isHttp2() { return http2; }
+
+    /**
+     * Sets whether the requests are sent by the java.net.http client, which multiplexes them over one HTTP/2
+     * connection per host, instead of the pool of HTTP/1.1 connections. It needs Java 11 and the classes of the
+     * java11 source root. The connection timeout, socket timeout and response compression apply when the
+     * HTTP/2 transport is created, on its first request; the pool sizes do not apply to it. Disabled by default.
+     * @param http2 true to send the requests over HTTP/2
+     * @throws UnsupportedOperationException if the HTTP/2 transport is not available
+     */
+    public synchronized void setHttp2(boolean http2) {
+        if (http2 && !isHttp2Available())
+            throw new UnsupportedOperationException("HTTP/2 needs Java 11 and the classes of the java11 source root");
+        this.http2 = http2;
+    }
+
+    /**
+     * Indicates if the HTTP/2 transport can be used, i.e. if it is on the class path and the JVM can load it
+     * @return true if it can
+     */
+    public static boolean isHttp2Available() {
+        try {
+            Class.forName(HTTP2_TRANSPORT);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            /* compiled for a newer JVM, or java.net.http is missing */
+            return false;
         }
-        return string;
     }
 
     /**
-     * Encodes a String to be URI friendly.
-     * @param input The String to encode.
-     * @return The encoded String.
+     * Gets the size from which JSON request bodies are sent gzipped
+     * @return the threshold in bytes, or 0 if they are never compressed
+     */
+    public int getRequestCompressionThreshold() { return requestCompressionThreshold; }
+
+    /**
+     * Sets the size from which JSON request bodies (i.e. of a POST or a PATCH) are sent gzipped, with a
+     * Content-Encoding: gzip header. The signature is still computed over the uncompressed body. Byte array and
+     * file bodies are never compressed. Disabled by default.
+     * @param requestCompressionThreshold The threshold in bytes, or 0 to never compress the request bodies
+     */
+    public void setRequestCompressionThreshold(int requestCompressionThreshold) { this.requestCompressionThreshold = requestCompressionThreshold; }
+
+    /**
+     * Gets the transport sending the requests. Unless one is set, it is a pool of keep-alive connections (or the
+     * HTTP/2 transport, if enabled) created on the first call, configured by the connection settings of this instance.
+     * @return the transport
+     */
+    public synchronized OoyalaTransport getTransport() {
+        if (closed)
+            throw new IllegalStateException("The OoyalaAPI instance has been closed");
+        if (transport != null)
+            return transport;
+        if (http2) {
+            if (http2Transport == null)
+                http2Transport = createHttp2Transport();
+            return http2Transport;
+        }
+        if (pooledHttpClient == null) {
+            pooledHttpClient = new PooledHttpClient(maxTotalConnections, maxConnectionsPerRoute, connectionTimeout, socketTimeout, idleConnectionTimeout);
+            pooledHttpClient.setAcceptingCompression(responseCompression);
+        }
+        return pooledHttpClient;
+    }
+
+    /**
+     * Creates the HTTP/2 transport with the connection settings of this instance
+     */
+    private OoyalaTransport createHttp2Transport() {
+        try {
+            Constructor<?> constructor = Class.forName(HTTP2_TRANSPORT).getDeclaredConstructor(int.class, int.class, boolean.class);
+            return (OoyalaTransport)constructor.newInstance(connectionTimeout, socketTimeout, responseCompression);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw new IllegalStateException("Can not create the HTTP/2 transport", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can not create the HTTP/2 transport", e);
+        }
+    }
+
+    /**
+     * Sets the transport sending the requests (i.e. an InProcessTransport in tests). The connection settings
+     * (timeouts, pool sizes and response compression) only apply to the default transport, and the transport
+     * is not closed with this instance.
+     * @param transport The transport, or null to use the default pool of connections again
+     */
+    public synchronized void setTransport(OoyalaTransport transport) { this.transport = transport; }
+
+    /**
+     * Closes all the pooled connections. The instance can not be used to send requests afterwards.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (asyncExecutor != null && ownsAsyncExecutor)
+            asyncExecutor.shutdown();
+        asyncExecutor = null;
+        if (hedgeExecutor != null)
+            hedgeExecutor.shutdown();
+        hedgeExecutor = null;
+        transport = null;
+        if (http2Transport != null) {
+            try {
+                http2Transport.close();
+            } catch (IOException e) {
+                /* its threads are daemons */
+            }
+            http2Transport = null;
+        }
+        if (pooledHttpClient != null) {
+            pooledHttpClient.shutdown();
+            pooledHttpClient = null;
+        }
+    }
+
+    /**
+     * Appends the key-values of parameters, sorted by key, using a separator in between
+     *
+     * @param builder The builder where the key-values are appended
+     * @param parameters HashMap with the key-value elements to be concatenated
+     * @param separator The separator (a char) which is added between hash elements
+     * @param encodeURI Indicates if the non-authentication values are URI encoded
      * @throws java.io.UnsupportedEncodingException if the encoding as US-ASCII is not supported.
      */
-    private String encodeURI(String input) throws java.io.UnsupportedEncodingException {
-        return URLEncoder.encode(input, "US-ASCII");
+    private void concatenateParams(StringBuilder builder, HashMap<String, String> parameters, String separator, boolean encodeURI) throws UnsupportedEncodingException {
+        String[] keys = RequestSigner.sortedKeys(parameters);
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
+            String value = parameters.get(key);
+            if (i > 0)
+                builder.append(separator);
+            builder.append(key).append('=');
+            /* just URI encode non-authentication params*/
+            if (encodeURI && !RequestSigner.isAuthenticationParameter(key))
+                RequestSigner.appendURIEncoded(builder, value);
+            else
+                builder.append(value);
+        }
     }
 
     /**
@@ -243,16 +744,11 @@ public class OoyalaAPI {
      */
 
     public String generateSignature(String HTTPMethod, String requestPath, HashMap<String, String> parameters, String requestBody) throws NoSuchAlgorithmException, IOException {
-        String stringToSign = secretKey + HTTPMethod + "/v2/" + requestPath;
-        stringToSign += concatenateParams(parameters, "");
-        stringToSign += requestBody;
-        MessageDigest digestProvider = MessageDigest.getInstance("SHA-256");
-        digestProvider.reset();
-
-        byte[] digest = digestProvider.digest(stringToSign.getBytes());
-        String signedInput = base64Encoder.encodeBase64String(digest);
-
-        return encodeURI(signedInput.substring(0, 43));
+        RequestSigner signer = RequestSigner.get();
+        StringBuilder stringToSign = signer.builder().append(secretKey).append(HTTPMethod).append("/v2/").append(requestPath);
+        concatenateParams(stringToSign, parameters, "", false);
+        stringToSign.append(requestBody);
+        return signer.sign(stringToSign);
     }
 
     /**
@@ -272,19 +768,27 @@ public class OoyalaAPI {
     }
 
     /**
-     * Response Handler
+     * Response Handler. Unless the items are streamed to a callback, the returned response holds the body as an unparsed String,
+     * or as the raw UTF-8 bytes of a successful response when the responses are parsed lazily.
+     * @param itemCallback The callback receiving the items while the body is parsed from the response stream, or null to read the whole body
      * @return
      */
-    private ResponseHandler<String> createResponseHandler() {
-        return new ResponseHandler<String>() {
-            public String handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
-                HttpEntity entity = response.getEntity();
-                responseCode = response.getStatusLine().getStatusCode();
+    private TransportResponseHandler createResponseHandler(final OoyalaItemCallback itemCallback) {
+        return new TransportResponseHandler() {
+            public OoyalaResponse handleResponse(int statusCode, Map<String, List<String>> headers, HttpEntity entity) throws IOException {
+                RequestTrace trace = (metrics != null) ? RequestTrace.current() : null;
+                Object body = null;
                 if (entity != null) {
-                    return EntityUtils.toString(entity);
-                } else {
-                    return null;
+                    if (itemCallback != null && statusCode >= 200 && statusCode < 400)
+                        body = parseJSON(entity, itemCallback);
+                    else if (lazyParsing && statusCode >= 200 && statusCode < 400 && isUTF8(EntityUtils.getContentCharSet(entity)))
+                        body = EntityUtils.toByteArray(entity);
+                    else
+                        body = EntityUtils.toString(entity);
                 }
+                if (trace != null)
+                    trace.markDownloaded();
+                return new OoyalaResponse(statusCode, headers, body, 0);
             }
         };
     }
@@ -301,7 +805,25 @@ public class OoyalaAPI {
      * @throws HttpStatusCodeException 
      */
     public Object sendRequest(String HTTPMethod, String URL, byte[] requestBody) throws ClientProtocolException, IOException, HttpStatusCodeException {
-        HttpRequestBase method = getHttpMethod(HTTPMethod, URL, new ByteArrayEntity(requestBody));
+        return request(HTTPMethod, URL, requestBody).getBody();
+    }
+
+    /**
+     * Sends a Request to the URL using the indicating HTTP method, content type and the array of bytes as body 
+     * @param HTTPMethod The HTTPMethod
+     * @param URL The URL where the request is made
+     * @param requestBody The request's body as an array of bytes
+     * @return The response from the server, including its status code and headers
+     * @throws ClientProtocolException
+     * @throws IOException
+     * @throws HttpStatusCodeException 
+     */
+    public OoyalaResponse request(String HTTPMethod, String URL, byte[] requestBody) throws ClientProtocolException, IOException, HttpStatusCodeException {
+        TransportRequest method = getHttpMethod(HTTPMethod, URL, new ByteArrayEntity(requestBody));
+        if (metrics != null) {
+            String path = method.getPath();
+            RequestTrace.begin(HTTPMethod, path.startsWith("/v2/") ? path.substring(4) : path);
+        }
         return executeRequest(method);
     }
 
@@ -318,168 +840,1172 @@ public class OoyalaAPI {
      * @throws ClientProtocolException 
      * @throws HttpStatusCodeException 
      */
-    @SuppressWarnings("rawtypes")
-	public Object sendRequest(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException{
-    	String jsonBody = "";
-    	
-    	if(requestBody != null && !requestBody.keySet().isEmpty()){
-    		jsonBody = JSONValue.toJSONString((Map)requestBody);
-    	}
-    	
-        String url = generateURLWithAuthenticationParameters(HTTPMethod, requestPath, parameters, jsonBody);
-        
-        HttpRequestBase method = getHttpMethod(HTTPMethod,url, new StringEntity(jsonBody));
-        return executeRequest(method);
+    public Object sendRequest(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException{
+        return request(HTTPMethod, requestPath, parameters, requestBody).getBody();
     }
 
     /**
-     * Creates a request to a given path (requestPath) using the indicated HTTP-Method (HTTPMethod) wit neither
-     * parameters nor a body (requestBody) 
+     * Creates a request to a given path using the indicated HTTP-Method with a (string) body 
      *
-     * @param HTTPMethod The HTTP method
-     * @param requestPath the request path
-     * @return The response from the server as an object of class Object. Must be casted to either a LinkedList<String> or an HashMap<String, Object>
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The request's body
+     * @return The response from the server, including its status code and headers
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public OoyalaResponse request(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException{
+        return request(HTTPMethod, requestPath, parameters, requestBody, null);
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with a (string) body, handing
+     * the items of the response to a callback as they are parsed from the response stream
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The request's body
+     * @param itemCallback The callback receiving every element of the response's items array
+     * @return The rest of the response from the server (i.e. next_page) as an object of class Object, with an empty items array
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public Object sendRequest(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody, OoyalaItemCallback itemCallback) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException{
+        return request(HTTPMethod, requestPath, parameters, requestBody, itemCallback).getBody();
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with a (string) body 
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The request's body
+     * @param itemCallback The callback receiving every element of the response's items array while it is
+     *    parsed from the response stream, or null to parse the whole response
+     * @return The response from the server, including its status code and headers
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public OoyalaResponse request(String HTTPMethod, final String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody, OoyalaItemCallback itemCallback) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException{
+    	final String jsonBody = toJSONBody(requestBody);
+        if (itemCallback == null && HTTPMethod.equalsIgnoreCase("get")) {
+            RequestCoalescer coalescer = requestCoalescer;
+            if (coalescer == null || !jsonBody.isEmpty())
+                return executeGetRequest(requestPath, parameters, jsonBody);
+            final HashMap<String, String> requestParameters = new HashMap<String, String>(parameters);
+            return coalescer.execute(ResponseCache.key(requestPath, requestParameters), new Callable<OoyalaResponse>() {
+                public OoyalaResponse call() throws Exception { return executeGetRequest(requestPath, requestParameters, jsonBody); }
+            });
+        }
+
+        String url = generateURLWithAuthenticationParameters(HTTPMethod, requestPath, parameters, jsonBody);
+        
+        TransportRequest method = signedBy(getHttpMethod(HTTPMethod,url, new StringEntity(jsonBody)), HTTPMethod, requestPath, parameters, jsonBody);
+        OoyalaResponse response = executeRequest(method, itemCallback);
+        invalidateCachedResponses(HTTPMethod, requestPath);
+        return response;
+    }
+
+    /**
+     * Creates a request to a given path (requestPath) using the indicated HTTP-Method (HTTPMethod) wit neither
+     * parameters nor a body (requestBody) 
+     *
+     * @param HTTPMethod The HTTP method
+     * @param requestPath the request path
+     * @return The response from the server as an object of class Object. Must be casted to either a LinkedList<String> or an HashMap<String, Object>
      * @throws IOException 
      * @throws ClientProtocolException 
      * @throws NoSuchAlgorithmException 
      * @throws HttpStatusCodeException 
      */
     public Object sendRequest(String HTTPMethod, String requestPath) throws ClientProtocolException, IOException, NoSuchAlgorithmException, HttpStatusCodeException {
-        return sendRequest(HTTPMethod, requestPath, new HashMap<String, String>(), new HashMap<String, Object>());
+        return request(HTTPMethod, requestPath).getBody();
     }
 
     /**
-     * Creates an instance of HttpRequestBase's subclass (HttpGet, HttpDelete, etc).
+     * Creates a request to a given path (requestPath) using the indicated HTTP-Method (HTTPMethod) wit neither
+     * parameters nor a body (requestBody) 
+     *
+     * @param HTTPMethod The HTTP method
+     * @param requestPath the request path
+     * @return The response from the server, including its status code and headers
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws NoSuchAlgorithmException 
+     * @throws HttpStatusCodeException 
+     */
+    public OoyalaResponse request(String HTTPMethod, String requestPath) throws ClientProtocolException, IOException, NoSuchAlgorithmException, HttpStatusCodeException {
+        return request(HTTPMethod, requestPath, new HashMap<String, String>(), new HashMap<String, Object>());
+    }
+
+    /**
+     * Sends a request precomputed by a template with a (string) body
+     *
+     * @param template The request template, created with createRequestTemplate
+     * @param requestBody The request's body
+     * @return The response from the server as an object of class Object. Must be casted to either a LinkedList<String> or an HashMap<String, Object>
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public Object sendRequest(RequestTemplate template, HashMap<String, Object> requestBody) throws ClientProtocolException, IOException, HttpStatusCodeException {
+        return request(template, requestBody).getBody();
+    }
+
+    /**
+     * Sends a request precomputed by a template with a (string) body
+     *
+     * @param template The request template, created with createRequestTemplate
+     * @param requestBody The request's body
+     * @return The response from the server, including its status code and headers
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public OoyalaResponse request(final RequestTemplate template, HashMap<String, Object> requestBody) throws ClientProtocolException, IOException, HttpStatusCodeException {
+        String jsonBody = toJSONBody(requestBody);
+        RequestTrace trace = beginTrace(template.getHTTPMethod(), template.getRequestPath());
+        long start = System.nanoTime();
+        String url = template.generateURL(getExpiration(), jsonBody);
+        traceSigning(trace, start, start);
+        TransportRequest method = getHttpMethod(template.getHTTPMethod(), url, new StringEntity(jsonBody));
+        final String signedBody = jsonBody;
+        method.setSigner(new TransportRequest.URLSigner() {
+            public String sign(long expires) { return template.generateURL(expires, signedBody); }
+        });
+        OoyalaResponse response = executeRequest(method);
+        invalidateCachedResponses(template.getHTTPMethod(), template.getRequestPath());
+        return response;
+    }
+
+    /**
+     * Creates a template for requests whose method, path and query parameters do not change, precomputing
+     * the sorted and URI encoded static part of their URL and signature. The template keeps the current keys
+     * and base URL.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @return The template, which can be shared between threads
+     * @throws UnsupportedEncodingException if the encoding as US-ASCII is not supported.
+     */
+    public RequestTemplate createRequestTemplate(String HTTPMethod, String requestPath, HashMap<String, String> parameters) throws UnsupportedEncodingException {
+        return new RequestTemplate(baseURL, secretKey, apiKey, HTTPMethod, requestPath, parameters);
+    }
+
+    /**
+     * Serializes a request body as JSON
+     * @param requestBody The request's body
+     * @return The JSON body, or an empty string if there is no body
+     */
+    @SuppressWarnings("rawtypes")
+    private String toJSONBody(HashMap<String, Object> requestBody) {
+    	if(requestBody != null && !requestBody.keySet().isEmpty())
+    		return JSONValue.toJSONString((Map)requestBody);
+        return "";
+    }
+
+    /**
+     * Creates the request handed to the transport. Only POST, PATCH and PUT requests carry the entity.
      * @param HTTPMethod The HTTPMethod string name
      * @param URL The URL
      * @param entity the entity carrying the request's content
-     * @return An instance of a HttpRequestBase's subclass
+     * @return the request
+     */
+    private TransportRequest getHttpMethod(String HTTPMethod, String URL, AbstractHttpEntity entity) {
+        String method = HTTPMethod.toLowerCase();
+        if (!method.equals("post") && !method.equals("patch") && !method.equals("put"))
+            return new TransportRequest(HTTPMethod, URL, null);
+        entity.setContentType(contentType);
+        return new TransportRequest(HTTPMethod, URL, compressRequestBody(entity));
+    }
+
+    /**
+     * Gzips a JSON request body at least as large as the request compression threshold. The request is signed
+     * before, over the uncompressed body.
+     * @param entity The request body
+     * @return the gzipped body, or the body itself if it is not compressed
+     */
+    private AbstractHttpEntity compressRequestBody(AbstractHttpEntity entity) {
+        int threshold = requestCompressionThreshold;
+        if (threshold <= 0 || !(entity instanceof StringEntity) || entity.getContentLength() < threshold)
+            return entity;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((int)(entity.getContentLength() / 4) + 64);
+        try {
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            entity.writeTo(gzip);
+            gzip.close();
+        } catch (IOException e) {
+            /* can not happen in memory */
+            return entity;
+        }
+        ByteArrayEntity gzipped = new ByteArrayEntity(compressed.toByteArray());
+        gzipped.setContentType(entity.getContentType());
+        gzipped.setContentEncoding("gzip");
+        return gzipped;
+    }
+
+    /**
+     * Generate the URL including the authentication parameters
+     * @param HTTPMethod The HTTP Method
+     * @param requestPath The request's path
+     * @param parameters The query parameters
+     * @param requestBody The string request body
+     * @return
+     * @throws NoSuchAlgorithmException
+     * @throws IOException 
+     * @throws JsonMappingException 
+     * @throws JsonGenerationException 
+     */
+    private String generateURLWithAuthenticationParameters(String HTTPMethod, String requestPath, HashMap<String, String> parameters, String requestBody) throws NoSuchAlgorithmException, IOException {
+        RequestTrace trace = beginTrace(HTTPMethod, requestPath);
+        long expires = getExpiration();
+        SignedURLCache cache = signedURLCache;
+        if (cache == null || (requestBody != null && !requestBody.isEmpty()))
+            return signURL(trace, HTTPMethod, requestPath, parameters, expires, requestBody);
+
+        String key = SignedURLCache.key(HTTPMethod, requestPath, parameters);
+        String url = cache.get(key, expires);
+        if (url == null) {
+            url = signURL(trace, HTTPMethod, requestPath, parameters, expires, requestBody);
+            cache.put(key, expires, url);
+        }
+        return url;
+    }
+
+    /**
+     * Builds and signs the URL of a request
+     * @param trace The trace of the request, may be null
+     * @param HTTPMethod The HTTP Method
+     * @param requestPath The request's path
+     * @param parameters The query parameters
+     * @param expires The expiration date (in seconds)
+     * @param requestBody The string request body
+     * @return The URL, including the api_key, expires and signature parameters
+     * @throws UnsupportedEncodingException if the encoding as US-ASCII is not supported.
+     */
+    private String signURL(RequestTrace trace, String HTTPMethod, String requestPath, HashMap<String, String> parameters, long expires, String requestBody) throws UnsupportedEncodingException {
+        long start = System.nanoTime();
+        RequestTemplate template = createRequestTemplate(HTTPMethod, requestPath, parameters);
+        long built = System.nanoTime();
+        String url = template.generateURL(expires, requestBody);
+        traceSigning(trace, start, built);
+        return url;
+    }
+
+    /**
+     * Starts the trace of a request, if requests are traced
+     * @param HTTPMethod The HTTP Method
+     * @param requestPath The request's path
+     * @return The trace, or null if requests are not traced
+     */
+    private RequestTrace beginTrace(String HTTPMethod, String requestPath) {
+        return (metrics != null) ? RequestTrace.begin(HTTPMethod, requestPath) : null;
+    }
+
+    /**
+     * Records the time spent building the URL and signing a request
+     * @param trace The trace of the request, may be null
+     * @param start Time (System.nanoTime()) the URL building started
+     * @param built Time (System.nanoTime()) the URL was built and the signing started
+     */
+    private static void traceSigning(RequestTrace trace, long start, long built) {
+        if (trace == null)
+            return;
+        trace.add(RequestTrace.Phase.URL, built - start);
+        trace.add(RequestTrace.Phase.SIGN, System.nanoTime() - built);
+    }
+
+    /**
+     * Completes the trace of the request of the current thread and hands it to the metrics
+     * @param failure The exception the request failed with, or null
+     */
+    private void endTrace(Exception failure) {
+        OoyalaMetrics receiver = metrics;
+        RequestTrace trace = (receiver != null) ? RequestTrace.current() : null;
+        if (trace == null)
+            return;
+        trace.end(failure);
+        receiver.onRequest(trace);
+    }
+
+    /**
+     * Executes the request
+     * @param method The request
+     * @return The response from the server, with its body parsed as either a LinkedList<String> or an HashMap<String, Object>
+     * @throws ClientProtocolException
+     * @throws IOException
+     * @throws HttpStatusCodeException 
+     */
+    private OoyalaResponse executeRequest(TransportRequest method) throws ClientProtocolException, IOException, HttpStatusCodeException {
+        return executeRequest(method, null);
+    }
+
+    /**
+     * Executes the request
+     * @param method The request
+     * @param itemCallback The callback receiving the items while the body is parsed from the response stream, or null to parse the whole body
+     * @return The response from the server, with its body parsed as either a LinkedList<String> or an HashMap<String, Object>
+     * @throws ClientProtocolException
+     * @throws IOException
+     * @throws HttpStatusCodeException 
+     */
+    private OoyalaResponse executeRequest(TransportRequest method, OoyalaItemCallback itemCallback) throws ClientProtocolException, IOException, HttpStatusCodeException {
+        long start = System.nanoTime();
+        Exception failure = null;
+        try {
+            OoyalaResponse response = execute(method, itemCallback);
+            Object json = (itemCallback != null) ? response.getBody() : parseTracedJSON(response.getBody());
+            return response.withBody(json, System.nanoTime() - start);
+        } catch (Exception e) {
+            failure = e;
+            throw e;
+        } finally {
+            endTrace(failure);
+        }
+    }
+
+    /**
+     * Parses a JSON response body, recording the time it takes in the trace of the request
+     * @param response The response body, as a String or (when the responses are parsed lazily) as UTF-8 bytes
+     * @return The parsed body as either a LinkedList<String> or an HashMap<String, Object> (or views of them when the
+     * responses are parsed lazily), or null if the body is empty
+     */
+    private Object parseTracedJSON(Object response) {
+        RequestTrace trace = (metrics != null) ? RequestTrace.current() : null;
+        if (trace == null)
+            return parseBody(response);
+        long start = System.nanoTime();
+        Object json = parseBody(response);
+        trace.add(RequestTrace.Phase.PARSE, System.nanoTime() - start);
+        return json;
+    }
+
+    /**
+     * Executes the request without parsing the response, unless its items are streamed to a callback
+     * @param method The request
+     * @param itemCallback The callback receiving the items while the body is parsed from the response stream, or null to read the whole body
+     * @return The response from the server, with its body as an unparsed String unless there is a callback
+     * @throws ClientProtocolException
+     * @throws IOException
+     * @throws HttpStatusCodeException 
+     */
+    private OoyalaResponse execute(TransportRequest method, OoyalaItemCallback itemCallback) throws ClientProtocolException, IOException, HttpStatusCodeException {
+        HedgingPolicy hedging = hedgingPolicy;
+        OoyalaResponse response;
+        if (hedging != null && itemCallback == null && method.getMethod().equals("GET"))
+            response = sendHedged(hedging, method);
+        else
+            response = send(method, createResponseHandler(itemCallback), itemCallback == null);
+        return checkStatus(response);
+    }
+
+    /**
+     * Records the status code of a response, and throws it if it is an error
+     * @param response The response
+     * @return the response
+     * @throws HttpStatusCodeException if the status code is an error
+     */
+    private OoyalaResponse checkStatus(OoyalaResponse response) throws HttpStatusCodeException {
+        RequestTrace trace = (metrics != null) ? RequestTrace.current() : null;
+        if (trace != null)
+            trace.setStatusCode(response.getStatusCode());
+        responseCode = response.getStatusCode();
+        if (!response.isOK())
+            throw new HttpStatusCodeException((String)response.getBody(), response.getStatusCode(), response.getHeaders());
+        return response;
+    }
+
+    /**
+     * Sends the request, and retries it as the rate limiter allows
+     * @param method The request
+     * @param handler The handler reading the response
+     * @param replayable false if the handler hands the body to the caller while it is read (to a callback or a stream), so
+     * that a request failing while its body is read can not be retried
+     * @return The last response from the server, whatever its status code
+     * @throws ClientProtocolException
+     * @throws IOException
+     */
+    private OoyalaResponse send(TransportRequest method, TransportResponseHandler handler, boolean replayable) throws ClientProtocolException, IOException {
+        RateLimiter limiter = rateLimiter;
+        RequestTrace trace = (metrics != null) ? RequestTrace.current() : null;
+        OoyalaResponse response;
+        if (limiter == null) {
+            response = getTransport().execute(method, handler);
+        } else {
+            for (int retries = 0; ; retries++) {
+                if (retries > 0)
+                    resignIfExpiring(method);
+                limiter.acquire();
+                IOException failure = null;
+                int statusCode = 0;
+                response = null;
+                try {
+                    response = getTransport().execute(method, handler);
+                    statusCode = response.getStatusCode();
+                } catch (ClientProtocolException e) {
+                    throw e;
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    /* released whatever the failure, so that no slot leaks */
+                    limiter.release(statusCode);
+                }
+                long delay;
+                if (failure != null) {
+                    /* items already handed to a callback or bytes written to a stream can not be taken back */
+                    if (!replayable || method.isAborted() || Thread.currentThread().isInterrupted() || !limiter.isRetryable(method.getMethod(), 0, retries))
+                        throw failure;
+                    delay = limiter.getRetryDelay(retries, null);
+                } else {
+                    if (response.isOK() || !limiter.isRetryable(method.getMethod(), statusCode, retries))
+                        break;
+                    delay = limiter.getRetryDelay(retries, response.getHeader("Retry-After"));
+                }
+                RateLimiter.sleep(delay);
+                if (trace != null)
+                    trace.addRetry();
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Signs the URL of a request about to be retried again, if it expires within the expiration window, so that a
+     * retry delayed by the backoff is not rejected as unauthorized
+     * @param method The request
+     * @throws IOException if the body can not be read to sign it
+     */
+    private void resignIfExpiring(TransportRequest method) throws IOException {
+        if (method.getExpires() - System.currentTimeMillis() / 1000 < expirationWindow)
+            method.resign(getExpiration());
+    }
+
+    /**
+     * Sets the signer of a request whose URL is signed over a path, query parameters and a string body
+     * @param method The request
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters, which are copied
+     * @param requestBody The string request body
+     * @return the request
+     */
+    private TransportRequest signedBy(TransportRequest method, final String HTTPMethod, final String requestPath, HashMap<String, String> parameters, final String requestBody) {
+        final HashMap<String, String> signedParameters = new HashMap<String, String>(parameters);
+        method.setSigner(new TransportRequest.URLSigner() {
+            public String sign(long expires) throws IOException {
+                return createRequestTemplate(HTTPMethod, requestPath, signedParameters).generateURL(expires, requestBody);
+            }
+        });
+        return method;
+    }
+
+    /**
+     * Sends a GET request, and a duplicate of it if no response arrived after the delay of the hedging policy. The
+     * first response of the two is returned and the other request is aborted.
+     * @param hedging The hedging policy
+     * @param method The request
+     * @return The first response from the server, whatever its status code
+     * @throws IOException if both requests failed
+     */
+    private OoyalaResponse sendHedged(HedgingPolicy hedging, TransportRequest method) throws IOException {
+        String path = method.getPath();
+        String endpoint = RequestTrace.endpoint("GET", path.startsWith("/v2/") ? path.substring(4) : path);
+        long delayNanos = hedging.getDelayNanos(endpoint);
+        long start = System.nanoTime();
+        CompletionService<OoyalaResponse> attempts = new ExecutorCompletionService<OoyalaResponse>(getHedgeExecutor());
+        Future<OoyalaResponse> primary = attempts.submit(sendAttempt(method));
+        TransportRequest hedge = null;
+        Future<OoyalaResponse> hedgeFuture = null;
+        Future<OoyalaResponse> winner = null;
+        Throwable failure = null;
+        try {
+            Future<OoyalaResponse> done = attempts.poll(delayNanos, TimeUnit.NANOSECONDS);
+            if (done == null && hedging.tryHedge()) {
+                hedge = method.copy();
+                hedgeFuture = attempts.submit(sendAttempt(hedge));
+                RequestTrace trace = (metrics != null) ? RequestTrace.current() : null;
+                if (trace != null)
+                    trace.setHedged(true);
+            }
+            for (int pending = (hedgeFuture != null) ? 2 : 1; pending > 0; pending--) {
+                if (done == null)
+                    done = attempts.take();
+                try {
+                    OoyalaResponse response = done.get();
+                    winner = done;
+                    hedging.record(endpoint, System.nanoTime() - start, done == hedgeFuture);
+                    return response;
+                } catch (ExecutionException e) {
+                    /* wait for the other request, if any */
+                    if (failure == null)
+                        failure = e.getCause();
+                }
+                done = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response to " + method);
+        } finally {
+            if (winner != primary) {
+                method.abort();
+                primary.cancel(true);
+            }
+            if (hedgeFuture != null && winner != hedgeFuture) {
+                hedge.abort();
+                hedgeFuture.cancel(true);
+            }
+        }
+        if (failure instanceof IOException)
+            throw (IOException)failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException)failure;
+        if (failure instanceof Error)
+            throw (Error)failure;
+        throw new IOException(failure);
+    }
+
+    /**
+     * Creates the task sending one of the requests of a hedged request
+     * @param method The request
+     * @return the task
+     */
+    private Callable<OoyalaResponse> sendAttempt(final TransportRequest method) {
+        return new Callable<OoyalaResponse>() {
+            public OoyalaResponse call() throws IOException { return send(method, createResponseHandler(null), true); }
+        };
+    }
+
+    /**
+     * Gets the executor sending the hedged requests, creating a pool of daemon threads on the first call
+     * @return the executor
+     */
+    private synchronized ExecutorService getHedgeExecutor() {
+        if (closed)
+            throw new IllegalStateException("The OoyalaAPI instance has been closed");
+        if (hedgeExecutor == null) {
+            hedgeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ooyala-api-hedge-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return hedgeExecutor;
+    }
+
+    /**
+     * Executes a GET request without an item callback, through the response cache if it is enabled
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The string request body
+     * @return The response from the server (or the cache), with its body parsed as either a LinkedList<String> or an HashMap<String, Object>
+     * @throws NoSuchAlgorithmException
+     * @throws ClientProtocolException
+     * @throws IOException
+     * @throws HttpStatusCodeException 
+     */
+    private OoyalaResponse executeGetRequest(String requestPath, HashMap<String, String> parameters, String requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        ResponseCache cache = responseCache;
+        if (cache != null)
+            return executeCachedRequest(cache, requestPath, parameters, requestBody);
+        String url = generateURLWithAuthenticationParameters("GET", requestPath, parameters, requestBody);
+        return executeRequest(signedBy(getHttpMethod("GET", url, new StringEntity(requestBody)), "GET", requestPath, parameters, requestBody));
+    }
+
+    /**
+     * Executes a GET request through the response cache. A fresh cached response is returned without contacting
+     * the API; a stale one is revalidated with a conditional GET when the API sent validators for it.
+     * @param cache The response cache
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The string request body
+     * @return The response from the server (or the cache), with its body parsed as either a LinkedList<String> or an HashMap<String, Object>
+     * @throws NoSuchAlgorithmException
+     * @throws ClientProtocolException
+     * @throws IOException
+     * @throws HttpStatusCodeException 
+     */
+    private OoyalaResponse executeCachedRequest(ResponseCache cache, String requestPath, HashMap<String, String> parameters, String requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        long start = System.nanoTime();
+        String key = ResponseCache.key(requestPath, parameters);
+        long generation = cache.getGeneration();
+        ResponseCache.Entry entry = cache.get(requestPath, key);
+        if (entry != null && cache.isFresh(entry)) {
+            RequestTrace trace = beginTrace("GET", requestPath);
+            if (trace != null) {
+                trace.setCached(true);
+                trace.setStatusCode(200);
+            }
+            responseCode = 200;
+            OoyalaResponse response = new OoyalaResponse(200, Collections.<String, List<String>>emptyMap(), parseTracedJSON(entry.body), System.nanoTime() - start);
+            endTrace(null);
+            return response;
+        }
+
+        Exception failure = null;
+        try {
+            String url = generateURLWithAuthenticationParameters("GET", requestPath, parameters, requestBody);
+            TransportRequest method = signedBy(getHttpMethod("GET", url, new StringEntity(requestBody)), "GET", requestPath, parameters, requestBody);
+            OoyalaResponse response;
+            if (entry != null && entry.isRevalidatable()) {
+                TransportRequest conditional = method.copy();
+                if (entry.eTag != null)
+                    conditional.setHeader("If-None-Match", entry.eTag);
+                if (entry.lastModified != null)
+                    conditional.setHeader("If-Modified-Since", entry.lastModified);
+                response = execute(conditional, null);
+                if (response.getStatusCode() == 304) {
+                    /* the cached response is still valid, it is served as if the API had sent it again, unless
+                       a write invalidated the cache meanwhile: it may then predate the write, and is fetched again */
+                    if (cache.refresh(entry, generation))
+                        return new OoyalaResponse(200, response.getHeaders(), parseTracedJSON(entry.body), System.nanoTime() - start);
+                    generation = cache.getGeneration();
+                    response = execute(method, null);
+                }
+            } else {
+                response = execute(method, null);
+            }
+            Object body = response.getBody();
+            Object json = parseTracedJSON(body);
+            if (response.getStatusCode() == 200) {
+                String text = (body instanceof byte[]) ? new String((byte[])body, UTF8) : (String)body;
+                cache.put(requestPath, key, text, response.getHeader("ETag"), response.getHeader("Last-Modified"), generation);
+            }
+            return response.withBody(json, System.nanoTime() - start);
+        } catch (Exception e) {
+            failure = e;
+            throw e;
+        } finally {
+            endTrace(failure);
+        }
+    }
+
+    /**
+     * Drops the cached responses a request may have modified
+     * @param HTTPMethod The HTTP method of the request
+     * @param requestPath The request path
+     */
+    private void invalidateCachedResponses(String HTTPMethod, String requestPath) {
+        ResponseCache cache = responseCache;
+        if (cache != null && !HTTPMethod.equalsIgnoreCase("get"))
+            cache.invalidate(requestPath);
+    }
+
+    /**
+     * Sends an entity to a URL outside of the API (i.e. an uploading URL), without signing the request nor parsing the response.
+     * The body is sent as is, as application/octet-stream unless the entity has a content type, and the request is throttled,
+     * retried and traced like the requests to the API.
+     * @param HTTPMethod The HTTP method
+     * @param URL The URL where the request is made
+     * @param entity The request's body, which must be repeatable to be retried
+     * @return The response from the server, with its body as an unparsed String
+     * @throws ClientProtocolException
+     * @throws IOException
+     * @throws HttpStatusCodeException 
+     */
+    OoyalaResponse sendEntity(String HTTPMethod, String URL, AbstractHttpEntity entity) throws ClientProtocolException, IOException, HttpStatusCodeException {
+        if (entity.getContentType() == null)
+            entity.setContentType("application/octet-stream");
+        TransportRequest method = new TransportRequest(HTTPMethod, URL, entity);
+        if (metrics != null) {
+            String path = method.getPath();
+            RequestTrace.begin(HTTPMethod, path.startsWith("/v2/") ? path.substring(4) : path);
+        }
+        Exception failure = null;
+        try {
+            return execute(method, null);
+        } catch (Exception e) {
+            failure = e;
+            throw e;
+        } finally {
+            endTrace(failure);
+        }
+    }
+
+    /**
+     * Parses a JSON response body, lazily if enabled
+     * @param response The response body, as a String or UTF-8 bytes
+     * @return The parsed body, or null if the body is empty
+     */
+    private Object parseBody(Object response) {
+        if (response instanceof byte[])
+            return parseLazyJSON((byte[])response);
+        if (lazyParsing && response != null)
+            return parseLazyJSON(((String)response).getBytes(UTF8));
+        return parseJSON((String)response);
+    }
+
+    /**
+     * Parses a JSON response body lazily. Package-private for the benchmarks.
+     * @param response The UTF-8 encoded response body
+     * @return The parsed body as either a Map<String, Object> or a List<Object> view, or null if the body is empty
+     */
+    Object parseLazyJSON(byte[] response) {
+        if (response.length == 0)
+            return null;
+        try {
+            return LazyJSON.parse(response);
+        } catch (ParseException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Indicates if the charset of a response is UTF-8, the one of the API
+     * @param charset The charset of the Content-Type header, or null
+     * @return true if it is UTF-8 or not given
+     */
+    private static boolean isUTF8(String charset) {
+        return charset == null || charset.equalsIgnoreCase("UTF-8") || charset.equalsIgnoreCase("UTF8");
+    }
+
+    /**
+     * Parses a JSON response body. Package-private for the benchmarks.
+     * @param response The response body
+     * @return The parsed body as either a LinkedList<String> or an HashMap<String, Object>, or null if the body is empty
+     */
+    Object parseJSON(String response) {
+        if(response == null || response.isEmpty())
+        	return null;
+
+        JSONParser parser = new JSONParser();
+        Object json = null;
+
+		try {
+			json = parser.parse(response, containerFactory);
+		} catch (ParseException e) {
+			e.printStackTrace();
+		}
+
+        return json;
+    }
+
+    /**
+     * Parses a JSON response straight from the response stream, handing its items to a callback
+     * @param entity The response entity
+     * @param itemCallback The callback receiving the items
+     * @return The rest of the parsed body, with an empty items array
+     * @throws IOException if the response can not be read or is not valid JSON
+     */
+    private Object parseJSON(HttpEntity entity, OoyalaItemCallback itemCallback) throws IOException {
+        String charset = EntityUtils.getContentCharSet(entity);
+        Reader reader = new InputStreamReader(entity.getContent(), (charset != null) ? charset : "UTF-8");
+        ItemsContentHandler handler = new ItemsContentHandler(itemCallback);
+        try {
+            new JSONParser().parse(reader, handler);
+        } catch (ParseException e) {
+            throw new IOException("Could not parse the response: " + e, e);
+        } finally {
+            reader.close();
+        }
+        return handler.getResult();
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with a (byte array) body 
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The request's body
+     * @return The response from the server as an object of class Object. Must be casted to either a LinkedList<String> or an HashMap<String, Object>
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public Object sendRequest(String HTTPMethod, String requestPath, HashMap<String, String> parameters, byte[] requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        return request(HTTPMethod, requestPath, parameters, requestBody).getBody();
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with a (byte array) body 
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The request's body
+     * @return The response from the server, including its status code and headers
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public OoyalaResponse request(String HTTPMethod, String requestPath, HashMap<String, String> parameters, final byte[] requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        String url;
+        final RequestTemplate template;
+        if (requestBody.length == 0) {
+            url = generateURLWithAuthenticationParameters(HTTPMethod, requestPath, parameters, "");
+            template = null;
+        } else {
+            /* the body bytes are signed as they are, without copying them into a String */
+            RequestTrace trace = beginTrace(HTTPMethod, requestPath);
+            long expires = getExpiration();
+            long start = System.nanoTime();
+            template = createRequestTemplate(HTTPMethod, requestPath, parameters);
+            long built = System.nanoTime();
+            MessageDigest digest = template.startSignature(expires);
+            digest.update(requestBody);
+            url = template.generateURL(expires, digest);
+            traceSigning(trace, start, built);
+        }
+        TransportRequest method = getHttpMethod(HTTPMethod,url, new ByteArrayEntity(requestBody));
+        if (template == null) {
+            signedBy(method, HTTPMethod, requestPath, parameters, "");
+        } else {
+            method.setSigner(new TransportRequest.URLSigner() {
+                public String sign(long expires) {
+                    MessageDigest digest = template.startSignature(expires);
+                    digest.update(requestBody);
+                    return template.generateURL(expires, digest);
+                }
+            });
+        }
+        OoyalaResponse response = executeRequest(method);
+        invalidateCachedResponses(HTTPMethod, requestPath);
+        return response;
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with the content of a file as body.
+     * The file is signed and sent straight from disk, without being loaded in memory.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The file holding the request's body
+     * @return The response from the server as an object of class Object. Must be casted to either a LinkedList<String> or an HashMap<String, Object>
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public Object sendRequest(String HTTPMethod, String requestPath, HashMap<String, String> parameters, Path requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        return request(HTTPMethod, requestPath, parameters, requestBody).getBody();
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with the content of a file as body.
+     * The file is signed and sent straight from disk, without being loaded in memory.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The file holding the request's body
+     * @return The response from the server, including its status code and headers
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public OoyalaResponse request(String HTTPMethod, String requestPath, HashMap<String, String> parameters, Path requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        FileChannel channel = FileChannel.open(requestBody, StandardOpenOption.READ);
+        try {
+            return request(HTTPMethod, requestPath, parameters, channel);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with the content of a file, from the
+     * channel's current position to its end, as body. The file is signed through a memory mapping and sent
+     * straight from the channel, without being loaded in the heap. The channel is neither moved nor closed.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The channel of the file holding the request's body
+     * @return The response from the server as an object of class Object. Must be casted to either a LinkedList<String> or an HashMap<String, Object>
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public Object sendRequest(String HTTPMethod, String requestPath, HashMap<String, String> parameters, FileChannel requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        return request(HTTPMethod, requestPath, parameters, requestBody).getBody();
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with the content of a file, from the
+     * channel's current position to its end, as body. The file is signed through a memory mapping and sent
+     * straight from the channel, without being loaded in the heap. The channel is neither moved nor closed.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The channel of the file holding the request's body
+     * @return The response from the server, including its status code and headers
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public OoyalaResponse request(String HTTPMethod, String requestPath, HashMap<String, String> parameters, final FileChannel requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        final long position = requestBody.position();
+        final long size = requestBody.size() - position;
+
+        RequestTrace trace = beginTrace(HTTPMethod, requestPath);
+        long expires = getExpiration();
+        long start = System.nanoTime();
+        final RequestTemplate template = createRequestTemplate(HTTPMethod, requestPath, parameters);
+        long built = System.nanoTime();
+        String url = signFile(template, expires, requestBody, position, size);
+        traceSigning(trace, start, built);
+
+        TransportRequest method = getHttpMethod(HTTPMethod, url, new FileChannelEntity(requestBody, position, size));
+        method.setSigner(new TransportRequest.URLSigner() {
+            public String sign(long expires) throws IOException { return signFile(template, expires, requestBody, position, size); }
+        });
+        OoyalaResponse response = executeRequest(method);
+        invalidateCachedResponses(HTTPMethod, requestPath);
+        return response;
+    }
+
+    /**
+     * Signs a request whose body is a region of a file, through a memory mapping
+     * @param template The template of the request
+     * @param expires The expiration date (in seconds)
+     * @param file The channel of the file
+     * @param position Position of the region in the file
+     * @param size Size of the region
+     * @return The URL, including the api_key, expires and signature parameters
+     * @throws IOException if the file can not be mapped
+     */
+    private static String signFile(RequestTemplate template, long expires, FileChannel file, long position, long size) throws IOException {
+        MessageDigest digest = template.startSignature(expires);
+        for (long offset = 0; offset < size; offset += MAPPED_REGION_SIZE)
+            digest.update(file.map(FileChannel.MapMode.READ_ONLY, position + offset, Math.min(MAPPED_REGION_SIZE, size - offset)));
+        return template.generateURL(expires, digest);
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with the content of a stream as body.
+     * Since the body must be signed before it is sent, the stream is first spooled to a temporary file,
+     * which is then signed and sent from disk; the content is never loaded in memory. The stream is not closed.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The stream of the request's body
+     * @return The response from the server as an object of class Object. Must be casted to either a LinkedList<String> or an HashMap<String, Object>
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public Object sendRequest(String HTTPMethod, String requestPath, HashMap<String, String> parameters, InputStream requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        return request(HTTPMethod, requestPath, parameters, requestBody).getBody();
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with the content of a stream as body.
+     * Since the body must be signed before it is sent, the stream is first spooled to a temporary file,
+     * which is then signed and sent from disk; the content is never loaded in memory. The stream is not closed.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters 
+     * @param requestBody The stream of the request's body
+     * @return The response from the server, including its status code and headers
+     * @throws NoSuchAlgorithmException 
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws HttpStatusCodeException 
+     */
+    public OoyalaResponse request(String HTTPMethod, String requestPath, HashMap<String, String> parameters, InputStream requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        Path spool = Files.createTempFile("ooyala-api-", ".body");
+        try {
+            FileChannel channel = FileChannel.open(spool, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                ReadableByteChannel source = Channels.newChannel(requestBody);
+                long position = 0;
+                long transferred;
+                while ((transferred = channel.transferFrom(source, position, MAPPED_REGION_SIZE)) > 0)
+                    position += transferred;
+                channel.position(0);
+                return request(HTTPMethod, requestPath, parameters, channel);
+            } finally {
+                channel.close();
+            }
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with a (string) body, and writes the body of
+     * the response to a stream as it arrives, without parsing it. The status code is checked as for any request; the
+     * body of an error response is not written. The stream is not closed.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @param responseBody The stream the response's body is written to
+     * @return The number of bytes written
+     * @throws NoSuchAlgorithmException
+     * @throws IOException if the request fails, or the response's body is truncated or can not be written
+     * @throws ClientProtocolException
+     * @throws HttpStatusCodeException
+     */
+    public long sendRequestTo(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody, OutputStream responseBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        return (Long)requestTo(HTTPMethod, requestPath, parameters, requestBody, responseBody).getBody();
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with a (string) body, and writes the body of
+     * the response to a stream as it arrives, without parsing it. The stream is not closed.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @param responseBody The stream the response's body is written to
+     * @return The response from the server, including its status code and headers, with the number of bytes written (a Long) as body
+     * @throws NoSuchAlgorithmException
+     * @throws IOException if the request fails, or the response's body is truncated or can not be written
+     * @throws ClientProtocolException
+     * @throws HttpStatusCodeException
+     */
+    public OoyalaResponse requestTo(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody, OutputStream responseBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        return executeStreamingRequest(HTTPMethod, requestPath, parameters, requestBody, new StreamingResponseHandler(responseBody));
+    }
+
+    /**
+     * Creates a request to a given path using the indicated HTTP-Method with a (string) body, and writes the body of
+     * the response to a channel as it arrives, without parsing it. A FileChannel is written from its position, with
+     * transferFrom; other channels through a direct buffer. The channel is not closed.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @param responseBody The channel the response's body is written to
+     * @return The number of bytes written
+     * @throws NoSuchAlgorithmException
+     * @throws IOException if the request fails, or the response's body is truncated or can not be written
+     * @throws ClientProtocolException
+     * @throws HttpStatusCodeException
      */
-    private HttpRequestBase getHttpMethod(String HTTPMethod, String URL, AbstractHttpEntity entity) {
-        HttpRequestBase method = null;
-        entity.setContentType(contentType);
-        /* create the method object */
-        if (HTTPMethod.toLowerCase().contentEquals("get")) {
-            method = new HttpGet(URL);
-        } else if (HTTPMethod.toLowerCase().contentEquals("delete")) {
-            method = new HttpDelete(URL);
-        } else {
-            if (HTTPMethod.toLowerCase().contentEquals("post")) {
-            method = new HttpPost(URL);
-                ((HttpPost) method).setEntity(entity);
-            } else if (HTTPMethod.toLowerCase().contentEquals("patch")) { 
-                method = new HttpPatch(URL);
-                ((HttpPatch) method).setEntity(entity);
-            } else if (HTTPMethod.toLowerCase().contentEquals("put")) {
-                method = new HttpPut(URL);
-                ((HttpPut) method).setEntity(entity);
-            }
-        }
-        return method;
+    public long sendRequestTo(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody, WritableByteChannel responseBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        return (Long)requestTo(HTTPMethod, requestPath, parameters, requestBody, responseBody).getBody();
     }
 
     /**
-     * Generate the URL including the authentication parameters
-     * @param HTTPMethod The HTTP Method
-     * @param requestPath The request's path
+     * Creates a request to a given path using the indicated HTTP-Method with a (string) body, and writes the body of
+     * the response to a channel as it arrives, without parsing it. The channel is not closed.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
      * @param parameters The query parameters
-     * @param requestBody The string request body
-     * @return
+     * @param requestBody The request's body
+     * @param responseBody The channel the response's body is written to
+     * @return The response from the server, including its status code and headers, with the number of bytes written (a Long) as body
      * @throws NoSuchAlgorithmException
-     * @throws IOException 
-     * @throws JsonMappingException 
-     * @throws JsonGenerationException 
+     * @throws IOException if the request fails, or the response's body is truncated or can not be written
+     * @throws ClientProtocolException
+     * @throws HttpStatusCodeException
      */
-    @SuppressWarnings("unchecked")
-    private String generateURLWithAuthenticationParameters(String HTTPMethod, String requestPath, HashMap<String, String> parameters, String requestBody) throws NoSuchAlgorithmException, IOException {
-    	HashMap<String, String> parametersWithAuthentication = (HashMap<String, String>)parameters.clone();
-    	parametersWithAuthentication.put("api_key", apiKey);
-    	parametersWithAuthentication.put("expires", String.format("%d",getExpiration()));
-    	String signature = generateSignature(HTTPMethod.toUpperCase(), requestPath, parametersWithAuthentication, requestBody);
-    	parametersWithAuthentication.put("signature", signature);
-        return buildURL(HTTPMethod, requestPath, parametersWithAuthentication);
+    public OoyalaResponse requestTo(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody, WritableByteChannel responseBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        return executeStreamingRequest(HTTPMethod, requestPath, parameters, requestBody, new StreamingResponseHandler(responseBody));
     }
 
     /**
-     * Executes the request
-     * @param method The class containing the type of request (HttpGet, HttpDelete, etc)
-     * @return The response from the server as an object of class Object. Must be casted to either a LinkedList<String> or an HashMap<String, Object>
+     * Creates a request to a given path using the indicated HTTP-Method with a (string) body, and writes the body of
+     * the response to a file, without parsing it. The body is written to a temporary file next to it, which replaces
+     * the file once the whole body is received, so a failed request leaves the file untouched.
+     *
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @param responseBody The file the response's body is written to
+     * @return The number of bytes written
+     * @throws NoSuchAlgorithmException
+     * @throws IOException if the request fails, or the response's body is truncated or can not be written
      * @throws ClientProtocolException
-     * @throws IOException
-     * @throws HttpStatusCodeException 
+     * @throws HttpStatusCodeException
      */
-    @SuppressWarnings("unchecked")
-    private Object executeRequest(HttpRequestBase method) throws ClientProtocolException, IOException, HttpStatusCodeException {
-        HttpClient httpclient = new DefaultHttpClient();
-        String response = httpclient.execute(method, createResponseHandler());
-        if (!isResponseOK())
-            throw new HttpStatusCodeException(response, getResponseCode());
-        
-        if(response.isEmpty())
-        	return null;
-        
-        JSONParser parser = new JSONParser();
-        
-        ContainerFactory containerFactory = new ContainerFactory(){
-        	@SuppressWarnings("rawtypes")
-			public List creatArrayContainer(){ return new LinkedList(); }
-        	@SuppressWarnings("rawtypes")
-			public java.util.Map createObjectContainer(){ return new LinkedHashMap(); }
-        };
-        
-        //HashMap<String, Object> json = null;
-        Object json = null;
-        
-		try {
-			json = parser.parse(response, containerFactory);
-		} catch (ParseException e) {
-			e.printStackTrace();
-		}
-        
-        return json;
+    public long sendRequestTo(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody, Path responseBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        return (Long)requestTo(HTTPMethod, requestPath, parameters, requestBody, responseBody).getBody();
     }
 
     /**
-     * Creates a request to a given path using the indicated HTTP-Method with a (byte array) body 
+     * Creates a request to a given path using the indicated HTTP-Method with a (string) body, and writes the body of
+     * the response to a file, without parsing it. The file is only replaced once the whole body is received.
      *
      * @param HTTPMethod The HTTP method (verb)
      * @param requestPath The request path
-     * @param parameters The query parameters 
+     * @param parameters The query parameters
      * @param requestBody The request's body
-     * @return The response from the server as an object of class Object. Must be casted to either a LinkedList<String> or an HashMap<String, Object>
-     * @throws NoSuchAlgorithmException 
-     * @throws IOException 
-     * @throws ClientProtocolException 
-     * @throws HttpStatusCodeException 
+     * @param responseBody The file the response's body is written to
+     * @return The response from the server, including its status code and headers, with the number of bytes written (a Long) as body
+     * @throws NoSuchAlgorithmException
+     * @throws IOException if the request fails, or the response's body is truncated or can not be written
+     * @throws ClientProtocolException
+     * @throws HttpStatusCodeException
      */
-    public Object sendRequest(String HTTPMethod, String requestPath, HashMap<String, String> parameters, byte[] requestBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
-        String url = generateURLWithAuthenticationParameters(HTTPMethod, requestPath, parameters, new String(requestBody));
-        System.out.println(url);
-        HttpRequestBase method = getHttpMethod(HTTPMethod,url, new ByteArrayEntity(requestBody));
-        return executeRequest(method);
+    public OoyalaResponse requestTo(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody, Path responseBody) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        Path file = responseBody.toAbsolutePath();
+        Path temporary = Files.createTempFile(file.getParent(), "." + file.getFileName(), ".part");
+        boolean replaced = false;
+        try {
+            OoyalaResponse response;
+            FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            try {
+                response = executeStreamingRequest(HTTPMethod, requestPath, parameters, requestBody, new StreamingResponseHandler(channel));
+            } finally {
+                channel.close();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            replaced = true;
+            return response;
+        } finally {
+            if (!replaced)
+                Files.deleteIfExists(temporary);
+        }
     }
 
     /**
-     * URI encodes non-authentication values
-     * @param parameters The hashtable containing values to URI encode
-     * @return
-     * @throws UnsupportedEncodingException
-     */
-    private HashMap<String,String> makeURIValues(HashMap<String,String> parameters) throws UnsupportedEncodingException {
-        HashMap<String,String> URIParameters = new HashMap<String,String>();
-        Set<String> set = parameters.keySet();
-        Iterator<String> itr = set.iterator();
-        while (itr.hasNext()) {
-            String key = itr.next();
-            String value = parameters.get(key);
-            /* just URI encode non-authentication params*/
-            if(!(key.equals("expires") || key.equals("api_key") || key.equals("signature"))) {
-                URIParameters.put(key, encodeURI(parameters.get(key)));
-            }
-            else
-                URIParameters.put(key, value);
+     * Executes a request whose response's body is written to a stream or a channel instead of being parsed. The
+     * response cache, the request coalescing and the hedging are skipped, since they hold or duplicate the body.
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @param handler The handler writing the response's body
+     * @return The response from the server, with the number of bytes written (a Long) as body
+     */
+    private OoyalaResponse executeStreamingRequest(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody, StreamingResponseHandler handler) throws NoSuchAlgorithmException, ClientProtocolException, IOException, HttpStatusCodeException {
+        String jsonBody = toJSONBody(requestBody);
+        String url = generateURLWithAuthenticationParameters(HTTPMethod, requestPath, parameters, jsonBody);
+        TransportRequest method = signedBy(getHttpMethod(HTTPMethod, url, new StringEntity(jsonBody)), HTTPMethod, requestPath, parameters, jsonBody);
+        long start = System.nanoTime();
+        Exception failure = null;
+        try {
+            OoyalaResponse response = checkStatus(send(method, handler, false));
+            invalidateCachedResponses(HTTPMethod, requestPath);
+            return response.withBody(response.getBody(), System.nanoTime() - start);
+        } catch (Exception e) {
+            failure = e;
+            throw e;
+        } finally {
+            endTrace(failure);
         }
-        return URIParameters;
     }
 
     /**
@@ -495,7 +2021,10 @@ public class OoyalaAPI {
      *    to generate an output.
      */
     public String buildURL(String HTTPMethod, String requestPath, HashMap<String, String> parameters) throws java.security.NoSuchAlgorithmException, java.io.UnsupportedEncodingException {
-        return String.format("%s%s?%s", baseURL, requestPath, concatenateParams(makeURIValues(parameters),"&"));
+        StringBuilder url = new StringBuilder(baseURL.length() + requestPath.length() + 32 * (parameters.size() + 1));
+        url.append(baseURL).append(requestPath).append('?');
+        concatenateParams(url, parameters, "&", true);
+        return url.toString();
      }
 
     /**
@@ -528,6 +2057,23 @@ public class OoyalaAPI {
         return sendRequest("GET", requestPath, parameters, new HashMap<String, Object>());
     }
 
+    /**
+     * Sends a GET request, handing the items of the response to a callback as they are parsed from the response stream.
+     * Memory use does not grow with the number of items.
+     * 
+     * @param requestPath The request path
+     * @param parameters hashtable containing query parameters
+     * @param itemCallback The callback receiving every element of the response's items array
+     * @return The rest of the response from the server (i.e. next_page) as an object of class Object, with an empty items array
+     * @throws IOException 
+     * @throws ClientProtocolException 
+     * @throws NoSuchAlgorithmException 
+     * @throws HttpStatusCodeException 
+     */
+    public Object getRequest(String requestPath, HashMap<String, String> parameters, OoyalaItemCallback itemCallback) throws ClientProtocolException, IOException, NoSuchAlgorithmException, HttpStatusCodeException {
+        return sendRequest("GET", requestPath, parameters, new HashMap<String, Object>(), itemCallback);
+    }
+
     /**
      * Sends a GET request
      * 
@@ -542,6 +2088,29 @@ public class OoyalaAPI {
         return sendRequest("GET", requestPath);
     }
 
+    /**
+     * Sends GET requests for every page of a list (i.e. "assets"), following the next_page links.
+     * The next page is fetched in the background while the current one is being consumed.
+     * 
+     * @param requestPath The request path
+     * @param parameters hashtable containing query parameters of the first page
+     * @return An iterator over the items of all the pages. Each item is an HashMap<String, Object>
+     */
+    public PagedIterator getPagedRequest(String requestPath, HashMap<String, String> parameters) {
+        return new PagedIterator(this, requestPath, parameters);
+    }
+
+    /**
+     * Sends GET requests for every page of a list (i.e. "assets"), following the next_page links.
+     * The next page is fetched in the background while the current one is being consumed.
+     * 
+     * @param requestPath The request path
+     * @return An iterator over the items of all the pages. Each item is an HashMap<String, Object>
+     */
+    public PagedIterator getPagedRequest(String requestPath) {
+        return getPagedRequest(requestPath, new HashMap<String, String>());
+    }
+
     /**
      * Sends a PUT request
      *
@@ -588,7 +2157,405 @@ public class OoyalaAPI {
     }
 
     /**
-     * Indicates if a request was successful 
+     * Gets the maximum number of asynchronous requests in flight at the same time
+     * @return the maximum number of requests in flight
+     */
+    public int getMaxInFlightRequests() { return maxInFlightRequests; }
+
+    /**
+     * Sets the maximum number of asynchronous requests in flight at the same time. Requests above
+     * the limit wait in a queue. Raise the connection pool limits along with it, otherwise requests
+     * will wait for a pooled connection instead.
+     * @param maxInFlightRequests The maximum number of requests in flight
+     */
+    public synchronized void setMaxInFlightRequests(int maxInFlightRequests) {
+        /* the requests in flight keep their permits, so the limit holds while they complete */
+        inFlightPermits.resize(maxInFlightRequests - this.maxInFlightRequests);
+        this.maxInFlightRequests = maxInFlightRequests;
+        if (asyncExecutor != null && ownsAsyncExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor)asyncExecutor;
+            if (maxInFlightRequests > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(maxInFlightRequests);
+                pool.setCorePoolSize(maxInFlightRequests);
+            } else {
+                pool.setCorePoolSize(maxInFlightRequests);
+                pool.setMaximumPoolSize(maxInFlightRequests);
+            }
+        }
+    }
+
+    /**
+     * Sets the executor running the asynchronous requests, i.e. one starting a virtual thread per task.
+     * The executor is not shut down by close().
+     * @param asyncExecutor The executor
+     */
+    public synchronized void setAsyncExecutor(ExecutorService asyncExecutor) {
+        if (this.asyncExecutor != null && ownsAsyncExecutor)
+            this.asyncExecutor.shutdown();
+        this.asyncExecutor = asyncExecutor;
+        ownsAsyncExecutor = false;
+    }
+
+    /**
+     * Gets the executor running the asynchronous requests, creating a pool of daemon threads
+     * (one per request in flight) on the first call
+     * @return the executor
+     */
+    private synchronized ExecutorService getAsyncExecutor() {
+        if (closed)
+            throw new IllegalStateException("The OoyalaAPI instance has been closed");
+        if (asyncExecutor == null) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxInFlightRequests, maxInFlightRequests, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "ooyala-api-async-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            asyncExecutor = pool;
+            ownsAsyncExecutor = true;
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Runs some work asynchronously, holding one of the in-flight permits while it runs
+     * @param work The work to run
+     * @param callback The callback notified when the work completes, may be null
+     * @return The future result of the work
+     */
+    <T> Future<T> submit(final Callable<T> work, OoyalaCallback<T> callback) {
+        CallbackFuture<T> future = new CallbackFuture<T>(new Callable<T>() {
+            public T call() throws Exception {
+                inFlightPermits.acquire();
+                try {
+                    return work.call();
+                } finally {
+                    inFlightPermits.release();
+                }
+            }
+        }, callback);
+        getAsyncExecutor().execute(future);
+        return future;
+    }
+
+    /**
+     * Asynchronously sends a Request to the URL using the indicating HTTP method, content type and the array of bytes as body
+     * @param HTTPMethod The HTTPMethod
+     * @param URL The URL where the request is made
+     * @param requestBody The request's body as an array of bytes
+     * @param callback The callback notified when the request completes, may be null
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, URL, requestBody)
+     */
+    public Future<Object> sendRequestAsync(final String HTTPMethod, final String URL, final byte[] requestBody, OoyalaCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() throws Exception { return sendRequest(HTTPMethod, URL, requestBody); }
+        }, callback);
+    }
+
+    /**
+     * Asynchronously sends a Request to the URL using the indicating HTTP method, content type and the array of bytes as body
+     * @param HTTPMethod The HTTPMethod
+     * @param URL The URL where the request is made
+     * @param requestBody The request's body as an array of bytes
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, URL, requestBody)
+     */
+    public Future<Object> sendRequestAsync(String HTTPMethod, String URL, byte[] requestBody) {
+        return sendRequestAsync(HTTPMethod, URL, requestBody, null);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with a (string) body
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @param callback The callback notified when the request completes, may be null
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody)
+     */
+    public Future<Object> sendRequestAsync(final String HTTPMethod, final String requestPath, final HashMap<String, String> parameters, final HashMap<String, Object> requestBody, OoyalaCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() throws Exception { return sendRequest(HTTPMethod, requestPath, parameters, requestBody); }
+        }, callback);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with a (string) body
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody)
+     */
+    public Future<Object> sendRequestAsync(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody) {
+        return sendRequestAsync(HTTPMethod, requestPath, parameters, requestBody, (OoyalaCallback<Object>)null);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with neither parameters nor a body
+     * @param HTTPMethod The HTTP method
+     * @param requestPath the request path
+     * @param callback The callback notified when the request completes, may be null
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath)
+     */
+    public Future<Object> sendRequestAsync(final String HTTPMethod, final String requestPath, OoyalaCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() throws Exception { return sendRequest(HTTPMethod, requestPath); }
+        }, callback);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with neither parameters nor a body
+     * @param HTTPMethod The HTTP method
+     * @param requestPath the request path
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath)
+     */
+    public Future<Object> sendRequestAsync(String HTTPMethod, String requestPath) {
+        return sendRequestAsync(HTTPMethod, requestPath, (OoyalaCallback<Object>)null);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with a (byte array) body
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @param callback The callback notified when the request completes, may be null
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody)
+     */
+    public Future<Object> sendRequestAsync(final String HTTPMethod, final String requestPath, final HashMap<String, String> parameters, final byte[] requestBody, OoyalaCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() throws Exception { return sendRequest(HTTPMethod, requestPath, parameters, requestBody); }
+        }, callback);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with a (byte array) body
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody)
+     */
+    public Future<Object> sendRequestAsync(String HTTPMethod, String requestPath, HashMap<String, String> parameters, byte[] requestBody) {
+        return sendRequestAsync(HTTPMethod, requestPath, parameters, requestBody, (OoyalaCallback<Object>)null);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with a (string) body, handing
+     * the items of the response to a callback as they are parsed from the response stream. The item callback is
+     * called on the thread sending the request.
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @param itemCallback The callback receiving every element of the response's items array
+     * @param callback The callback notified when the request completes, may be null
+     * @return The future rest of the response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody, itemCallback)
+     */
+    public Future<Object> sendRequestAsync(final String HTTPMethod, final String requestPath, final HashMap<String, String> parameters, final HashMap<String, Object> requestBody, final OoyalaItemCallback itemCallback, OoyalaCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() throws Exception { return sendRequest(HTTPMethod, requestPath, parameters, requestBody, itemCallback); }
+        }, callback);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with a (string) body, handing
+     * the items of the response to a callback as they are parsed from the response stream. The item callback is
+     * called on the thread sending the request.
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The request's body
+     * @param itemCallback The callback receiving every element of the response's items array
+     * @return The future rest of the response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody, itemCallback)
+     */
+    public Future<Object> sendRequestAsync(String HTTPMethod, String requestPath, HashMap<String, String> parameters, HashMap<String, Object> requestBody, OoyalaItemCallback itemCallback) {
+        return sendRequestAsync(HTTPMethod, requestPath, parameters, requestBody, itemCallback, null);
+    }
+
+    /**
+     * Asynchronously sends a request precomputed by a template with a (string) body
+     * @param template The request template, created with createRequestTemplate
+     * @param requestBody The request's body
+     * @param callback The callback notified when the request completes, may be null
+     * @return The future response from the server, as returned by sendRequest(template, requestBody)
+     */
+    public Future<Object> sendRequestAsync(final RequestTemplate template, final HashMap<String, Object> requestBody, OoyalaCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() throws Exception { return sendRequest(template, requestBody); }
+        }, callback);
+    }
+
+    /**
+     * Asynchronously sends a request precomputed by a template with a (string) body
+     * @param template The request template, created with createRequestTemplate
+     * @param requestBody The request's body
+     * @return The future response from the server, as returned by sendRequest(template, requestBody)
+     */
+    public Future<Object> sendRequestAsync(RequestTemplate template, HashMap<String, Object> requestBody) {
+        return sendRequestAsync(template, requestBody, null);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with the content of a file as body
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The file holding the request's body
+     * @param callback The callback notified when the request completes, may be null
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody)
+     */
+    public Future<Object> sendRequestAsync(final String HTTPMethod, final String requestPath, final HashMap<String, String> parameters, final Path requestBody, OoyalaCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() throws Exception { return sendRequest(HTTPMethod, requestPath, parameters, requestBody); }
+        }, callback);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with the content of a file as body
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The file holding the request's body
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody)
+     */
+    public Future<Object> sendRequestAsync(String HTTPMethod, String requestPath, HashMap<String, String> parameters, Path requestBody) {
+        return sendRequestAsync(HTTPMethod, requestPath, parameters, requestBody, (OoyalaCallback<Object>)null);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with the content of a file
+     * channel, from the channel's current position to its end, as body. The channel must stay open until the
+     * request completes.
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The channel of the file holding the request's body
+     * @param callback The callback notified when the request completes, may be null
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody)
+     */
+    public Future<Object> sendRequestAsync(final String HTTPMethod, final String requestPath, final HashMap<String, String> parameters, final FileChannel requestBody, OoyalaCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() throws Exception { return sendRequest(HTTPMethod, requestPath, parameters, requestBody); }
+        }, callback);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with the content of a file
+     * channel, from the channel's current position to its end, as body. The channel must stay open until the
+     * request completes.
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The channel of the file holding the request's body
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody)
+     */
+    public Future<Object> sendRequestAsync(String HTTPMethod, String requestPath, HashMap<String, String> parameters, FileChannel requestBody) {
+        return sendRequestAsync(HTTPMethod, requestPath, parameters, requestBody, (OoyalaCallback<Object>)null);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with the content of a stream
+     * as body. The stream is read on the thread sending the request, so it must not be used (nor closed) until the
+     * request completes.
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The stream of the request's body
+     * @param callback The callback notified when the request completes, may be null
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody)
+     */
+    public Future<Object> sendRequestAsync(final String HTTPMethod, final String requestPath, final HashMap<String, String> parameters, final InputStream requestBody, OoyalaCallback<Object> callback) {
+        return submit(new Callable<Object>() {
+            public Object call() throws Exception { return sendRequest(HTTPMethod, requestPath, parameters, requestBody); }
+        }, callback);
+    }
+
+    /**
+     * Asynchronously creates a request to a given path using the indicated HTTP-Method with the content of a stream
+     * as body. The stream is read on the thread sending the request, so it must not be used (nor closed) until the
+     * request completes.
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @param requestBody The stream of the request's body
+     * @return The future response from the server, as returned by sendRequest(HTTPMethod, requestPath, parameters, requestBody)
+     */
+    public Future<Object> sendRequestAsync(String HTTPMethod, String requestPath, HashMap<String, String> parameters, InputStream requestBody) {
+        return sendRequestAsync(HTTPMethod, requestPath, parameters, requestBody, (OoyalaCallback<Object>)null);
+    }
+
+    /**
+     * Sends many requests (i.e. a PATCH to every asset of a catalog) with bounded parallelism. Operations are taken
+     * from the iterator as slots free up, so it can be a lazy stream. A failed operation does not stop the others:
+     * its exception is recorded in the report and handed to the callback.
+     *
+     * Remember to raise setMaxConnectionsPerRoute if the parallelism is above its value.
+     * @param operations The operations to send
+     * @param parallelism The number of requests sent at the same time
+     * @param callback The callback receiving the result of every operation as it completes, may be null
+     * @return The report of the operations, once all of them completed
+     * @throws InterruptedException if the thread is interrupted; the requests in flight are then interrupted too
+     */
+    public BulkReport sendBulkRequest(Iterator<BulkOperation> operations, int parallelism, final OoyalaBulkCallback callback) throws InterruptedException {
+        final BulkReport report = new BulkReport();
+        final Semaphore slots = new Semaphore(parallelism);
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            long index = 0;
+            while (operations.hasNext()) {
+                final BulkOperation operation = operations.next();
+                final long position = index++;
+                slots.acquire();
+                executor.execute(new Runnable() {
+                    public void run() {
+                        BulkResult result;
+                        try {
+                            OoyalaResponse response = request(operation.getHTTPMethod(), operation.getRequestPath(), operation.getParameters(), operation.getRequestBody());
+                            result = new BulkResult(operation, position, response, null);
+                        } catch (Exception e) {
+                            result = new BulkResult(operation, position, null, e);
+                        }
+                        try {
+                            synchronized (report) {
+                                report.add(result);
+                                if (callback != null)
+                                    callback.onResult(result, report);
+                            }
+                        } finally {
+                            slots.release();
+                        }
+                    }
+                });
+            }
+            /* every slot is free once every operation completed */
+            slots.acquire(parallelism);
+        } finally {
+            executor.shutdownNow();
+            report.finish();
+        }
+        return report;
+    }
+
+    /**
+     * Sends many requests with bounded parallelism, see sendBulkRequest(Iterator, int, OoyalaBulkCallback)
+     * @param operations The operations to send
+     * @param parallelism The number of requests sent at the same time
+     * @param callback The callback receiving the result of every operation as it completes, may be null
+     * @return The report of the operations, once all of them completed
+     * @throws InterruptedException if the thread is interrupted; the requests in flight are then interrupted too
+     */
+    public BulkReport sendBulkRequest(Iterable<BulkOperation> operations, int parallelism, OoyalaBulkCallback callback) throws InterruptedException {
+        return sendBulkRequest(operations.iterator(), parallelism, callback);
+    }
+
+    /**
+     * Indicates if a request was successful. Like getResponseCode(), it refers to the previous request
+     * of any thread; use OoyalaResponse.isOK() when sharing the instance between threads.
      * @return
      */
     public boolean isResponseOK() { return ((responseCode >= 200) && (responseCode < 400)); }
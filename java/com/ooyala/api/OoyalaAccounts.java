@@ -0,0 +1,363 @@
+package com.ooyala.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of the OoyalaAPI instances of several accounts, sharing one pool of connections and one pool of threads.
+ *
+ * Each account gets its own OoyalaAPI instance (signing with its keys, with its own cache, rate limiter, metrics,
+ * etc.), but their requests go through one pool of keep-alive connections. At most maxConcurrentRequests requests
+ * of all the accounts are sent at the same time; above that they wait, and are admitted by weighted fair queuing
+ * (see FairScheduler): a bulk job of one account queuing thousands of requests only delays the requests of the other
+ * accounts by its share. Each account can also be limited to a number of concurrent requests and to a rate.
+ *
+ * <pre>
+ * OoyalaAccounts accounts = new OoyalaAccounts(64);
+ * OoyalaAPI api = accounts.register(apiKey, secretKey);
+ * OoyalaAPI bulk = accounts.register(bulkApiKey, bulkSecretKey, 1, 8, 20); // weight 1, 8 requests at once, 20 per second
+ * ...
+ * accounts.close();
+ * </pre>
+ *
+ * The asynchronous requests of an account run on the shared threads, at most as many at once as the account may send,
+ * so an account queuing many of them does not hold the threads of the others.
+ */
+public class OoyalaAccounts implements Closeable {
+
+    /**
+     * The shared pool of connections
+     */
+    private final PooledHttpClient pooledHttpClient;
+
+    /**
+     * Admits the requests of the accounts
+     */
+    private final FairScheduler scheduler;
+
+    /**
+     * The shared pool of threads running the asynchronous requests
+     */
+    private final ExecutorService threads;
+
+    /**
+     * The registered accounts, by API key
+     */
+    private final Map<String, Account> accounts = new LinkedHashMap<String, Account>();
+
+    /**
+     * Indicates if the registry has been closed
+     */
+    private boolean closed;
+
+    /**
+     * A registered account
+     */
+    private static class Account {
+        final OoyalaAPI api;
+        final FairScheduler.Tenant tenant;
+        final AccountExecutor executor;
+
+        Account(OoyalaAPI api, FairScheduler.Tenant tenant, AccountExecutor executor) {
+            this.api = api;
+            this.tenant = tenant;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Creates a registry sending at most 50 requests at the same time
+     */
+    public OoyalaAccounts() { this(50); }
+
+    /**
+     * Creates a registry
+     * @param maxConcurrentRequests The maximum number of requests of all the accounts sent at the same time, which is also
+     * the size of the pool of connections
+     */
+    public OoyalaAccounts(int maxConcurrentRequests) {
+        scheduler = new FairScheduler(maxConcurrentRequests);
+        pooledHttpClient = new PooledHttpClient(maxConcurrentRequests, maxConcurrentRequests, 10000, 60000, 30000);
+        threads = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ooyala-accounts-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Registers an account with weight 1 and no limit of its own
+     * @param apiKey The API key
+     * @param secretKey The secret key
+     * @return the OoyalaAPI instance of the account
+     */
+    public OoyalaAPI register(String apiKey, String secretKey) {
+        return register(apiKey, secretKey, 1, scheduler.getCapacity(), 0);
+    }
+
+    /**
+     * Registers an account
+     * @param apiKey The API key
+     * @param secretKey The secret key
+     * @param weight The share of the account when requests wait, relative to the other accounts (i.e. 2 to be admitted
+     * twice as many requests as an account of weight 1)
+     * @param maxConcurrentRequests The maximum number of requests of the account sent at the same time
+     * @param maxRate The maximum number of requests of the account per second, or 0 for no limit. The account then gets a
+     * RateLimiter, which also retries its requests failing with 429 or 5xx.
+     * @return the OoyalaAPI instance of the account
+     */
+    public synchronized OoyalaAPI register(String apiKey, String secretKey, double weight, int maxConcurrentRequests, double maxRate) {
+        if (closed)
+            throw new IllegalStateException("The registry has been closed");
+        if (accounts.containsKey(apiKey))
+            throw new IllegalArgumentException("The account " + apiKey + " is already registered");
+        final FairScheduler.Tenant tenant = scheduler.addTenant(apiKey, weight, maxConcurrentRequests);
+        OoyalaAPI api = new OoyalaAPI(apiKey, secretKey);
+        api.setTransport(new OoyalaTransport() {
+            public OoyalaResponse execute(TransportRequest request, TransportResponseHandler handler) throws IOException {
+                RequestTrace trace = RequestTrace.current();
+                long start = System.nanoTime();
+                scheduler.acquire(tenant);
+                if (trace != null)
+                    trace.add(RequestTrace.Phase.POOL_WAIT, System.nanoTime() - start);
+                try {
+                    return pooledHttpClient.execute(request, handler);
+                } finally {
+                    scheduler.release(tenant);
+                }
+            }
+
+            public void close() {}
+        });
+        if (maxRate > 0)
+            api.setRateLimiter(new RateLimiter(maxRate, maxConcurrentRequests));
+        AccountExecutor executor = new AccountExecutor(threads, Math.min(maxConcurrentRequests, api.getMaxInFlightRequests()));
+        api.setAsyncExecutor(executor);
+        accounts.put(apiKey, new Account(api, tenant, executor));
+        return api;
+    }
+
+    /**
+     * Changes the share and the limit of the concurrent requests of an account
+     * @param apiKey The API key of the account
+     * @param weight The share of the account when requests wait, relative to the other accounts
+     * @param maxConcurrentRequests The maximum number of requests of the account sent at the same time
+     */
+    public synchronized void setLimits(String apiKey, double weight, int maxConcurrentRequests) {
+        Account account = account(apiKey);
+        scheduler.setLimits(account.tenant, weight, maxConcurrentRequests);
+        account.executor.setMaxRunning(Math.min(maxConcurrentRequests, account.api.getMaxInFlightRequests()));
+    }
+
+    /**
+     * Unregisters an account and closes its OoyalaAPI instance. New asynchronous requests of the account are rejected,
+     * while the queued ones and the ones in flight complete before the instance is closed. Must not be called from a
+     * callback of the account, which would wait for itself.
+     * @param apiKey The API key of the account
+     */
+    public void unregister(String apiKey) {
+        Account account;
+        synchronized (this) {
+            account = account(apiKey);
+            accounts.remove(apiKey);
+            account.executor.shutdown();
+        }
+        try {
+            account.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            cancel(account.executor.shutdownNow());
+            Thread.currentThread().interrupt();
+        }
+        account.api.close();
+        scheduler.removeTenant(account.tenant);
+    }
+
+    /**
+     * Gets the OoyalaAPI instance of an account
+     * @param apiKey The API key of the account
+     * @return the instance, or null if the account is not registered
+     */
+    public synchronized OoyalaAPI get(String apiKey) {
+        Account account = accounts.get(apiKey);
+        return (account != null) ? account.api : null;
+    }
+
+    /**
+     * Gets the API keys of the registered accounts
+     * @return the API keys, in registration order
+     */
+    public synchronized List<String> getApiKeys() { return new ArrayList<String>(accounts.keySet()); }
+
+    /**
+     * Gets the number of requests of all the accounts being sent
+     * @return the number of requests in flight
+     */
+    public int getInFlightRequests() { return scheduler.getInFlight(); }
+
+    /**
+     * Gets the number of requests of an account being sent
+     * @param apiKey The API key of the account
+     * @return the number of requests in flight
+     */
+    public int getInFlightRequests(String apiKey) { return scheduler.getInFlight(account(apiKey).tenant); }
+
+    /**
+     * Gets the number of requests of an account waiting for their turn
+     * @param apiKey The API key of the account
+     * @return the number of waiting requests
+     */
+    public int getWaitingRequests(String apiKey) { return scheduler.getWaiting(account(apiKey).tenant); }
+
+    /**
+     * Gets the number of requests of an account sent so far
+     * @param apiKey The API key of the account
+     * @return the number of requests, including the retries
+     */
+    public long getSentRequests(String apiKey) { return scheduler.getAdmitted(account(apiKey).tenant); }
+
+    /**
+     * Gets the time the requests of an account spent waiting for their turn
+     * @param apiKey The API key of the account
+     * @return the total waiting time in milliseconds
+     */
+    public long getWaitingMillis(String apiKey) { return TimeUnit.NANOSECONDS.toMillis(scheduler.getWaitNanos(account(apiKey).tenant)); }
+
+    /**
+     * Gets a registered account
+     * @param apiKey The API key of the account
+     * @return the account
+     */
+    private synchronized Account account(String apiKey) {
+        Account account = accounts.get(apiKey);
+        if (account == null)
+            throw new IllegalArgumentException("The account " + apiKey + " is not registered");
+        return account;
+    }
+
+    /**
+     * Closes the OoyalaAPI instances of every account, the pool of connections and the pool of threads
+     */
+    public synchronized void close() {
+        closed = true;
+        for (Account account : accounts.values()) {
+            account.api.close();
+            cancel(account.executor.shutdownNow());
+        }
+        accounts.clear();
+        threads.shutdown();
+        pooledHttpClient.shutdown();
+    }
+
+    /**
+     * Cancels the queued asynchronous requests of an account, so that they fail instead of never completing
+     * @param tasks The tasks removed from the queue of the account
+     */
+    private static void cancel(List<Runnable> tasks) {
+        for (Runnable task : tasks) {
+            if (task instanceof Future)
+                ((Future<?>)task).cancel(false);
+        }
+    }
+
+    /**
+     * Executor running the tasks of one account on the shared threads, at most maxRunning at once. The other tasks wait
+     * in the queue of the account, not in the shared one, so they hold no thread.
+     */
+    private static class AccountExecutor extends AbstractExecutorService {
+        private final ExecutorService threads;
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<Runnable>();
+        private int maxRunning;
+        private int running;
+        private boolean shutdown;
+
+        AccountExecutor(ExecutorService threads, int maxRunning) {
+            this.threads = threads;
+            this.maxRunning = maxRunning;
+        }
+
+        synchronized void setMaxRunning(int maxRunning) {
+            this.maxRunning = maxRunning;
+            startQueued();
+        }
+
+        public synchronized void execute(Runnable task) {
+            if (shutdown)
+                throw new RejectedExecutionException("The account has been unregistered");
+            queue.add(task);
+            startQueued();
+        }
+
+        /**
+         * Starts the queued tasks the limit allows. The lock is held.
+         */
+        private void startQueued() {
+            while (running < maxRunning && !queue.isEmpty()) {
+                final Runnable task = queue.poll();
+                running++;
+                try {
+                    threads.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                task.run();
+                            } finally {
+                                finished();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    /* the registry is closed */
+                    running--;
+                    throw e;
+                }
+            }
+        }
+
+        private synchronized void finished() {
+            running--;
+            startQueued();
+            if (shutdown && running == 0)
+                notifyAll();
+        }
+
+        public synchronized void shutdown() { shutdown = true; }
+
+        public synchronized List<Runnable> shutdownNow() {
+            shutdown = true;
+            List<Runnable> tasks = new ArrayList<Runnable>(queue);
+            queue.clear();
+            return tasks;
+        }
+
+        public synchronized boolean isShutdown() { return shutdown; }
+
+        public synchronized boolean isTerminated() { return shutdown && running == 0 && queue.isEmpty(); }
+
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long start = System.nanoTime();
+            long nanos = unit.toNanos(timeout);
+            while (!isTerminated()) {
+                long remaining = nanos - (System.nanoTime() - start);
+                if (remaining <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+}
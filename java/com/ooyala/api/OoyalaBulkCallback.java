@@ -0,0 +1,16 @@
+package com.ooyala.api;
+
+/**
+ * Receives the progress of a bulk request, one operation at a time.
+ *
+ * Calls are serialized, but they are made from the threads sending the requests, so they should return quickly.
+ */
+public interface OoyalaBulkCallback {
+
+    /**
+     * Invoked every time an operation completes, successfully or not
+     * @param result The result of the operation
+     * @param report The report of the bulk request so far, already including this result
+     */
+    void onResult(BulkResult result, BulkReport report);
+}
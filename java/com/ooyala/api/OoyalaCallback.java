@@ -0,0 +1,23 @@
+package com.ooyala.api;
+
+/**
+ * Receives the outcome of an asynchronous request.
+ *
+ * Callbacks are invoked on the thread that executed the request, so they should return quickly.
+ * @param <T> The type of the result
+ */
+public interface OoyalaCallback<T> {
+
+    /**
+     * Invoked when the request completes successfully
+     * @param result The result of the request
+     */
+    void onSuccess(T result);
+
+    /**
+     * Invoked when the request fails or is cancelled
+     * @param e The exception thrown by the request (i.e. an HttpStatusCodeException), or a
+     *    CancellationException if the request was cancelled
+     */
+    void onFailure(Exception e);
+}
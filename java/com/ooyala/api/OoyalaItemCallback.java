@@ -0,0 +1,13 @@
+package com.ooyala.api;
+
+/**
+ * Receives the items of a list response one at a time, as they are parsed from the response stream.
+ */
+public interface OoyalaItemCallback {
+
+    /**
+     * Invoked for every element of the response's items array (or of the response itself when it is an array)
+     * @param item The item. Must be casted to either a LinkedList<String>, an HashMap<String, Object> or a primitive value
+     */
+    void onItem(Object item);
+}
@@ -0,0 +1,17 @@
+package com.ooyala.api;
+
+/**
+ * Receives the trace of every request sent by an OoyalaAPI instance, i.e. to feed latency histograms
+ * and counters to a monitoring system. See HistogramMetrics for the default implementation.
+ *
+ * It is invoked on the thread that sent the request, right after the response is parsed (or the request
+ * failed), so it should return quickly.
+ */
+public interface OoyalaMetrics {
+
+    /**
+     * Invoked when a request completes, successfully or not
+     * @param trace The timings and counters of the request
+     */
+    void onRequest(RequestTrace trace);
+}
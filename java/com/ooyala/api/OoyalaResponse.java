@@ -0,0 +1,130 @@
+package com.ooyala.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+
+/**
+ * Immutable result of a single request: the HTTP status code, the response headers,
+ * the parsed body and the time it took.
+ *
+ * Unlike OoyalaAPI.getResponseCode(), it is never shared between requests, so it is
+ * safe to use when one OoyalaAPI instance is used from several threads.
+ */
+public class OoyalaResponse {
+
+    /**
+     * The HTTP status code
+     */
+    private final int statusCode;
+
+    /**
+     * The response headers, with case insensitive names
+     */
+    private final Map<String, List<String>> headers;
+
+    /**
+     * The parsed body
+     */
+    private final Object body;
+
+    /**
+     * Time (in nanoseconds) from sending the request until the body was parsed
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Creates a response
+     * @param statusCode The HTTP status code
+     * @param headers The response headers
+     * @param body The parsed body
+     * @param elapsedNanos The time (in nanoseconds) it took to get the response
+     */
+    OoyalaResponse(int statusCode, Map<String, List<String>> headers, Object body, long elapsedNanos) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Creates a copy of this response with another body and elapsed time
+     * @param body The body of the copy
+     * @param elapsedNanos The elapsed time of the copy
+     * @return the new response
+     */
+    OoyalaResponse withBody(Object body, long elapsedNanos) {
+        return new OoyalaResponse(statusCode, headers, body, elapsedNanos);
+    }
+
+    /**
+     * Copies the headers of an HTTP response into an unmodifiable, case insensitive map
+     * @param response The HTTP response
+     * @return the headers
+     */
+    static Map<String, List<String>> copyHeaders(HttpResponse response) {
+        Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        for (Header header : response.getAllHeaders()) {
+            List<String> values = headers.get(header.getName());
+            if (values == null) {
+                values = new ArrayList<String>(1);
+                headers.put(header.getName(), values);
+            }
+            values.add(header.getValue());
+        }
+        for (Map.Entry<String, List<String>> entry : headers.entrySet())
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Gets the HTTP status code
+     * @return the status code
+     */
+    public int getStatusCode() { return statusCode; }
+
+    /**
+     * Indicates if the request was successful
+     * @return true if the status code is a 2xx or 3xx one
+     */
+    public boolean isOK() { return ((statusCode >= 200) && (statusCode < 400)); }
+
+    /**
+     * Gets all the response headers. Header names are case insensitive.
+     * @return the headers
+     */
+    public Map<String, List<String>> getHeaders() { return headers; }
+
+    /**
+     * Gets the first value of a response header
+     * @param name The header name (case insensitive)
+     * @return the header value or null if it is not present
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return (values == null || values.isEmpty()) ? null : values.get(0);
+    }
+
+    /**
+     * Gets the parsed body
+     * @return The body as an object of class Object. Must be casted to either a LinkedList<String> or an HashMap<String, Object>
+     */
+    public Object getBody() { return body; }
+
+    /**
+     * Gets the time it took to send the request and parse its response
+     * @return the elapsed time in milliseconds
+     */
+    public long getElapsedMillis() { return elapsedNanos / 1000000; }
+
+    /**
+     * Gets the time it took to send the request and parse its response
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() { return elapsedNanos; }
+}
@@ -0,0 +1,26 @@
+package com.ooyala.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sends the signed HTTP requests of an OoyalaAPI instance. The default transport is a pool of keep-alive
+ * connections of Apache HttpClient; InProcessTransport (of the tools/ source root) answers the requests
+ * with a StandInServer without any socket, for tests. Set another one with OoyalaAPI.setTransport().
+ *
+ * Signing, retries, rate limiting, caching and parsing happen above the transport, so a transport only
+ * moves bytes. It must be thread-safe: the requests of every thread using the OoyalaAPI instance go
+ * through it.
+ */
+public interface OoyalaTransport extends Closeable {
+
+    /**
+     * Sends a request and hands its response to a handler. The response body must be readable until the
+     * handler returns, and its connection released (or reused) afterwards.
+     * @param request The request
+     * @param handler The handler reading the response
+     * @return the response built by the handler
+     * @throws IOException if the request can not be sent or the response can not be read
+     */
+    OoyalaResponse execute(TransportRequest request, TransportResponseHandler handler) throws IOException;
+}
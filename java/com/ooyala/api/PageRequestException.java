@@ -0,0 +1,14 @@
+package com.ooyala.api;
+
+/**
+ * Unchecked exception thrown while iterating over the items of a paginated list when one of
+ * its pages can not be fetched. The original exception (i.e. an HttpStatusCodeException) is its cause.
+ */
+public class PageRequestException extends RuntimeException {
+
+    protected static final long serialVersionUID = 1;
+
+    public PageRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,197 @@
+package com.ooyala.api;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over the items of every page of a list endpoint (i.e. "assets"), following the
+ * next_page links returned by the API.
+ *
+ * The next page is requested in the background as soon as the current one arrives, so the
+ * round trip overlaps with the consumption of the current page. Only one page is fetched
+ * ahead, so a slow consumer never accumulates more than two pages in memory.
+ *
+ * Instances are not thread safe and must be consumed by a single thread.
+ */
+public class PagedIterator implements Iterator<HashMap<String, Object>>, Iterable<HashMap<String, Object>> {
+
+    /**
+     * The API used to fetch the pages
+     */
+    private final OoyalaAPI api;
+
+    /**
+     * Iterator over the items of the current page
+     */
+    private Iterator<Object> items;
+
+    /**
+     * The page being fetched, or null if there are no more pages
+     */
+    private Future<Object> nextPage;
+
+    /**
+     * Number of pages fetched so far
+     */
+    private int pageCount;
+
+    /**
+     * Starts fetching the first page of a list
+     * @param api The API used to fetch the pages
+     * @param requestPath The request path of the list (i.e. "assets")
+     * @param parameters The query parameters of the first page
+     */
+    PagedIterator(OoyalaAPI api, String requestPath, HashMap<String, String> parameters) {
+        this.api = api;
+        this.items = Collections.emptyList().iterator();
+        this.nextPage = fetch(requestPath, parameters);
+    }
+
+    /**
+     * Returns this iterator, so it can be used in a for-each loop. It can only be iterated once.
+     */
+    public Iterator<HashMap<String, Object>> iterator() { return this; }
+
+    /**
+     * Indicates if there are more items, waiting for the next page if needed
+     * @throws PageRequestException if a page can not be fetched
+     */
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+        while (!items.hasNext()) {
+            if (nextPage == null)
+                return false;
+            Map<String, Object> page = (Map<String, Object>)await(nextPage);
+            nextPage = null;
+            pageCount++;
+            if (page == null)
+                return false;
+
+            String nextPageURL = (String)page.get("next_page");
+            if (nextPageURL != null && !nextPageURL.isEmpty())
+                nextPage = fetch(nextPageURL);
+
+            List<Object> pageItems = (List<Object>)page.get("items");
+            items = (pageItems != null) ? pageItems.iterator() : Collections.emptyList().iterator();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the next item, waiting for the next page if needed. When the responses are parsed lazily, the item
+     * is a shallow copy of its view: its own fields are decoded, its nested objects and arrays stay views.
+     * @throws PageRequestException if a page can not be fetched
+     */
+    @SuppressWarnings("unchecked")
+    public HashMap<String, Object> next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Object item = items.next();
+        if (item instanceof HashMap)
+            return (HashMap<String, Object>)item;
+        return new HashMap<String, Object>((Map<String, Object>)item);
+    }
+
+    public void remove() { throw new UnsupportedOperationException(); }
+
+    /**
+     * Gets the number of pages fetched so far
+     * @return the number of pages
+     */
+    public int getPageCount() { return pageCount; }
+
+    /**
+     * Stops the iteration, cancelling the request of the next page if it is still pending
+     */
+    public void close() {
+        if (nextPage != null)
+            nextPage.cancel(false);
+        nextPage = null;
+        items = Collections.emptyList().iterator();
+    }
+
+    /**
+     * Starts fetching the page a next_page link points to
+     * @param nextPageURL The next_page link (i.e. "/v2/assets?limit=500&page_token=...")
+     * @return the page being fetched
+     */
+    private Future<Object> fetch(String nextPageURL) {
+        String pathAndQuery = nextPageURL;
+        int versionIndex = pathAndQuery.indexOf("/v2/");
+        if (versionIndex >= 0)
+            pathAndQuery = pathAndQuery.substring(versionIndex + "/v2/".length());
+        int queryIndex = pathAndQuery.indexOf('?');
+        if (queryIndex < 0)
+            return fetch(pathAndQuery, new HashMap<String, String>());
+        HashMap<String, String> parameters = parseQuery(pathAndQuery.substring(queryIndex + 1));
+        /* the authentication parameters are added again when the page is signed */
+        parameters.remove("api_key");
+        parameters.remove("expires");
+        parameters.remove("signature");
+        return fetch(pathAndQuery.substring(0, queryIndex), parameters);
+    }
+
+    /**
+     * Starts fetching a page
+     * @param requestPath The request path of the page
+     * @param parameters The query parameters of the page
+     * @return the page being fetched
+     */
+    private Future<Object> fetch(final String requestPath, final HashMap<String, String> parameters) {
+        return api.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                return api.sendRequest("GET", requestPath, parameters, new HashMap<String, Object>());
+            }
+        }, null);
+    }
+
+    /**
+     * Waits for a page
+     * @param page The page being fetched
+     * @return the page
+     */
+    private Object await(Future<Object> page) {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PageRequestException("Interrupted while waiting for the next page", e);
+        } catch (ExecutionException e) {
+            throw new PageRequestException("Could not fetch the next page", e.getCause());
+        }
+    }
+
+    /**
+     * Parses a query string into its decoded parameters
+     * @param query The query string, without the leading '?'
+     * @return the parameters
+     */
+    static HashMap<String, String> parseQuery(String query) {
+        HashMap<String, String> parameters = new HashMap<String, String>();
+        if (query == null || query.isEmpty())
+            return parameters;
+        try {
+            for (String pair : query.split("&")) {
+                if (pair.isEmpty())
+                    continue;
+                int equalsIndex = pair.indexOf('=');
+                if (equalsIndex < 0)
+                    parameters.put(URLDecoder.decode(pair, "UTF-8"), "");
+                else
+                    parameters.put(URLDecoder.decode(pair.substring(0, equalsIndex), "UTF-8"), URLDecoder.decode(pair.substring(equalsIndex + 1), "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,298 @@
+package com.ooyala.api;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer of PATCH requests.
+ *
+ * PATCHes to the same path are held for a while and merged into a single request: the bodies are merged
+ * key by key (nested objects recursively), later values replacing earlier ones. The combined request is
+ * sent once the delay since the first pending PATCH of the path elapses, once maxPatches PATCHes are
+ * pending for it, or when flush() or close() is called.
+ *
+ * Every call gets its own Future (and callback), which completes with the response of the combined request
+ * or fails with its exception. Combined requests are sent asynchronously, through the OoyalaAPI instance, but
+ * one path at a time: the combined request of a path is only sent once the previous one completed, so that the
+ * PATCHes reach the API in order. Until then it keeps merging the PATCHes queued for the path.
+ */
+public class PatchBuffer implements Closeable {
+
+    /**
+     * The PATCHes pending for one path
+     */
+    private static class Pending {
+        final String requestPath;
+        final HashMap<String, Object> body = new HashMap<String, Object>();
+        final List<CallbackFuture<Object>> callers = new ArrayList<CallbackFuture<Object>>();
+        ScheduledFuture<?> timer;
+        volatile Object result;
+        volatile Exception failure;
+
+        /**
+         * Indicates if the combined request is due, and waits for the previous one of its path to complete
+         */
+        boolean due;
+
+        /**
+         * Released once the combined request completed and every caller was notified
+         */
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Pending(String requestPath) { this.requestPath = requestPath; }
+    }
+
+    /**
+     * The API used to send the combined requests
+     */
+    private final OoyalaAPI api;
+
+    /**
+     * Time (in milliseconds) a PATCH is held, from the first pending one of its path. Defaults: 2000
+     */
+    private long delay;
+
+    /**
+     * Number of pending PATCHes of a path that triggers the combined request. Defaults: 50
+     */
+    private int maxPatches;
+
+    /**
+     * The pending PATCHes, by path
+     */
+    private final Map<String, Pending> pending = new LinkedHashMap<String, Pending>();
+
+    /**
+     * The combined requests being sent, by path
+     */
+    private final Map<String, Pending> sending = new HashMap<String, Pending>();
+
+    /**
+     * Sends the combined requests once their delay elapses
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Indicates if the buffer was closed
+     */
+    private boolean closed;
+
+    /**
+     * Creates a buffer
+     * @param api The API used to send the combined requests
+     */
+    public PatchBuffer(OoyalaAPI api) {
+        this.api = api;
+        delay = 2000;
+        maxPatches = 50;
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ooyala-api-patch-buffer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Gets the time a PATCH is held
+     * @return the delay in milliseconds
+     */
+    public synchronized long getDelay() { return delay; }
+
+    /**
+     * Sets the time a PATCH is held, from the first pending PATCH of its path
+     * @param delay The delay in milliseconds
+     */
+    public synchronized void setDelay(long delay) { this.delay = delay; }
+
+    /**
+     * Gets the number of pending PATCHes of a path that triggers the combined request
+     * @return the maximum number of PATCHes
+     */
+    public synchronized int getMaxPatches() { return maxPatches; }
+
+    /**
+     * Sets the number of pending PATCHes of a path that triggers the combined request
+     * @param maxPatches The maximum number of PATCHes
+     */
+    public synchronized void setMaxPatches(int maxPatches) { this.maxPatches = maxPatches; }
+
+    /**
+     * Gets the number of paths with pending PATCHes
+     * @return the number of paths
+     */
+    public synchronized int getPendingPaths() { return pending.size(); }
+
+    /**
+     * Queues a PATCH
+     * @param requestPath The request path
+     * @param requestBody The properties to change
+     * @return The future response of the combined request, as an object of class Object
+     */
+    public Future<Object> patch(String requestPath, HashMap<String, Object> requestBody) {
+        return patch(requestPath, requestBody, null);
+    }
+
+    /**
+     * Queues a PATCH
+     * @param requestPath The request path
+     * @param requestBody The properties to change. The map is copied, so it can be reused.
+     * @param callback The callback notified when the combined request completes, may be null
+     * @return The future response of the combined request, as an object of class Object
+     * @throws IllegalStateException if the buffer is closed
+     */
+    public Future<Object> patch(String requestPath, HashMap<String, Object> requestBody, OoyalaCallback<Object> callback) {
+        Pending patches;
+        CallbackFuture<Object> future;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("The PATCH buffer is closed");
+            patches = pending.get(requestPath);
+            if (patches == null) {
+                final Pending created = new Pending(requestPath);
+                created.timer = timer.schedule(new Runnable() {
+                    public void run() { send(created); }
+                }, delay, TimeUnit.MILLISECONDS);
+                pending.put(requestPath, created);
+                patches = created;
+            }
+            merge(patches.body, requestBody);
+            final Pending outcome = patches;
+            final boolean first = patches.callers.isEmpty();
+            future = new CallbackFuture<Object>(new Callable<Object>() {
+                public Object call() throws Exception {
+                    if (outcome.failure != null)
+                        throw outcome.failure;
+                    /* every caller but the first gets its own copy of the response */
+                    return first ? outcome.result : RequestCoalescer.copyJSON(outcome.result);
+                }
+            }, callback);
+            patches.callers.add(future);
+            if (patches.callers.size() < maxPatches || patches.due)
+                return future;
+        }
+        send(patches);
+        return future;
+    }
+
+    /**
+     * Sends the pending PATCHes of every path and waits for the combined requests to complete, including the
+     * ones already being sent
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        List<Pending> requests;
+        synchronized (this) {
+            requests = new ArrayList<Pending>(sending.values());
+            requests.addAll(pending.values());
+        }
+        for (Pending patches : requests)
+            send(patches);
+        for (Pending patches : requests)
+            patches.done.await();
+    }
+
+    /**
+     * Sends the pending PATCHes, waits for them and stops accepting new ones
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends the combined request of a path, unless it was already sent. If the previous request of the path is
+     * still being sent, the request is only marked due, and sent once the previous one completes.
+     * @param patches The pending PATCHes of the path
+     */
+    private void send(final Pending patches) {
+        synchronized (this) {
+            if (pending.get(patches.requestPath) != patches)
+                return;
+            patches.timer.cancel(false);
+            if (sending.containsKey(patches.requestPath)) {
+                patches.due = true;
+                return;
+            }
+            pending.remove(patches.requestPath);
+            sending.put(patches.requestPath, patches);
+        }
+        try {
+            api.submit(new Callable<Void>() {
+                public Void call() {
+                    try {
+                        patches.result = api.sendRequest("PATCH", patches.requestPath, new HashMap<String, String>(), patches.body);
+                    } catch (Exception e) {
+                        patches.failure = e;
+                    }
+                    complete(patches);
+                    return null;
+                }
+            }, null);
+        } catch (RuntimeException e) {
+            /* i.e. the OoyalaAPI instance is closed: the callers fail instead of never completing */
+            patches.failure = e;
+            complete(patches);
+        }
+    }
+
+    /**
+     * Notifies the callers of a combined request, then sends the next one of its path if it is due
+     * @param patches The PATCHes of the completed request
+     */
+    private void complete(Pending patches) {
+        for (CallbackFuture<Object> caller : patches.callers)
+            caller.run();
+        Pending next;
+        synchronized (this) {
+            sending.remove(patches.requestPath);
+            next = pending.get(patches.requestPath);
+        }
+        patches.done.countDown();
+        if (next != null && next.due)
+            send(next);
+    }
+
+    /**
+     * Merges a PATCH body into the combined one
+     * @param combined The combined body
+     * @param patch The body to merge
+     */
+    @SuppressWarnings("unchecked")
+    private static void merge(Map<String, Object> combined, Map<String, Object> patch) {
+        if (patch == null)
+            return;
+        for (Map.Entry<String, Object> entry : patch.entrySet()) {
+            Object current = combined.get(entry.getKey());
+            Object value = entry.getValue();
+            if (current instanceof Map && value instanceof Map) {
+                merge((Map<String, Object>)current, (Map<String, Object>)value);
+            } else {
+                combined.put(entry.getKey(), RequestCoalescer.copyJSON(value));
+            }
+        }
+    }
+}
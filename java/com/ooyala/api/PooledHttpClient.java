@@ -0,0 +1,294 @@
+package com.ooyala.api;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Default OoyalaTransport: a thread-safe, pooled Apache HttpClient shared by every request of an OoyalaAPI instance.
+ *
+ * Connections to the API are kept alive and reused between requests, so only the first
+ * request to a route pays for the TCP and TLS handshakes. A daemon thread periodically
+ * closes expired connections and the ones that have been idle for too long.
+ *
+ * Responses are requested compressed (gzip or deflate) unless disabled, and compressed responses are
+ * decompressed while they are read, so every way of reading them (including the streaming ones) is unaware
+ * of the compression.
+ */
+class PooledHttpClient implements OoyalaTransport {
+
+    /**
+     * Attribute of the execution context holding the request being executed
+     */
+    private static final String METHOD_ATTRIBUTE = "com.ooyala.api.method";
+
+    /**
+     * HttpPatch class which allows PATCH requests
+     */
+    private static class HttpPatch extends HttpPost {
+        public HttpPatch(String s) { super(s); }
+        public String getMethod() { return "PATCH"; }
+    }
+
+
+    /**
+     * The connection manager holding the pool of connections
+     */
+    private final ThreadSafeClientConnManager connectionManager;
+
+    /**
+     * The client executing the requests through the connection manager
+     */
+    private final DefaultHttpClient httpClient;
+
+    /**
+     * Background thread evicting idle and expired connections
+     */
+    private final Thread idleConnectionEvictor;
+
+    /**
+     * Time (in milliseconds) after which an idle connection is closed
+     */
+    private final long idleConnectionTimeout;
+
+    /**
+     * Indicates if the client has been shut down
+     */
+    private volatile boolean shutdown;
+
+    /**
+     * Whether compressed responses are requested
+     */
+    private volatile boolean acceptingCompression = true;
+
+    /**
+     * Creates a pooled client
+     * @param maxTotalConnections Maximum number of connections in the pool
+     * @param maxConnectionsPerRoute Maximum number of connections per route (host)
+     * @param connectionTimeout Time (in milliseconds) to wait for a connection to be established
+     * @param socketTimeout Time (in milliseconds) to wait for data on an established connection
+     * @param idleConnectionTimeout Time (in milliseconds) after which an idle connection is closed
+     */
+    PooledHttpClient(int maxTotalConnections, int maxConnectionsPerRoute, int connectionTimeout, int socketTimeout, long idleConnectionTimeout) {
+        this.idleConnectionTimeout = idleConnectionTimeout;
+
+        connectionManager = new ThreadSafeClientConnManager(SchemeRegistryFactory.createDefault()) {
+            @Override
+            public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+                ClientConnectionRequest request = super.requestConnection(route, state);
+                RequestTrace trace = RequestTrace.current();
+                return (trace != null) ? new TracedConnectionRequest(request, trace) : request;
+            }
+        };
+        connectionManager.setMaxTotal(maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, connectionTimeout);
+        HttpConnectionParams.setSoTimeout(params, socketTimeout);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        HttpConnectionParams.setTcpNoDelay(params, true);
+        httpClient = new DefaultHttpClient(connectionManager, params);
+        /* an aborted request (i.e. the loser of a hedged request) must not be retried on a new connection */
+        httpClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler() {
+            @Override
+            public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+                HttpRequestBase method = (HttpRequestBase)context.getAttribute(METHOD_ATTRIBUTE);
+                if (method != null && method.isAborted())
+                    return false;
+                return super.retryRequest(exception, executionCount, context);
+            }
+        });
+        httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
+            public void process(HttpRequest request, HttpContext context) {
+                if (acceptingCompression && !request.containsHeader("Accept-Encoding"))
+                    request.addHeader("Accept-Encoding", "gzip,deflate");
+            }
+        });
+        /* the tracing request interceptor runs last, right before the request is sent, and the response one first,
+           so it counts the bytes received before they are decompressed */
+        httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
+            public void process(HttpRequest request, HttpContext context) {
+                RequestTrace trace = RequestTrace.current();
+                if (trace == null)
+                    return;
+                if (request instanceof HttpEntityEnclosingRequest) {
+                    HttpEntity entity = ((HttpEntityEnclosingRequest)request).getEntity();
+                    if (entity != null && entity.getContentLength() > 0)
+                        trace.addBytesSent(entity.getContentLength());
+                }
+                trace.markSent();
+            }
+        });
+        httpClient.addResponseInterceptor(new HttpResponseInterceptor() {
+            public void process(HttpResponse response, HttpContext context) {
+                RequestTrace trace = RequestTrace.current();
+                if (trace == null)
+                    return;
+                trace.markResponse();
+                if (response.getEntity() != null)
+                    response.setEntity(trace.count(response.getEntity()));
+            }
+        }, 0);
+        httpClient.addResponseInterceptor(new ResponseContentEncoding());
+
+        idleConnectionEvictor = new Thread(new Runnable() {
+            public void run() { evictConnections(); }
+        }, "ooyala-api-connection-evictor");
+        idleConnectionEvictor.setDaemon(true);
+        idleConnectionEvictor.start();
+    }
+
+    /**
+     * Connection request recording the time spent waiting for the connection in the trace of the request
+     */
+    private static class TracedConnectionRequest implements ClientConnectionRequest {
+        private final ClientConnectionRequest request;
+        private final RequestTrace trace;
+
+        TracedConnectionRequest(ClientConnectionRequest request, RequestTrace trace) {
+            this.request = request;
+            this.trace = trace;
+        }
+
+        public ManagedClientConnection getConnection(long timeout, TimeUnit unit) throws InterruptedException, ConnectionPoolTimeoutException {
+            long start = System.nanoTime();
+            ManagedClientConnection connection = request.getConnection(timeout, unit);
+            trace.markLeased(System.nanoTime() - start);
+            return connection;
+        }
+
+        public void abortRequest() { request.abortRequest(); }
+    }
+
+    /**
+     * Sends a request over a pooled connection, which is released once the handler has read the response
+     */
+    public OoyalaResponse execute(TransportRequest request, final TransportResponseHandler handler) throws IOException {
+        final HttpRequestBase method;
+        String HTTPMethod = request.getMethod();
+        if (HTTPMethod.equals("GET"))
+            method = new HttpGet(request.getURL());
+        else if (HTTPMethod.equals("DELETE"))
+            method = new HttpDelete(request.getURL());
+        else if (HTTPMethod.equals("POST"))
+            method = new HttpPost(request.getURL());
+        else if (HTTPMethod.equals("PATCH"))
+            method = new HttpPatch(request.getURL());
+        else if (HTTPMethod.equals("PUT"))
+            method = new HttpPut(request.getURL());
+        else
+            throw new ClientProtocolException("Unsupported HTTP method " + HTTPMethod);
+        if (method instanceof HttpEntityEnclosingRequestBase)
+            ((HttpEntityEnclosingRequestBase)method).setEntity(request.getEntity());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+            method.setHeader(header.getKey(), header.getValue());
+        request.setAbortAction(new Runnable() {
+            public void run() { method.abort(); }
+        });
+
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(METHOD_ATTRIBUTE, method);
+        return httpClient.execute(method, new ResponseHandler<OoyalaResponse>() {
+            public OoyalaResponse handleResponse(HttpResponse response) throws IOException {
+                return handler.handleResponse(response.getStatusLine().getStatusCode(), OoyalaResponse.copyHeaders(response), response.getEntity());
+            }
+        }, context);
+    }
+
+    /**
+     * Sets the maximum number of connections in the pool
+     * @param maxTotalConnections The maximum number of connections
+     */
+    void setMaxTotalConnections(int maxTotalConnections) { connectionManager.setMaxTotal(maxTotalConnections); }
+
+    /**
+     * Sets the maximum number of connections per route
+     * @param maxConnectionsPerRoute The maximum number of connections per route
+     */
+    void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) { connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute); }
+
+    /**
+     * Sets the time to wait for a connection to be established
+     * @param connectionTimeout The timeout in milliseconds
+     */
+    void setConnectionTimeout(int connectionTimeout) { HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), connectionTimeout); }
+
+    /**
+     * Sets the time to wait for data on an established connection
+     * @param socketTimeout The timeout in milliseconds
+     */
+    void setSocketTimeout(int socketTimeout) { HttpConnectionParams.setSoTimeout(httpClient.getParams(), socketTimeout); }
+
+    /**
+     * Sets whether compressed (gzip or deflate) responses are requested. Compressed responses are decompressed
+     * either way.
+     * @param acceptingCompression true to send Accept-Encoding: gzip,deflate
+     */
+    void setAcceptingCompression(boolean acceptingCompression) { this.acceptingCompression = acceptingCompression; }
+
+    /**
+     * Gets the number of connections currently held by the pool
+     * @return the number of pooled connections
+     */
+    int getConnectionsInPool() { return connectionManager.getConnectionsInPool(); }
+
+    /**
+     * Closes every connection in the pool and stops the eviction thread
+     */
+    public void close() { shutdown(); }
+
+    /**
+     * Closes every connection in the pool and stops the eviction thread
+     */
+    void shutdown() {
+        shutdown = true;
+        idleConnectionEvictor.interrupt();
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Periodically closes the expired and idle connections until the client is shut down
+     */
+    private void evictConnections() {
+        long checkInterval = Math.max(1000, Math.min(idleConnectionTimeout / 2, 5000));
+        while (!shutdown) {
+            try {
+                Thread.sleep(checkInterval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleConnectionTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.ooyala.api;
+
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.Random;
+
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+
+/**
+ * Client-side throttle for the requests sent to the API.
+ *
+ * Requests are admitted by a token bucket, refilled at the current rate, and by a limit on the number of
+ * requests in flight. The rate adapts to the responses: it is halved (at most once per second) when the API
+ * answers 429 Too Many Requests or a 5xx error, and grows back by about one request per second every second
+ * while requests succeed, up to the configured rate. A Retry-After header holds every request until the
+ * time it indicates.
+ *
+ * Requests that fail with 429 are retried whatever their method, since the API did not process them.
+ * Requests that fail with 500, 502, 503 or 504, or with an I/O error, are only retried when their method is
+ * idempotent (GET, HEAD, PUT, DELETE). Retries wait for the Retry-After time or a jittered exponential
+ * backoff, whichever is longer. A retried request whose signed URL expires within the expirationWindow of the
+ * OoyalaAPI instance is signed again before it is sent; a URL signed by the caller is sent as it is.
+ *
+ * A limiter can be shared by several OoyalaAPI instances using the same account.
+ */
+public class RateLimiter {
+
+    /**
+     * The configured (maximum) rate, in requests per second
+     */
+    private double maxRate;
+
+    /**
+     * The lowest rate the limiter slows down to, in requests per second. Defaults: 1
+     */
+    private double minRate;
+
+    /**
+     * The current rate, in requests per second
+     */
+    private double rate;
+
+    /**
+     * Maximum number of tokens the bucket holds, i.e. the largest burst of requests. Defaults: the rate, at least 1
+     */
+    private double burstSize;
+
+    /**
+     * Tokens currently in the bucket
+     */
+    private double tokens;
+
+    /**
+     * Time (System.nanoTime()) of the last refill of the bucket
+     */
+    private long lastRefill;
+
+    /**
+     * Maximum number of requests in flight at the same time
+     */
+    private int maxConcurrentRequests;
+
+    /**
+     * Number of requests in flight
+     */
+    private int inFlight;
+
+    /**
+     * Time (System.currentTimeMillis()) until which no request is sent, as asked by a Retry-After header
+     */
+    private long pausedUntil;
+
+    /**
+     * Time (System.currentTimeMillis()) of the last decrease of the rate
+     */
+    private long lastDecrease;
+
+    /**
+     * Maximum number of retries of a request. Defaults: 5
+     */
+    private volatile int maxRetries;
+
+    /**
+     * Time (in milliseconds) the backoff of the first retry is drawn under, doubled on every retry. Defaults: 500
+     */
+    private volatile long baseRetryDelay;
+
+    /**
+     * Maximum time (in milliseconds) a retry waits for. Defaults: 30000
+     */
+    private volatile long maxRetryDelay;
+
+    /**
+     * Draws the jitter of the retry delays
+     */
+    private final Random random = new Random();
+
+    /**
+     * Creates a limiter
+     * @param requestsPerSecond The maximum rate, in requests per second
+     * @param maxConcurrentRequests The maximum number of requests in flight at the same time
+     */
+    public RateLimiter(double requestsPerSecond, int maxConcurrentRequests) {
+        if (requestsPerSecond <= 0 || maxConcurrentRequests <= 0)
+            throw new IllegalArgumentException("The rate and the number of concurrent requests must be positive");
+        this.maxRate = requestsPerSecond;
+        this.rate = requestsPerSecond;
+        this.minRate = Math.min(1, requestsPerSecond);
+        this.burstSize = Math.max(1, requestsPerSecond);
+        this.tokens = burstSize;
+        this.lastRefill = System.nanoTime();
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxRetries = 5;
+        this.baseRetryDelay = 500;
+        this.maxRetryDelay = 30000;
+    }
+
+    /**
+     * Gets the maximum rate
+     * @return the rate in requests per second
+     */
+    public synchronized double getMaxRequestsPerSecond() { return maxRate; }
+
+    /**
+     * Sets the maximum rate. The current rate is brought down to it if it is higher.
+     * @param requestsPerSecond The rate in requests per second
+     */
+    public synchronized void setMaxRequestsPerSecond(double requestsPerSecond) {
+        if (requestsPerSecond <= 0)
+            throw new IllegalArgumentException("The rate must be positive");
+        maxRate = requestsPerSecond;
+        rate = Math.min(rate, maxRate);
+        minRate = Math.min(minRate, maxRate);
+        notifyAll();
+    }
+
+    /**
+     * Gets the current rate, as adapted to the responses of the API
+     * @return the rate in requests per second
+     */
+    public synchronized double getRequestsPerSecond() { return rate; }
+
+    /**
+     * Gets the lowest rate the limiter slows down to
+     * @return the rate in requests per second
+     */
+    public synchronized double getMinRequestsPerSecond() { return minRate; }
+
+    /**
+     * Sets the lowest rate the limiter slows down to
+     * @param requestsPerSecond The rate in requests per second
+     */
+    public synchronized void setMinRequestsPerSecond(double requestsPerSecond) {
+        minRate = Math.min(requestsPerSecond, maxRate);
+        rate = Math.max(rate, minRate);
+    }
+
+    /**
+     * Gets the largest burst of requests sent without waiting
+     * @return the size of the token bucket
+     */
+    public synchronized double getBurstSize() { return burstSize; }
+
+    /**
+     * Sets the largest burst of requests sent without waiting
+     * @param burstSize The size of the token bucket, at least 1
+     */
+    public synchronized void setBurstSize(double burstSize) {
+        this.burstSize = Math.max(1, burstSize);
+        tokens = Math.min(tokens, this.burstSize);
+    }
+
+    /**
+     * Gets the maximum number of requests in flight at the same time
+     * @return the concurrency limit
+     */
+    public synchronized int getMaxConcurrentRequests() { return maxConcurrentRequests; }
+
+    /**
+     * Sets the maximum number of requests in flight at the same time
+     * @param maxConcurrentRequests The concurrency limit
+     */
+    public synchronized void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        if (maxConcurrentRequests <= 0)
+            throw new IllegalArgumentException("The number of concurrent requests must be positive");
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        notifyAll();
+    }
+
+    /**
+     * Gets the number of requests in flight
+     * @return the number of requests
+     */
+    public synchronized int getRequestsInFlight() { return inFlight; }
+
+    /**
+     * Gets the maximum number of retries of a request
+     * @return the number of retries
+     */
+    public int getMaxRetries() { return maxRetries; }
+
+    /**
+     * Sets the maximum number of retries of a request
+     * @param maxRetries The number of retries, or 0 to never retry
+     */
+    public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
+
+    /**
+     * Gets the time the backoff of the first retry is drawn under
+     * @return the delay in milliseconds
+     */
+    public long getBaseRetryDelay() { return baseRetryDelay; }
+
+    /**
+     * Sets the time the backoff of the first retry is drawn under. It is doubled on every retry.
+     * @param baseRetryDelay The delay in milliseconds
+     */
+    public void setBaseRetryDelay(long baseRetryDelay) { this.baseRetryDelay = baseRetryDelay; }
+
+    /**
+     * Gets the maximum time a retry waits for
+     * @return the delay in milliseconds
+     */
+    public long getMaxRetryDelay() { return maxRetryDelay; }
+
+    /**
+     * Sets the maximum time a retry waits for, including the time asked by a Retry-After header
+     * @param maxRetryDelay The delay in milliseconds
+     */
+    public void setMaxRetryDelay(long maxRetryDelay) { this.maxRetryDelay = maxRetryDelay; }
+
+    /**
+     * Waits until a request can be sent: the API did not ask to pause, there is a token in the bucket and
+     * fewer than maxConcurrentRequests requests are in flight. Every call must be followed by a call to release.
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    synchronized void acquire() throws InterruptedIOException {
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                long wait;
+                if (pausedUntil > now) {
+                    wait = pausedUntil - now;
+                } else if (inFlight >= maxConcurrentRequests) {
+                    wait = 0;
+                } else {
+                    refill();
+                    if (tokens >= 1) {
+                        tokens -= 1;
+                        inFlight++;
+                        return;
+                    }
+                    wait = Math.max(1, (long)Math.ceil((1 - tokens) * 1000 / rate));
+                }
+                wait(wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limiter");
+        }
+    }
+
+    /**
+     * Adds the tokens earned since the last refill to the bucket
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burstSize, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+    }
+
+    /**
+     * Ends a request and adapts the rate to its outcome
+     * @param statusCode The HTTP status code of the response, or 0 if there was no response
+     */
+    synchronized void release(int statusCode) {
+        inFlight--;
+        if (isThrottled(statusCode)) {
+            long now = System.currentTimeMillis();
+            if (now - lastDecrease >= 1000) {
+                refill();
+                rate = Math.max(minRate, rate / 2);
+                lastDecrease = now;
+            }
+        } else if (statusCode >= 200 && statusCode < 400 && rate < maxRate) {
+            refill();
+            rate = Math.min(maxRate, rate + 1 / Math.max(1, rate));
+        }
+        notifyAll();
+    }
+
+    /**
+     * Holds every request for a while, as asked by the API
+     * @param millis The time to wait in milliseconds
+     */
+    synchronized void pause(long millis) {
+        pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + millis);
+    }
+
+    /**
+     * Indicates if a status code shows the API is overloaded
+     * @param statusCode The HTTP status code
+     * @return true for 429 and 5xx
+     */
+    private static boolean isThrottled(int statusCode) {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * Indicates if a failed request is retried
+     * @param HTTPMethod The HTTP method of the request
+     * @param statusCode The HTTP status code of the response, or 0 if the request failed with an I/O error
+     * @param retries The number of retries already made
+     * @return true if the request must be sent again
+     */
+    boolean isRetryable(String HTTPMethod, int statusCode, int retries) {
+        if (retries >= maxRetries)
+            return false;
+        if (statusCode == 429)
+            return true;
+        boolean idempotent = HTTPMethod.equalsIgnoreCase("get") || HTTPMethod.equalsIgnoreCase("head")
+                || HTTPMethod.equalsIgnoreCase("put") || HTTPMethod.equalsIgnoreCase("delete");
+        return idempotent && (statusCode == 0 || statusCode == 500 || statusCode == 502 || statusCode == 503 || statusCode == 504);
+    }
+
+    /**
+     * Gets the time to wait before a retry. When the API sent a Retry-After header, every request is held for that time.
+     * @param retries The number of retries already made
+     * @param retryAfter The Retry-After header of the response, in seconds or as an HTTP date, may be null
+     * @return the delay in milliseconds
+     */
+    long getRetryDelay(int retries, String retryAfter) {
+        long backoff = Math.min(maxRetryDelay, baseRetryDelay << Math.min(retries, 30));
+        long delay;
+        synchronized (random) {
+            /* full jitter, so that the clients throttled together do not retry together */
+            delay = (long)(random.nextDouble() * backoff);
+        }
+        long requested = parseRetryAfter(retryAfter);
+        if (requested > 0) {
+            requested = Math.min(requested, maxRetryDelay);
+            pause(requested);
+            delay = Math.max(delay, requested);
+        }
+        return delay;
+    }
+
+    /**
+     * Parses a Retry-After header
+     * @param retryAfter The header, in seconds or as an HTTP date, may be null
+     * @return the time to wait in milliseconds, or 0 if there is none
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null)
+            return 0;
+        retryAfter = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(retryAfter) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                Date date = DateUtils.parseDate(retryAfter);
+                return Math.max(0, date.getTime() - System.currentTimeMillis());
+            } catch (DateParseException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Waits before a retry
+     * @param millis The time to wait in milliseconds
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+}
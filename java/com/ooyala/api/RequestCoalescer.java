@@ -0,0 +1,115 @@
+package com.ooyala.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Collapses identical requests in flight at the same time into a single one ("single flight").
+ *
+ * The first caller of a key sends the request; the callers arriving while it is in flight wait for its
+ * outcome instead of sending their own. Each of them gets its own copy of the parsed body, so that callers
+ * never share a mutable map or list. Once the request completes the key is released, so later callers send
+ * a new request: nothing is cached.
+ */
+class RequestCoalescer {
+
+    /**
+     * The requests in flight, by key
+     */
+    private final ConcurrentHashMap<String, FutureTask<OoyalaResponse>> inFlight = new ConcurrentHashMap<String, FutureTask<OoyalaResponse>>();
+
+    /**
+     * Sends a request, or waits for the identical one already in flight
+     * @param key The key of the request (see ResponseCache.key)
+     * @param request The request
+     * @return The response
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     * @throws HttpStatusCodeException
+     */
+    OoyalaResponse execute(String key, Callable<OoyalaResponse> request) throws NoSuchAlgorithmException, IOException, HttpStatusCodeException {
+        FutureTask<OoyalaResponse> task = new FutureTask<OoyalaResponse>(request);
+        FutureTask<OoyalaResponse> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            return await(task, false);
+        }
+        return await(existing, true);
+    }
+
+    /**
+     * Gets the number of distinct requests in flight
+     * @return the number of requests
+     */
+    int size() { return inFlight.size(); }
+
+    /**
+     * Waits for the outcome of a request
+     * @param task The request
+     * @param copy Indicates if the caller gets a copy of the body, for the callers that did not send the request
+     * @return The response
+     * @throws NoSuchAlgorithmException
+     * @throws IOException
+     * @throws HttpStatusCodeException
+     */
+    private static OoyalaResponse await(FutureTask<OoyalaResponse> task, boolean copy) throws NoSuchAlgorithmException, IOException, HttpStatusCodeException {
+        OoyalaResponse response;
+        try {
+            response = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an identical request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpStatusCodeException)
+                throw (HttpStatusCodeException)cause;
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof NoSuchAlgorithmException)
+                throw (NoSuchAlgorithmException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new IOException(cause);
+        }
+        return copy ? response.withBody(copyJSON(response.getBody()), response.getElapsedNanos()) : response;
+    }
+
+    /**
+     * Deep copies a parsed JSON value. Lazily parsed values are read-only, so they are shared rather than copied.
+     * @param value The value: a Map, a List or an immutable primitive value
+     * @return the copy
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    static Object copyJSON(Object value) {
+        if (LazyJSON.isView(value))
+            return value;
+        if (value instanceof Map) {
+            Map copy = new LinkedHashMap();
+            for (Object entry : ((Map)value).entrySet())
+                copy.put(((Map.Entry)entry).getKey(), copyJSON(((Map.Entry)entry).getValue()));
+            return copy;
+        }
+        if (value instanceof List) {
+            List copy = new LinkedList();
+            for (Object item : (List)value)
+                copy.add(copyJSON(item));
+            return copy;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,193 @@
+package com.ooyala.api;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Computes request signatures and query strings with as few allocations as possible.
+ *
+ * Each thread reuses its own SHA-256 digest, string builder and byte buffer, and the string to
+ * sign is encoded straight into the digest instead of going through String.getBytes(). The
+ * output is identical to the one of the original String based implementation: the string to
+ * sign is encoded with the platform's default charset, and the signature is the URI encoded
+ * first 43 characters of the Base64 encoded digest.
+ */
+class RequestSigner {
+
+    /**
+     * Number of characters of the Base64 encoded digest used as signature
+     */
+    private static final int SIGNATURE_LENGTH = 43;
+
+    /**
+     * The Base64 alphabet
+     */
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    /**
+     * The signer of each thread
+     */
+    private static final ThreadLocal<RequestSigner> signers = new ThreadLocal<RequestSigner>() {
+        @Override
+        protected RequestSigner initialValue() { return new RequestSigner(); }
+    };
+
+    /**
+     * The SHA-256 digest, reset after every use
+     */
+    private final MessageDigest digestProvider;
+
+    /**
+     * Encodes the string to sign with the platform's default charset
+     */
+    private final CharsetEncoder encoder;
+
+    /**
+     * Holds the encoded string to sign. Grows as needed.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Builder reused to assemble the string to sign
+     */
+    private final StringBuilder builder;
+
+    private RequestSigner() {
+        try {
+            digestProvider = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        buffer = ByteBuffer.allocate(1024);
+        builder = new StringBuilder(1024);
+    }
+
+    /**
+     * Gets the signer of the current thread
+     * @return the signer
+     */
+    static RequestSigner get() { return signers.get(); }
+
+    /**
+     * Gets the (emptied) builder of this signer, used to assemble the string to sign
+     * @return the builder
+     */
+    StringBuilder builder() {
+        builder.setLength(0);
+        return builder;
+    }
+
+    /**
+     * Gets the digest of this signer, with the string to sign already fed to it. More data (i.e.
+     * the request's body) can be fed to it before calling sign(MessageDigest).
+     * @param stringToSign The string to sign
+     * @return the digest
+     */
+    MessageDigest digest(CharSequence stringToSign) {
+        digestProvider.reset();
+        encoder.reset();
+        int maxLength = (int)Math.ceil(stringToSign.length() * (double)encoder.maxBytesPerChar());
+        if (buffer.capacity() < maxLength)
+            buffer = ByteBuffer.allocate(Math.max(maxLength, buffer.capacity() * 2));
+        buffer.clear();
+        encoder.encode(CharBuffer.wrap(stringToSign), buffer, true);
+        encoder.flush(buffer);
+        buffer.flip();
+        digestProvider.update(buffer);
+        return digestProvider;
+    }
+
+    /**
+     * Signs a string
+     * @param stringToSign The string to sign
+     * @return The URI encoded signature
+     */
+    String sign(CharSequence stringToSign) {
+        return sign(digest(stringToSign));
+    }
+
+    /**
+     * Completes a digest and encodes it as a signature
+     * @param digestProvider The digest with all the signed data fed to it
+     * @return The URI encoded signature
+     */
+    static String sign(MessageDigest digestProvider) {
+        byte[] digest = digestProvider.digest();
+        StringBuilder signature = new StringBuilder(SIGNATURE_LENGTH + 16);
+        int written = 0;
+        for (int i = 0; i < digest.length && written < SIGNATURE_LENGTH; i += 3) {
+            int b0 = digest[i] & 0xff;
+            int b1 = (i + 1 < digest.length) ? digest[i + 1] & 0xff : 0;
+            int b2 = (i + 2 < digest.length) ? digest[i + 2] & 0xff : 0;
+            int group = (b0 << 16) | (b1 << 8) | b2;
+            for (int shift = 18; shift >= 0 && written < SIGNATURE_LENGTH; shift -= 6, written++)
+                appendEncoded(signature, BASE64[(group >> shift) & 0x3f]);
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Appends a Base64 character, URI encoded
+     * @param builder The builder
+     * @param c The character
+     */
+    private static void appendEncoded(StringBuilder builder, char c) {
+        if (c == '+')
+            builder.append("%2B");
+        else if (c == '/')
+            builder.append("%2F");
+        else
+            builder.append(c);
+    }
+
+    /**
+     * Gets the keys of the parameters in sorted order
+     * @param parameters The parameters
+     * @return the sorted keys
+     */
+    static String[] sortedKeys(Map<String, String> parameters) {
+        String[] keys = parameters.keySet().toArray(new String[parameters.size()]);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Indicates if a parameter is an authentication one (api_key, expires or signature), which are never URI encoded
+     * @param key The parameter's key
+     * @return true if it is an authentication parameter
+     */
+    static boolean isAuthenticationParameter(String key) {
+        return key.equals("expires") || key.equals("api_key") || key.equals("signature");
+    }
+
+    /**
+     * Appends a URI encoded value, the same way URLEncoder does with the US-ASCII encoding
+     * @param builder The builder
+     * @param value The value to encode
+     * @throws UnsupportedEncodingException if the encoding as US-ASCII is not supported.
+     */
+    static void appendURIEncoded(StringBuilder builder, String value) throws UnsupportedEncodingException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean unreserved = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || c == '*' || c == '_';
+            if (!unreserved) {
+                builder.append(URLEncoder.encode(value, "US-ASCII"));
+                return;
+            }
+        }
+        builder.append(value);
+    }
+}
@@ -0,0 +1,184 @@
+package com.ooyala.api;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * A request whose method, path and query parameters are known in advance, with the sorted,
+ * URI encoded static part of its URL and string to sign precomputed. Signing it only appends
+ * the expiration, the body and the signature.
+ *
+ * Templates are immutable and can be shared between threads. They keep the keys and base URL
+ * the OoyalaAPI instance had when they were created.
+ */
+public class RequestTemplate {
+
+    /**
+     * The HTTP method (verb)
+     */
+    private final String HTTPMethod;
+
+    /**
+     * The request path
+     */
+    private final String requestPath;
+
+    /**
+     * String to sign up to the value of the expires parameter
+     */
+    private final String signaturePrefix;
+
+    /**
+     * String to sign after the value of the expires parameter, up to the body
+     */
+    private final String signatureSuffix;
+
+    /**
+     * URL up to the value of the expires parameter
+     */
+    private final String urlPrefix;
+
+    /**
+     * URL after the value of the expires parameter, up to the value of the signature parameter
+     */
+    private final String urlMiddle;
+
+    /**
+     * URL after the value of the signature parameter
+     */
+    private final String urlSuffix;
+
+    /**
+     * Precomputes the static part of a request
+     * @param baseURL The base URL of the API
+     * @param secretKey The secret key
+     * @param apiKey The API key
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @param parameters The query parameters, without the authentication ones
+     * @throws UnsupportedEncodingException if the encoding as US-ASCII is not supported.
+     */
+    RequestTemplate(String baseURL, String secretKey, String apiKey, String HTTPMethod, String requestPath, Map<String, String> parameters) throws UnsupportedEncodingException {
+        this.HTTPMethod = HTTPMethod;
+        this.requestPath = requestPath;
+
+        String[] keys = RequestSigner.sortedKeys(parameters);
+        int keyCount = 0;
+        for (String key : keys) {
+            /* the authentication parameters are always the generated ones */
+            if (!RequestSigner.isAuthenticationParameter(key))
+                keys[keyCount++] = key;
+        }
+        StringBuilder signature = new StringBuilder(256);
+        StringBuilder url = new StringBuilder(256);
+        signature.append(secretKey).append(HTTPMethod.toUpperCase()).append("/v2/").append(requestPath);
+        url.append(baseURL).append(requestPath).append('?');
+
+        /* the authentication parameters sort as api_key < expires < signature */
+        int i = 0;
+        boolean apiKeyAdded = false;
+        for (; i < keyCount && keys[i].compareTo("expires") < 0; i++) {
+            if (!apiKeyAdded && keys[i].compareTo("api_key") > 0) {
+                appendParameter(signature, url, "api_key", apiKey, false);
+                apiKeyAdded = true;
+            }
+            appendParameter(signature, url, keys[i], parameters.get(keys[i]), true);
+        }
+        if (!apiKeyAdded)
+            appendParameter(signature, url, "api_key", apiKey, false);
+        signature.append("expires=");
+        url.append("&expires=");
+        signaturePrefix = signature.toString();
+        urlPrefix = url.toString();
+
+        signature.setLength(0);
+        url.setLength(0);
+        for (; i < keyCount && keys[i].compareTo("signature") < 0; i++)
+            appendParameter(signature, url, keys[i], parameters.get(keys[i]), true);
+        url.append("&signature=");
+        urlMiddle = url.toString();
+
+        url.setLength(0);
+        for (; i < keyCount; i++)
+            appendParameter(signature, url, keys[i], parameters.get(keys[i]), true);
+        signatureSuffix = signature.toString();
+        urlSuffix = url.toString();
+    }
+
+    /**
+     * Appends a parameter to the string to sign (as is) and to the URL
+     * @param signature The string to sign
+     * @param url The URL
+     * @param key The parameter's key
+     * @param value The parameter's value
+     * @param encode Indicates if the value is URI encoded in the URL
+     * @throws UnsupportedEncodingException if the encoding as US-ASCII is not supported.
+     */
+    private static void appendParameter(StringBuilder signature, StringBuilder url, String key, String value, boolean encode) throws UnsupportedEncodingException {
+        signature.append(key).append('=').append(value);
+        if (url.length() == 0 || url.charAt(url.length() - 1) != '?')
+            url.append('&');
+        url.append(key).append('=');
+        if (encode)
+            RequestSigner.appendURIEncoded(url, value);
+        else
+            url.append(value);
+    }
+
+    /**
+     * Gets the HTTP method (verb)
+     * @return the HTTP method
+     */
+    public String getHTTPMethod() { return HTTPMethod; }
+
+    /**
+     * Gets the request path
+     * @return the request path
+     */
+    public String getRequestPath() { return requestPath; }
+
+    /**
+     * Generates the signed URL of the request
+     * @param expires The expiration date (in seconds)
+     * @param requestBody The string request body
+     * @return The URL, including the api_key, expires and signature parameters
+     */
+    public String generateURL(long expires, String requestBody) {
+        RequestSigner signer = RequestSigner.get();
+        StringBuilder stringToSign = signer.builder().append(signaturePrefix).append(expires).append(signatureSuffix).append(requestBody);
+        return assembleURL(expires, signer.sign(stringToSign));
+    }
+
+    /**
+     * Starts signing a request whose body is fed to the digest incrementally, i.e. while it is read from a file
+     * @param expires The expiration date (in seconds)
+     * @return The digest (of the current thread) with everything but the body fed to it
+     */
+    MessageDigest startSignature(long expires) {
+        RequestSigner signer = RequestSigner.get();
+        return signer.digest(signer.builder().append(signaturePrefix).append(expires).append(signatureSuffix));
+    }
+
+    /**
+     * Generates the signed URL of a request whose signature was started with startSignature
+     * @param expires The expiration date (in seconds), the same passed to startSignature
+     * @param digest The digest returned by startSignature, with the whole body fed to it
+     * @return The URL, including the api_key, expires and signature parameters
+     */
+    String generateURL(long expires, MessageDigest digest) {
+        return assembleURL(expires, RequestSigner.sign(digest));
+    }
+
+    /**
+     * Assembles the URL of the request
+     * @param expires The expiration date (in seconds)
+     * @param signature The URI encoded signature
+     * @return The URL, including the api_key, expires and signature parameters
+     */
+    private String assembleURL(long expires, String signature) {
+        String expiresValue = Long.toString(expires);
+        return new StringBuilder(urlPrefix.length() + expiresValue.length() + urlMiddle.length() + signature.length() + urlSuffix.length())
+                .append(urlPrefix).append(expiresValue).append(urlMiddle).append(signature).append(urlSuffix).toString();
+    }
+}
@@ -0,0 +1,314 @@
+package com.ooyala.api;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Timings and counters of a single request, handed to the OoyalaMetrics of the OoyalaAPI instance once
+ * the request completes.
+ *
+ * A trace follows its request on the thread sending it; it must not be kept nor modified by the metrics.
+ */
+public class RequestTrace {
+
+    /**
+     * The phases of a request
+     */
+    public enum Phase {
+        /** Building the sorted, URI encoded URL and string to sign */
+        URL,
+        /** Computing the signature, including hashing the body */
+        SIGN,
+        /** Waiting for a connection from the pool (and opening it) */
+        POOL_WAIT,
+        /** From sending the request until the response headers are received */
+        SERVER,
+        /** Reading the response body (and parsing it, when the items are streamed to a callback) */
+        DOWNLOAD,
+        /** Parsing the response body */
+        PARSE
+    }
+
+    /**
+     * The trace of the request the current thread is sending
+     */
+    private static final ThreadLocal<RequestTrace> current = new ThreadLocal<RequestTrace>();
+
+    /**
+     * The HTTP method (verb)
+     */
+    private final String HTTPMethod;
+
+    /**
+     * The request path
+     */
+    private final String requestPath;
+
+    /**
+     * Time (System.nanoTime()) the request started
+     */
+    private final long start;
+
+    /**
+     * Time (in nanoseconds) spent in each phase
+     */
+    private final long[] phaseNanos = new long[Phase.values().length];
+
+    /**
+     * Time (in nanoseconds) the whole request took
+     */
+    private long elapsedNanos;
+
+    /**
+     * Time (System.nanoTime()) the request was sent, then the response headers were received
+     */
+    private long mark;
+
+    private long bytesSent;
+    private long bytesReceived;
+    private int retries;
+    private int statusCode;
+    private boolean cached;
+    private boolean hedged;
+    private Exception failure;
+
+    private RequestTrace(String HTTPMethod, String requestPath) {
+        this.HTTPMethod = HTTPMethod.toUpperCase();
+        this.requestPath = requestPath;
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Starts the trace of a request on the current thread, replacing the one of a request that did not complete
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @return the trace
+     */
+    static RequestTrace begin(String HTTPMethod, String requestPath) {
+        RequestTrace trace = new RequestTrace(HTTPMethod, requestPath);
+        current.set(trace);
+        return trace;
+    }
+
+    /**
+     * Gets the trace of the request the current thread is sending
+     * @return the trace, or null if the request is not traced
+     */
+    static RequestTrace current() { return current.get(); }
+
+    /**
+     * Completes the trace of the current thread
+     * @param failure The exception the request failed with, or null
+     */
+    void end(Exception failure) {
+        this.failure = failure;
+        elapsedNanos = System.nanoTime() - start;
+        current.remove();
+    }
+
+    /**
+     * Adds time to a phase
+     * @param phase The phase
+     * @param nanos The time in nanoseconds
+     */
+    void add(Phase phase, long nanos) { phaseNanos[phase.ordinal()] += nanos; }
+
+    /**
+     * Records that a connection was leased from the pool
+     * @param waitNanos The time (in nanoseconds) spent waiting for it
+     */
+    void markLeased(long waitNanos) {
+        add(Phase.POOL_WAIT, waitNanos);
+        mark = System.nanoTime();
+    }
+
+    /**
+     * Records that the request is being sent. The time since the connection was leased (i.e. opening it)
+     * counts as waiting for it.
+     */
+    void markSent() {
+        long now = System.nanoTime();
+        if (mark != 0)
+            add(Phase.POOL_WAIT, now - mark);
+        mark = now;
+    }
+
+    /**
+     * Records that the response headers were received
+     */
+    void markResponse() {
+        long now = System.nanoTime();
+        if (mark != 0)
+            add(Phase.SERVER, now - mark);
+        mark = now;
+    }
+
+    /**
+     * Records that the response body was read
+     */
+    void markDownloaded() {
+        if (mark != 0)
+            add(Phase.DOWNLOAD, System.nanoTime() - mark);
+        mark = 0;
+    }
+
+    void addBytesSent(long bytes) { bytesSent += bytes; }
+    void addRetry() { retries++; }
+    void setStatusCode(int statusCode) { this.statusCode = statusCode; }
+    void setCached(boolean cached) { this.cached = cached; }
+    void setHedged(boolean hedged) { this.hedged = hedged; }
+
+    /**
+     * Wraps a response stream to count the bytes received
+     * @param content The response stream
+     * @return the counting stream
+     */
+    InputStream count(InputStream content) {
+        return new FilterInputStream(content) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0)
+                    bytesReceived++;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0)
+                    bytesReceived += read;
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Wraps a response body to count the bytes received
+     * @param entity The response body
+     * @return the counting body
+     */
+    HttpEntity count(HttpEntity entity) {
+        return new HttpEntityWrapper(entity) {
+            @Override
+            public InputStream getContent() throws IOException { return count(super.getContent()); }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                if (isStreaming() || getContentLength() < 0) {
+                    InputStream content = getContent();
+                    try {
+                        byte[] buffer = new byte[4096];
+                        for (int read; (read = content.read(buffer)) >= 0; )
+                            out.write(buffer, 0, read);
+                    } finally {
+                        content.close();
+                    }
+                    return;
+                }
+                /* held in memory: written in one call */
+                super.writeTo(out);
+                bytesReceived += getContentLength();
+            }
+        };
+    }
+
+    /**
+     * Gets the endpoint of a request: its method and its path, with the identifiers replaced by {id}.
+     * V2 paths alternate collections and identifiers, so every other segment is an identifier
+     * (i.e. "PATCH assets/{id}/metadata").
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path
+     * @return the endpoint
+     */
+    static String endpoint(String HTTPMethod, String requestPath) {
+        StringBuilder endpoint = new StringBuilder(HTTPMethod.length() + requestPath.length() + 8).append(HTTPMethod).append(' ');
+        int segment = 0;
+        for (String part : requestPath.split("/")) {
+            if (part.isEmpty())
+                continue;
+            if (segment > 0)
+                endpoint.append('/');
+            endpoint.append((segment++ % 2 == 0) ? part : "{id}");
+        }
+        return endpoint.toString();
+    }
+
+    /**
+     * Gets the HTTP method (verb)
+     * @return the HTTP method, in upper case
+     */
+    public String getHTTPMethod() { return HTTPMethod; }
+
+    /**
+     * Gets the request path
+     * @return the request path
+     */
+    public String getRequestPath() { return requestPath; }
+
+    /**
+     * Gets the endpoint of the request: its method and its path, with the identifiers replaced by {id}
+     * @return the endpoint, i.e. "GET assets/{id}"
+     */
+    public String getEndpoint() { return endpoint(HTTPMethod, requestPath); }
+
+    /**
+     * Gets the time spent in a phase
+     * @param phase The phase
+     * @return the time in nanoseconds
+     */
+    public long getPhaseNanos(Phase phase) { return phaseNanos[phase.ordinal()]; }
+
+    /**
+     * Gets the time the whole request took
+     * @return the time in nanoseconds
+     */
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /**
+     * Gets the number of bytes of the request body(ies), including the retries
+     * @return the number of bytes sent
+     */
+    public long getBytesSent() { return bytesSent; }
+
+    /**
+     * Gets the number of bytes of the response body(ies), including the retries
+     * @return the number of bytes received
+     */
+    public long getBytesReceived() { return bytesReceived; }
+
+    /**
+     * Gets the number of times the request was retried
+     * @return the number of retries
+     */
+    public int getRetries() { return retries; }
+
+    /**
+     * Gets the HTTP status code of the (last) response
+     * @return the status code, or 0 if no response was received
+     */
+    public int getStatusCode() { return statusCode; }
+
+    /**
+     * Indicates if the response came from the response cache without contacting the API
+     * @return true if it was served from the cache
+     */
+    public boolean isCached() { return cached; }
+
+    /**
+     * Indicates if a duplicate of the request was sent, because it had no response after the delay of the hedging policy
+     * @return true if it was hedged
+     */
+    public boolean isHedged() { return hedged; }
+
+    /**
+     * Gets the exception the request failed with
+     * @return the exception (i.e. an HttpStatusCodeException), or null if the request succeeded
+     */
+    public Exception getFailure() { return failure; }
+}
@@ -0,0 +1,737 @@
+package com.ooyala.api;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Client-side cache of GET responses.
+ *
+ * Responses are kept in memory in LRU order, bounded by a number of entries and a total body size.
+ * A response younger than the time to live is served without contacting the API; an older one is
+ * revalidated with a conditional GET (If-None-Match / If-Modified-Since) when the API sent an ETag
+ * or a Last-Modified header, and served again if the API answers 304 Not Modified.
+ *
+ * Responses are keyed by path and query parameters, without the authentication parameters, since
+ * those change with every expiration window. Successful POST, PUT, PATCH and DELETE requests sent
+ * through the same OoyalaAPI instance invalidate the cached responses of their path, of the paths
+ * below it and of its parent paths (i.e. a PATCH to assets/abc invalidates assets, assets/abc and
+ * assets/abc/metadata).
+ *
+ * Optionally, responses are also written to a directory, which serves as a second tier when they
+ * are evicted from memory and survives restarts. The files are bounded by a total size, above which
+ * the least recently used ones are deleted. The files are read and written outside the lock of
+ * the memory tier, so a slow disk does not block the lookups of other requests; only invalidations
+ * wait for the reads and writes in progress, so that a response is never written back after its
+ * invalidation.
+ */
+public class ResponseCache {
+
+    /**
+     * A cached response
+     */
+    static class Entry {
+        final String path;
+        final String body;
+        final String eTag;
+        final String lastModified;
+        volatile long storedAt;
+
+        Entry(String path, String body, String eTag, String lastModified, long storedAt) {
+            this.path = path;
+            this.body = body;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.storedAt = storedAt;
+        }
+
+        /**
+         * Indicates if the response can be revalidated with a conditional GET
+         * @return true if there is an ETag or a Last-Modified date
+         */
+        boolean isRevalidatable() { return eTag != null || lastModified != null; }
+    }
+
+    /**
+     * Prefix of the names of the files holding responses, which URI encoded path segments never start with
+     */
+    private static final String FILE_PREFIX = "~";
+
+    /**
+     * Default maximum total size (in bytes) of the files of the disk tier
+     */
+    public static final long DEFAULT_MAX_DISK_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * Charset of the files holding responses
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Maximum number of responses held in memory
+     */
+    private final int maxEntries;
+
+    /**
+     * Maximum total size (in characters) of the bodies held in memory
+     */
+    private final long maxSize;
+
+    /**
+     * Time (in milliseconds) during which a response is served without contacting the API
+     */
+    private final long timeToLive;
+
+    /**
+     * Directory of the disk tier, or null if there is none
+     */
+    private Path directory;
+
+    /**
+     * Maximum total size (in bytes) of the files of the disk tier
+     */
+    private volatile long maxDiskSize = DEFAULT_MAX_DISK_SIZE;
+
+    /**
+     * Sizes of the files of the disk tier, in access order. Guarded by itself.
+     */
+    private final LinkedHashMap<Path, Long> diskFiles = new LinkedHashMap<Path, Long>(16, 0.75f, true);
+
+    /**
+     * Total size of the files of the disk tier. Guarded by diskFiles.
+     */
+    private long diskSize;
+
+    /**
+     * Lock of the disk tier: shared by the reads and writes of responses, exclusive for their deletion
+     */
+    private final ReadWriteLock diskLock = new ReentrantReadWriteLock();
+
+    /**
+     * Number of invalidations so far. A response read or written while it changes may be stale, and is dropped.
+     */
+    private long generation;
+
+    /**
+     * Total size of the bodies held in memory
+     */
+    private long size;
+
+    /**
+     * The responses held in memory, in access order
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * Creates an in-memory cache
+     * @param maxEntries Maximum number of responses held in memory
+     * @param maxSize Maximum total size (in characters) of the bodies held in memory
+     * @param timeToLive Time (in milliseconds) during which a response is served without contacting the API
+     */
+    public ResponseCache(int maxEntries, long maxSize, long timeToLive) {
+        this.maxEntries = maxEntries;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Sets the directory where responses are also written, bounded to DEFAULT_MAX_DISK_SIZE bytes
+     * @param directory The directory of the disk tier, or null to only keep responses in memory
+     * @throws IOException if the directory can not be created or listed
+     */
+    public void setDirectory(Path directory) throws IOException { setDirectory(directory, DEFAULT_MAX_DISK_SIZE); }
+
+    /**
+     * Sets the directory where responses are also written. The responses already in the directory are kept,
+     * up to the maximum size.
+     * @param directory The directory of the disk tier, or null to only keep responses in memory
+     * @param maxDiskSize Maximum total size (in bytes) of the files of the disk tier
+     * @throws IOException if the directory can not be created or listed
+     */
+    public void setDirectory(Path directory, long maxDiskSize) throws IOException {
+        /* the disk lock is always taken before the monitor */
+        diskLock.writeLock().lock();
+        try {
+            synchronized (diskFiles) {
+                diskFiles.clear();
+                diskSize = 0;
+            }
+            this.maxDiskSize = maxDiskSize;
+            if (directory != null) {
+                directory = directory.toAbsolutePath().normalize();
+                Files.createDirectories(directory);
+                loadFiles(directory);
+            }
+            synchronized (this) {
+                this.directory = directory;
+                generation++;
+            }
+        } finally {
+            diskLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the maximum total size of the files of the disk tier
+     * @return the size in bytes
+     */
+    public long getMaxDiskSize() { return maxDiskSize; }
+
+    /**
+     * Gets the total size of the files of the disk tier
+     * @return the size in bytes
+     */
+    public long getDiskSize() {
+        synchronized (diskFiles) {
+            return diskSize;
+        }
+    }
+
+    /**
+     * Gets the directory where responses are also written
+     * @return the directory, or null if responses are only kept in memory
+     */
+    public synchronized Path getDirectory() { return directory; }
+
+    /**
+     * Gets the time during which a response is served without contacting the API
+     * @return the time to live in milliseconds
+     */
+    public long getTimeToLive() { return timeToLive; }
+
+    /**
+     * Gets the number of responses held in memory
+     * @return the number of responses
+     */
+    public synchronized int size() { return entries.size(); }
+
+    /**
+     * Drops every cached response, including the ones on disk
+     * @throws IOException if the files of the disk tier can not be deleted
+     */
+    public void clear() throws IOException {
+        Path directory;
+        synchronized (this) {
+            entries.clear();
+            size = 0;
+            generation++;
+            directory = this.directory;
+        }
+        if (directory == null)
+            return;
+        diskLock.writeLock().lock();
+        try {
+            deleteResponses(directory, true);
+        } finally {
+            diskLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Builds the key of a request
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @return the key
+     */
+    static String key(String requestPath, Map<String, String> parameters) {
+        StringBuilder key = new StringBuilder(64).append(requestPath);
+        for (String name : RequestSigner.sortedKeys(parameters)) {
+            if (!RequestSigner.isAuthenticationParameter(name))
+                key.append('\u0000').append(name).append('=').append(parameters.get(name));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Indicates if a cached response can be served without contacting the API
+     * @param entry The cached response
+     * @return true if it is younger than the time to live
+     */
+    boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.storedAt < timeToLive;
+    }
+
+    /**
+     * Gets a cached response, from memory or from disk
+     * @param requestPath The request path
+     * @param key The key of the request
+     * @return the response, or null if it is not cached
+     */
+    Entry get(String requestPath, String key) {
+        Path directory;
+        long readGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null || this.directory == null)
+                return entry;
+            directory = this.directory;
+            readGeneration = generation;
+        }
+        Entry entry;
+        diskLock.readLock().lock();
+        try {
+            entry = read(directory, requestPath, key);
+        } finally {
+            diskLock.readLock().unlock();
+        }
+        if (entry == null)
+            return null;
+        synchronized (this) {
+            if (generation != readGeneration)
+                return null;
+            Entry stored = entries.get(key);
+            if (stored != null)
+                return stored;
+            store(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the number of invalidations so far, read before a request so that its response can be dropped if
+     * the cache was invalidated while it was in flight
+     * @return the generation
+     */
+    synchronized long getGeneration() { return generation; }
+
+    /**
+     * Caches a response, unless the cache was invalidated since the request was sent: the response may then
+     * predate a write, and the response of the request is dropped instead
+     * @param requestPath The request path
+     * @param key The key of the request
+     * @param body The response body
+     * @param eTag The ETag header, may be null
+     * @param lastModified The Last-Modified header, may be null
+     * @param requestGeneration The generation read before the request was sent
+     */
+    void put(String requestPath, String key, String body, String eTag, String lastModified, long requestGeneration) {
+        if (body == null || body.length() > maxSize)
+            return;
+        Entry entry = new Entry(requestPath, body, eTag, lastModified, System.currentTimeMillis());
+        Path directory;
+        boolean stale;
+        synchronized (this) {
+            stale = generation != requestGeneration;
+            if (stale)
+                remove(key);
+            else
+                store(key, entry);
+            directory = this.directory;
+        }
+        if (directory == null)
+            return;
+        if (stale) {
+            diskLock.writeLock().lock();
+            try {
+                delete(directory, requestPath, key);
+            } finally {
+                diskLock.writeLock().unlock();
+            }
+            return;
+        }
+        diskLock.readLock().lock();
+        try {
+            /* an invalidation since the response was stored must win, and then waits for this write */
+            synchronized (this) {
+                if (generation != requestGeneration)
+                    return;
+            }
+            write(directory, key, entry);
+        } finally {
+            diskLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Marks a cached response as just validated by the API (after a 304 Not Modified), unless the cache was
+     * invalidated since the request was sent
+     * @param entry The cached response
+     * @param requestGeneration The generation read before the request was sent
+     * @return true if the response was refreshed, false if it may be stale and must be fetched again
+     */
+    synchronized boolean refresh(Entry entry, long requestGeneration) {
+        if (generation != requestGeneration)
+            return false;
+        entry.storedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Drops the responses of a path, of the paths below it and of its parent paths
+     * @param requestPath The path modified by a request
+     */
+    void invalidate(String requestPath) {
+        String path = trimSlashes(requestPath);
+        Path directory;
+        synchronized (this) {
+            for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+                Entry entry = iterator.next();
+                String cachedPath = trimSlashes(entry.path);
+                if (isSameOrBelow(cachedPath, path) || isSameOrBelow(path, cachedPath)) {
+                    size -= entry.body.length();
+                    iterator.remove();
+                }
+            }
+            generation++;
+            directory = this.directory;
+        }
+        if (directory == null)
+            return;
+        diskLock.writeLock().lock();
+        try {
+            Path pathDirectory = directory;
+            deleteResponses(pathDirectory, false);
+            for (String segment : path.split("/")) {
+                if (segment.isEmpty())
+                    continue;
+                pathDirectory = pathDirectory.resolve(encodeSegment(segment));
+                if (!isInside(directory, pathDirectory) || !Files.isDirectory(pathDirectory))
+                    return;
+                deleteResponses(pathDirectory, false);
+            }
+            deleteResponses(pathDirectory, true);
+        } catch (IOException e) {
+            /* a response that can not be deleted is dropped when it is read again */
+        } finally {
+            diskLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indicates if a path is the same as another one or below it
+     * @param path The path
+     * @param parent The possible parent path
+     * @return true if path is parent or starts with parent/
+     */
+    private static boolean isSameOrBelow(String path, String parent) {
+        return path.equals(parent) || path.startsWith(parent + "/");
+    }
+
+    /**
+     * Removes the leading and trailing slashes of a path
+     * @param path The path
+     * @return the trimmed path
+     */
+    private static String trimSlashes(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/')
+            start++;
+        while (end > start && path.charAt(end - 1) == '/')
+            end--;
+        return path.substring(start, end);
+    }
+
+    /**
+     * Stores a response in memory, evicting the least recently used ones above the limits
+     * @param key The key of the request
+     * @param entry The response
+     */
+    private void store(String key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        if (previous != null)
+            size -= previous.body.length();
+        size += entry.body.length();
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext() && (entries.size() > maxEntries || size > maxSize);) {
+            Entry eldest = iterator.next();
+            size -= eldest.body.length();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes a response from memory
+     * @param key The key of the request
+     */
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null)
+            size -= removed.body.length();
+    }
+
+    /**
+     * Gets the file holding a response. Files are laid out following the request path, so that all the
+     * responses of a path can be invalidated at once.
+     * @param directory The directory of the disk tier
+     * @param requestPath The request path
+     * @param key The key of the request
+     * @return the file, or null if it would not be inside the directory
+     */
+    private static Path file(Path directory, String requestPath, String key) {
+        Path file = directory;
+        for (String segment : trimSlashes(requestPath).split("/")) {
+            if (!segment.isEmpty())
+                file = file.resolve(encodeSegment(segment));
+        }
+        file = file.resolve(FILE_PREFIX + hash(key));
+        return isInside(directory, file) ? file : null;
+    }
+
+    /**
+     * Indicates if a file is inside a directory once normalized, i.e. if no segment of its path leads out of it
+     * @param directory The normalized directory
+     * @param file The file
+     * @return true if the file is the directory or below it
+     */
+    private static boolean isInside(Path directory, Path file) {
+        return file.normalize().startsWith(directory);
+    }
+
+    /**
+     * Writes a response to the disk tier
+     * @param directory The directory of the disk tier
+     * @param key The key of the request
+     * @param entry The response
+     */
+    private void write(Path directory, String key, Entry entry) {
+        Path file = file(directory, entry.path, key);
+        if (file == null)
+            return;
+        try {
+            Files.createDirectories(file.getParent());
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            BufferedWriter writer = Files.newBufferedWriter(temporary, UTF8);
+            try {
+                writer.write(key.replace('\n', ' '));
+                writer.newLine();
+                writer.write(entry.eTag != null ? entry.eTag : "");
+                writer.newLine();
+                writer.write(entry.lastModified != null ? entry.lastModified : "");
+                writer.newLine();
+                writer.write(Long.toString(entry.storedAt));
+                writer.newLine();
+                writer.write(entry.body);
+            } finally {
+                writer.close();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (Path evicted : addFile(file, Files.size(file)))
+                Files.deleteIfExists(evicted);
+        } catch (IOException e) {
+            /* the response is still cached in memory */
+        }
+    }
+
+    /**
+     * Deletes a response from the disk tier
+     * @param directory The directory of the disk tier
+     * @param requestPath The request path
+     * @param key The key of the request
+     */
+    private void delete(Path directory, String requestPath, String key) {
+        Path file = file(directory, requestPath, key);
+        if (file == null)
+            return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            /* a response that can not be deleted is dropped when it is read again */
+        }
+        removeFile(file);
+    }
+
+    /**
+     * Reads a response from the disk tier
+     * @param directory The directory of the disk tier
+     * @param requestPath The request path
+     * @param key The key of the request
+     * @return the response, or null if it is not on disk
+     */
+    private Entry read(Path directory, String requestPath, String key) {
+        Path file = file(directory, requestPath, key);
+        if (file == null)
+            return null;
+        if (!Files.exists(file)) {
+            removeFile(file);
+            return null;
+        }
+        touchFile(file);
+        try {
+            BufferedReader reader = Files.newBufferedReader(file, UTF8);
+            try {
+                if (!key.replace('\n', ' ').equals(reader.readLine()))
+                    return null;
+                String eTag = reader.readLine();
+                String lastModified = reader.readLine();
+                long storedAt = Long.parseLong(reader.readLine());
+                StringBuilder body = new StringBuilder();
+                char[] buffer = new char[8192];
+                int read;
+                while ((read = reader.read(buffer)) > 0)
+                    body.append(buffer, 0, read);
+                return new Entry(requestPath, body.toString(), eTag.isEmpty() ? null : eTag, lastModified.isEmpty() ? null : lastModified, storedAt);
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            /* unreadable responses are dropped */
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+            removeFile(file);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the files holding responses in a directory
+     * @param pathDirectory The directory
+     * @param recursive Indicates if the responses of the subdirectories are deleted too
+     * @throws IOException if a file can not be deleted
+     */
+    private void deleteResponses(Path pathDirectory, boolean recursive) throws IOException {
+        if (!Files.isDirectory(pathDirectory))
+            return;
+        if (recursive) {
+            Files.walkFileTree(pathDirectory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (file.getFileName().toString().startsWith(FILE_PREFIX)) {
+                        Files.delete(file);
+                        removeFile(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return;
+        }
+        DirectoryStream<Path> files = Files.newDirectoryStream(pathDirectory, FILE_PREFIX + "*");
+        try {
+            for (Path file : files) {
+                Files.delete(file);
+                removeFile(file);
+            }
+        } finally {
+            files.close();
+        }
+    }
+
+    /**
+     * Indexes the files of responses already in a directory, the least recently modified first, and deletes
+     * the ones above the maximum size
+     * @param directory The directory of the disk tier
+     * @throws IOException if the directory can not be listed or a file can not be deleted
+     */
+    private void loadFiles(Path directory) throws IOException {
+        final List<Path> files = new ArrayList<Path>();
+        final Map<Path, BasicFileAttributes> attributes = new LinkedHashMap<Path, BasicFileAttributes>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes fileAttributes) {
+                if (file.getFileName().toString().startsWith(FILE_PREFIX)) {
+                    files.add(file);
+                    attributes.put(file, fileAttributes);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(files, new Comparator<Path>() {
+            public int compare(Path file1, Path file2) {
+                FileTime time1 = attributes.get(file1).lastModifiedTime();
+                return time1.compareTo(attributes.get(file2).lastModifiedTime());
+            }
+        });
+        for (Path file : files) {
+            for (Path evicted : addFile(file, attributes.get(file).size()))
+                Files.deleteIfExists(evicted);
+        }
+    }
+
+    /**
+     * Records a file written to the disk tier
+     * @param file The file
+     * @param fileSize Its size in bytes
+     * @return the least recently used files to delete, to stay under the maximum size
+     */
+    private List<Path> addFile(Path file, long fileSize) {
+        List<Path> evicted = new ArrayList<Path>();
+        synchronized (diskFiles) {
+            Long previous = diskFiles.put(file, fileSize);
+            diskSize += fileSize - (previous != null ? previous : 0);
+            for (Iterator<Map.Entry<Path, Long>> iterator = diskFiles.entrySet().iterator(); iterator.hasNext() && diskSize > maxDiskSize;) {
+                Map.Entry<Path, Long> eldest = iterator.next();
+                diskSize -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                iterator.remove();
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Marks a file of the disk tier as just used
+     * @param file The file
+     */
+    private void touchFile(Path file) {
+        synchronized (diskFiles) {
+            diskFiles.get(file);
+        }
+    }
+
+    /**
+     * Forgets a file deleted from the disk tier
+     * @param file The file
+     */
+    private void removeFile(Path file) {
+        synchronized (diskFiles) {
+            Long fileSize = diskFiles.remove(file);
+            if (fileSize != null)
+                diskSize -= fileSize;
+        }
+    }
+
+    /**
+     * Encodes a path segment as a file name. Segments made only of dots (i.e. "." and "..") are escaped too,
+     * so that they do not name the directory itself or its parent.
+     * @param segment The path segment
+     * @return the file name
+     */
+    private static String encodeSegment(String segment) {
+        try {
+            String name = URLEncoder.encode(segment, "UTF-8");
+            return name.replace(".", "").isEmpty() ? name.replace(".", "%2E") : name;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes a key into a file name
+     * @param key The key of the request
+     * @return the hex encoded SHA-1 of the key
+     */
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.ooyala.api;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounded cache of signed URLs for requests without a body.
+ *
+ * Since the expires parameter is rounded up to the next roundUpTime boundary, identical requests
+ * sent within the same time bucket have the same signed URL. Entries are only valid for the bucket
+ * they were signed in, so the whole cache is dropped as soon as a request falls in a new bucket.
+ */
+class SignedURLCache {
+
+    /**
+     * The signed URLs of one expiration bucket
+     */
+    private static class Bucket {
+        final long expires;
+        final Map<String, String> urls = new ConcurrentHashMap<String, String>();
+
+        Bucket(long expires) { this.expires = expires; }
+    }
+
+    /**
+     * Maximum number of URLs held at the same time
+     */
+    private final int maxEntries;
+
+    /**
+     * The bucket of the current expiration date
+     */
+    private final AtomicReference<Bucket> bucket = new AtomicReference<Bucket>(new Bucket(-1));
+
+    /**
+     * Creates the cache
+     * @param maxEntries Maximum number of URLs held at the same time
+     */
+    SignedURLCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Builds the key of a request
+     * @param HTTPMethod The HTTP method
+     * @param requestPath The request path
+     * @param parameters The query parameters
+     * @return the key
+     */
+    static String key(String HTTPMethod, String requestPath, Map<String, String> parameters) {
+        StringBuilder key = new StringBuilder(64).append(HTTPMethod.toUpperCase()).append(' ').append(requestPath);
+        for (String name : RequestSigner.sortedKeys(parameters))
+            key.append('\u0000').append(name).append('=').append(parameters.get(name));
+        return key.toString();
+    }
+
+    /**
+     * Gets the signed URL of a request
+     * @param key The key of the request
+     * @param expires The expiration date the URL must have
+     * @return the URL, or null if it is not cached for that expiration date
+     */
+    String get(String key, long expires) {
+        Bucket current = bucket.get();
+        if (current.expires != expires) {
+            /* the bucket rolled over, the cached URLs are no longer the ones that would be signed now */
+            if (current.expires < expires)
+                bucket.compareAndSet(current, new Bucket(expires));
+            return null;
+        }
+        return current.urls.get(key);
+    }
+
+    /**
+     * Stores the signed URL of a request
+     * @param key The key of the request
+     * @param expires The expiration date of the URL
+     * @param url The signed URL
+     */
+    void put(String key, long expires, String url) {
+        Bucket current = bucket.get();
+        if (current.expires == expires && current.urls.size() < maxEntries)
+            current.urls.put(key, url);
+    }
+
+    /**
+     * Drops all the cached URLs
+     */
+    void clear() {
+        bucket.set(new Bucket(-1));
+    }
+}
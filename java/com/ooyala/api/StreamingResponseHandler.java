@@ -0,0 +1,147 @@
+package com.ooyala.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Response handler writing the body of a successful response, unparsed, to an OutputStream or a
+ * WritableByteChannel. The body of an error response is read as a String, for the HttpStatusCodeException.
+ *
+ * Bodies held in memory (i.e. by the InProcessTransport) are written in one call. Streamed bodies are
+ * transferred with FileChannel.transferFrom to a file, and through a direct buffer to other channels, so
+ * the bytes are not copied again by the channel.
+ */
+class StreamingResponseHandler implements TransportResponseHandler {
+
+    /**
+     * Size of the buffers and of the transfers
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Direct buffer of each thread, reused by the transfers to channels
+     */
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() { return ByteBuffer.allocateDirect(BUFFER_SIZE); }
+    };
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+
+    /**
+     * Creates a handler writing to an OutputStream
+     * @param out The stream the body is written to. It is not closed.
+     */
+    StreamingResponseHandler(OutputStream out) {
+        this.out = out;
+        this.channel = null;
+    }
+
+    /**
+     * Creates a handler writing to a channel
+     * @param channel The channel the body is written to, at its position for a FileChannel. It is not closed.
+     */
+    StreamingResponseHandler(WritableByteChannel channel) {
+        this.out = null;
+        this.channel = channel;
+    }
+
+    /**
+     * Writes the body of a successful response
+     * @return the response, with the number of bytes written (a Long) as body, or with the body as a String
+     * if the response is an error
+     * @throws IOException if the body can not be read or written, or is shorter than its Content-Length
+     */
+    public OoyalaResponse handleResponse(int statusCode, Map<String, List<String>> headers, HttpEntity entity) throws IOException {
+        RequestTrace trace = RequestTrace.current();
+        Object body;
+        if (statusCode < 200 || statusCode >= 400) {
+            body = (entity != null) ? EntityUtils.toString(entity) : null;
+        } else {
+            long written = (entity != null) ? transfer(entity) : 0;
+            /* a connection closed early ends the body without an error; the length check catches it unless
+               the body was decompressed */
+            String contentLength = first(headers, "Content-Length");
+            String contentEncoding = first(headers, "Content-Encoding");
+            if (contentLength != null && (contentEncoding == null || contentEncoding.equalsIgnoreCase("identity"))
+                    && Long.parseLong(contentLength.trim()) != written)
+                throw new IOException("Response body truncated: " + written + " of " + contentLength.trim() + " bytes");
+            body = Long.valueOf(written);
+        }
+        if (trace != null)
+            trace.markDownloaded();
+        return new OoyalaResponse(statusCode, headers, body, 0);
+    }
+
+    /**
+     * Writes a response body
+     * @param entity The body
+     * @return the number of bytes written
+     */
+    private long transfer(HttpEntity entity) throws IOException {
+        long length = entity.getContentLength();
+        if (!entity.isStreaming() && length >= 0) {
+            /* held in memory: written in one call */
+            entity.writeTo((out != null) ? out : Channels.newOutputStream(channel));
+            return length;
+        }
+        InputStream in = entity.getContent();
+        try {
+            if (channel instanceof FileChannel)
+                return transferFrom(Channels.newChannel(in), (FileChannel)channel);
+            if (channel != null)
+                return transfer(Channels.newChannel(in), channel);
+            long written = 0;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read; (read = in.read(buffer)) >= 0; written += read)
+                out.write(buffer, 0, read);
+            return written;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Transfers a body to a file, from the position of the file
+     */
+    private static long transferFrom(ReadableByteChannel source, FileChannel file) throws IOException {
+        long start = file.position();
+        long position = start;
+        for (long transferred; (transferred = file.transferFrom(source, position, BUFFER_SIZE)) > 0; )
+            position += transferred;
+        file.position(position);
+        return position - start;
+    }
+
+    /**
+     * Transfers a body to a channel through the direct buffer of the thread
+     */
+    private static long transfer(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = DIRECT_BUFFER.get();
+        buffer.clear();
+        long written = 0;
+        while (source.read(buffer) >= 0 || buffer.position() > 0) {
+            buffer.flip();
+            written += target.write(buffer);
+            buffer.compact();
+        }
+        return written;
+    }
+
+    private static String first(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        return (values != null && !values.isEmpty()) ? values.get(0) : null;
+    }
+}
@@ -0,0 +1,211 @@
+package com.ooyala.api;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+
+/**
+ * A signed request, as handed to an OoyalaTransport: the method, the full URL (with the authentication
+ * parameters), the extra headers and the body.
+ *
+ * The body is an HttpEntity of HttpCore, which carries its length, content type and content encoding
+ * (i.e. gzip) and can be written to any stream; it does not tie the transport to Apache HttpClient.
+ */
+public class TransportRequest {
+
+    /**
+     * The HTTP method (verb), in upper case
+     */
+    private final String HTTPMethod;
+
+    /**
+     * The URL, with its query string
+     */
+    private volatile String URL;
+
+    /**
+     * Signs the URL again with a later expiration, or null if the URL can not be signed again
+     */
+    private URLSigner signer;
+
+    /**
+     * The request body, or null
+     */
+    private final HttpEntity entity;
+
+    /**
+     * The headers other than the ones describing the body
+     */
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+    /**
+     * Indicates if the request has been aborted
+     */
+    private volatile boolean aborted;
+
+    /**
+     * Action of the transport aborting the request, or null if the transport does not support it
+     */
+    private Runnable abortAction;
+
+    /**
+     * Signs the URL of a request, so that a request retried late is sent with a valid signature
+     */
+    interface URLSigner {
+
+        /**
+         * Signs the URL
+         * @param expires The expiration date (in seconds)
+         * @return The URL, including the api_key, expires and signature parameters
+         * @throws IOException if the body can not be read to sign it
+         */
+        String sign(long expires) throws IOException;
+    }
+
+    /**
+     * Creates a request
+     * @param HTTPMethod The HTTP method (verb)
+     * @param URL The URL, with its query string
+     * @param entity The request body, or null
+     */
+    public TransportRequest(String HTTPMethod, String URL, HttpEntity entity) {
+        this.HTTPMethod = HTTPMethod.toUpperCase();
+        this.URL = URL;
+        this.entity = entity;
+    }
+
+    /**
+     * Creates a copy of the request, with the same URL, headers and body, that can be sent (and aborted) on its own
+     * @return the copy
+     */
+    TransportRequest copy() {
+        TransportRequest copy = new TransportRequest(HTTPMethod, URL, entity);
+        copy.headers.putAll(headers);
+        copy.signer = signer;
+        return copy;
+    }
+
+    /**
+     * Sets the signer generating the URL again with a later expiration
+     * @param signer The signer
+     */
+    void setSigner(URLSigner signer) { this.signer = signer; }
+
+    /**
+     * Gets the expiration date of the URL
+     * @return the expiration date (in seconds), or Long.MAX_VALUE if the URL has no expires parameter
+     */
+    long getExpires() {
+        String query = URI.create(URL).getRawQuery();
+        if (query == null)
+            return Long.MAX_VALUE;
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("expires=")) {
+                try {
+                    return Long.parseLong(parameter.substring("expires=".length()));
+                } catch (NumberFormatException e) {
+                    return Long.MAX_VALUE;
+                }
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Signs the URL again, if the request has a signer
+     * @param expires The new expiration date (in seconds)
+     * @return false if the URL can not be signed again
+     * @throws IOException if the body can not be read to sign it
+     */
+    boolean resign(long expires) throws IOException {
+        if (signer == null)
+            return false;
+        URL = signer.sign(expires);
+        return true;
+    }
+
+    /**
+     * Sets a header, replacing its previous value
+     * @param name The header name
+     * @param value The header value
+     */
+    public void setHeader(String name, String value) { headers.put(name, value); }
+
+    /**
+     * Gets the HTTP method (verb)
+     * @return the method, in upper case
+     */
+    public String getMethod() { return HTTPMethod; }
+
+    /**
+     * Gets the URL
+     * @return the URL, with its query string
+     */
+    public String getURL() { return URL; }
+
+    /**
+     * Gets the path of the URL
+     * @return the path (i.e. "/v2/assets")
+     */
+    public String getPath() { return URI.create(URL).getPath(); }
+
+    /**
+     * Gets the headers other than the ones describing the body (Content-Type, Content-Length and Content-Encoding)
+     * @return the headers
+     */
+    public Map<String, String> getHeaders() { return Collections.unmodifiableMap(headers); }
+
+    /**
+     * Gets a header
+     * @param name The header name (case sensitive)
+     * @return the value, or null if the header is not set
+     */
+    public String getHeader(String name) { return headers.get(name); }
+
+    /**
+     * Gets the request body
+     * @return the body, or null if the request has none
+     */
+    public HttpEntity getEntity() { return entity; }
+
+    /**
+     * Aborts the request. The transport stops waiting for its response (i.e. by closing its connection)
+     * and throws an IOException, if it supports it.
+     */
+    public void abort() {
+        Runnable action;
+        synchronized (this) {
+            aborted = true;
+            action = abortAction;
+        }
+        if (action != null)
+            action.run();
+    }
+
+    /**
+     * Indicates if the request has been aborted
+     * @return true if it has
+     */
+    public boolean isAborted() { return aborted; }
+
+    /**
+     * Sets the action aborting the request, called by transports once the request is being sent. The action
+     * runs right away if the request is already aborted.
+     * @param abortAction The action, i.e. closing the connection of the request
+     */
+    public void setAbortAction(Runnable abortAction) {
+        synchronized (this) {
+            this.abortAction = abortAction;
+            if (!aborted)
+                return;
+        }
+        abortAction.run();
+    }
+
+    @Override
+    public String toString() { return HTTPMethod + " " + URL; }
+}
@@ -0,0 +1,23 @@
+package com.ooyala.api;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+
+/**
+ * Reads the response to a request sent by an OoyalaTransport. Implemented by OoyalaAPI.
+ */
+public interface TransportResponseHandler {
+
+    /**
+     * Reads a response
+     * @param statusCode The HTTP status code
+     * @param headers The response headers, with case insensitive names (see OoyalaResponse.getHeaders())
+     * @param entity The response body, already decompressed, or null if there is none
+     * @return the response
+     * @throws IOException if the body can not be read
+     */
+    OoyalaResponse handleResponse(int statusCode, Map<String, List<String>> headers, HttpEntity entity) throws IOException;
+}
@@ -0,0 +1,278 @@
+package com.ooyala.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.InputStreamEntity;
+
+/**
+ * OoyalaTransport of the java.net.http client (Java 11 and later), which multiplexes the requests over one
+ * HTTP/2 connection per host instead of a pool of HTTP/1.1 connections. Hosts not speaking HTTP/2 are sent
+ * HTTP/1.1 requests by the same client.
+ *
+ * This class lives in the java11 source root and is compiled for Java 11, apart from the rest of the client;
+ * OoyalaAPI.setHttp2() loads it reflectively, so the client still runs on Java 7 without it.
+ *
+ * Responses are requested compressed (gzip or deflate) unless disabled, and decompressed while they are read,
+ * like the ones of the default transport.
+ */
+class Http2Transport implements OoyalaTransport {
+
+    /**
+     * Size from which (or of unknown size) a request body is streamed through a pipe instead of being copied
+     */
+    private static final int BUFFERED_BODY_SIZE = 64 * 1024;
+
+    /**
+     * Threads of the client, also writing the streamed request bodies
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The client sending the requests
+     */
+    private final HttpClient httpClient;
+
+    /**
+     * Time (in milliseconds) to wait for the response headers, or 0 to wait forever
+     */
+    private final int socketTimeout;
+
+    /**
+     * Whether compressed responses are requested
+     */
+    private final boolean acceptingCompression;
+
+    /**
+     * Creates a transport. Called reflectively by OoyalaAPI.
+     * @param connectionTimeout Time (in milliseconds) to wait for a connection to be established, or 0 to wait forever
+     * @param socketTimeout Time (in milliseconds) to wait for the response headers, or 0 to wait forever
+     * @param acceptingCompression true to send Accept-Encoding: gzip,deflate
+     */
+    Http2Transport(int connectionTimeout, int socketTimeout, boolean acceptingCompression) {
+        this.socketTimeout = socketTimeout;
+        this.acceptingCompression = acceptingCompression;
+        final AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ooyala-api-http2-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .executor(executor);
+        if (connectionTimeout > 0)
+            builder.connectTimeout(Duration.ofMillis(connectionTimeout));
+        httpClient = builder.build();
+    }
+
+    /**
+     * Sends a request and waits for its response on the calling thread, which then hands it to the handler
+     */
+    public OoyalaResponse execute(TransportRequest request, TransportResponseHandler handler) throws IOException {
+        RequestTrace trace = RequestTrace.current();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.getURL()));
+        if (socketTimeout > 0)
+            builder.timeout(Duration.ofMillis(socketTimeout));
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+            builder.setHeader(header.getKey(), header.getValue());
+        if (acceptingCompression && request.getHeader("Accept-Encoding") == null)
+            builder.setHeader("Accept-Encoding", "gzip,deflate");
+
+        HttpEntity entity = request.getEntity();
+        String HTTPMethod = request.getMethod();
+        if (entity != null && (HTTPMethod.equals("POST") || HTTPMethod.equals("PATCH") || HTTPMethod.equals("PUT"))) {
+            if (entity.getContentType() != null)
+                builder.setHeader("Content-Type", entity.getContentType().getValue());
+            if (entity.getContentEncoding() != null)
+                builder.setHeader("Content-Encoding", entity.getContentEncoding().getValue());
+            builder.method(HTTPMethod, publisher(entity));
+        } else if (HTTPMethod.equals("GET") || HTTPMethod.equals("DELETE") || HTTPMethod.equals("POST")
+                || HTTPMethod.equals("PATCH") || HTTPMethod.equals("PUT")) {
+            builder.method(HTTPMethod, HttpRequest.BodyPublishers.noBody());
+        } else {
+            throw new IOException("Unsupported HTTP method " + HTTPMethod);
+        }
+
+        if (trace != null) {
+            if (entity != null && entity.getContentLength() > 0)
+                trace.addBytesSent(entity.getContentLength());
+            trace.markSent();
+        }
+        final CompletableFuture<HttpResponse<InputStream>> future = httpClient.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        final AtomicReference<InputStream> body = new AtomicReference<InputStream>();
+        request.setAbortAction(new Runnable() {
+            public void run() {
+                future.cancel(true);
+                InputStream content = body.get();
+                if (content != null)
+                    closeQuietly(content);
+            }
+        });
+        HttpResponse<InputStream> response = await(future, request);
+        body.set(response.body());
+        if (request.isAborted())
+            closeQuietly(response.body());
+        if (trace != null)
+            trace.markResponse();
+
+        try {
+            Map<String, List<String>> headers = copyHeaders(response);
+            int statusCode = response.statusCode();
+            HttpEntity responseEntity = null;
+            if (statusCode != 204 && statusCode != 304)
+                responseEntity = entity(response, headers, trace);
+            return handler.handleResponse(statusCode, headers, responseEntity);
+        } finally {
+            closeQuietly(response.body());
+        }
+    }
+
+    /**
+     * Waits for the response headers of a request
+     */
+    private static HttpResponse<InputStream> await(CompletableFuture<HttpResponse<InputStream>> future, TransportRequest request) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response of " + request);
+        } catch (CancellationException e) {
+            throw new IOException("Request aborted: " + request);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Builds the publisher of a request body. Small bodies of known size are copied once; the other ones are
+     * written by a thread of the executor into a pipe, so a large file is never held in memory.
+     */
+    private HttpRequest.BodyPublisher publisher(final HttpEntity entity) throws IOException {
+        long length = entity.getContentLength();
+        if (length >= 0 && length <= BUFFERED_BODY_SIZE) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream((int)length);
+            entity.writeTo(content);
+            return HttpRequest.BodyPublishers.ofByteArray(content.toByteArray());
+        }
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(new Supplier<InputStream>() {
+            public InputStream get() {
+                final PipedInputStream in = new PipedInputStream(BUFFERED_BODY_SIZE);
+                final PipedOutputStream out;
+                try {
+                    out = new PipedOutputStream(in);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            entity.writeTo(out);
+                        } catch (IOException e) {
+                            /* the reader fails on the broken pipe */
+                            closeQuietly(in);
+                        } finally {
+                            closeQuietly(out);
+                        }
+                    }
+                });
+                return in;
+            }
+        });
+        return (length >= 0) ? HttpRequest.BodyPublishers.fromPublisher(publisher, length) : publisher;
+    }
+
+    /**
+     * Wraps the body of a response, counted by the trace before it is decompressed
+     */
+    private static HttpEntity entity(HttpResponse<InputStream> response, Map<String, List<String>> headers, RequestTrace trace) throws IOException {
+        InputStream content = response.body();
+        if (trace != null)
+            content = trace.count(content);
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        String contentEncoding = response.headers().firstValue("Content-Encoding").orElse(null);
+        if (contentEncoding != null && contentEncoding.equalsIgnoreCase("gzip")) {
+            content = new GZIPInputStream(content);
+            length = -1;
+        } else if (contentEncoding != null && contentEncoding.equalsIgnoreCase("deflate")) {
+            content = new InflaterInputStream(content);
+            length = -1;
+        }
+        InputStreamEntity entity = new InputStreamEntity(content, length);
+        List<String> contentType = headers.get("Content-Type");
+        if (contentType != null && !contentType.isEmpty())
+            entity.setContentType(contentType.get(0));
+        return entity;
+    }
+
+    /**
+     * Copies the headers of a response into a case-insensitive map, like OoyalaResponse.copyHeaders()
+     */
+    private static Map<String, List<String>> copyHeaders(HttpResponse<InputStream> response) {
+        Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            if (header.getKey().startsWith(":"))
+                continue;
+            List<String> values = headers.get(header.getKey());
+            if (values == null) {
+                values = new ArrayList<String>(header.getValue().size());
+                headers.put(header.getKey(), values);
+            }
+            values.addAll(header.getValue());
+        }
+        for (Map.Entry<String, List<String>> entry : headers.entrySet())
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        return Collections.unmodifiableMap(headers);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            /* nothing to do */
+        }
+    }
+
+    /**
+     * Stops the threads of the client. Requests still in flight fail.
+     */
+    public void close() { executor.shutdownNow(); }
+}
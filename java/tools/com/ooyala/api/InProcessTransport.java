@@ -0,0 +1,88 @@
+package com.ooyala.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+
+/**
+ * Transport handing the requests straight to a StandInServer, without any socket nor thread: the request is
+ * answered on the calling thread, so tests run deterministically and as fast as the client allows.
+ *
+ * The host of the URLs is ignored; their path and query are answered by the server. Responses are never
+ * compressed, since the transport does not ask for it.
+ *
+ * <pre>
+ * StandInServer server = new StandInServer("apiKey", "secretKey");
+ * OoyalaAPI api = new OoyalaAPI("apiKey", "secretKey");
+ * api.setTransport(new InProcessTransport(server));
+ * </pre>
+ */
+public class InProcessTransport implements OoyalaTransport {
+
+    /**
+     * The server answering the requests
+     */
+    private final StandInServer server;
+
+    /**
+     * Creates a transport
+     * @param server The server answering the requests
+     */
+    public InProcessTransport(StandInServer server) { this.server = server; }
+
+    /**
+     * Answers a request with the server, on the calling thread
+     */
+    public OoyalaResponse execute(TransportRequest request, TransportResponseHandler handler) throws IOException {
+        RequestTrace trace = RequestTrace.current();
+        Map<String, String> requestHeaders = new HashMap<String, String>();
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet())
+            requestHeaders.put(header.getKey().toLowerCase(), header.getValue());
+        byte[] body = new byte[0];
+        HttpEntity entity = request.getEntity();
+        if (entity != null) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream(entity.getContentLength() > 0 ? (int)entity.getContentLength() : 256);
+            entity.writeTo(content);
+            body = content.toByteArray();
+            if (entity.getContentType() != null)
+                requestHeaders.put("content-type", entity.getContentType().getValue());
+            if (entity.getContentEncoding() != null)
+                requestHeaders.put("content-encoding", entity.getContentEncoding().getValue());
+        }
+        if (trace != null) {
+            trace.markSent();
+            trace.addBytesSent(body.length);
+        }
+
+        URI uri = URI.create(request.getURL());
+        String target = uri.getRawPath() + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+        StandInServer.Response response = server.respond(request.getMethod(), target, requestHeaders, body);
+        if (trace != null)
+            trace.markResponse();
+
+        Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, String> header : response.headers.entrySet())
+            headers.put(header.getKey(), Collections.singletonList(header.getValue()));
+        HttpEntity responseEntity = null;
+        if (response.statusCode != 304) {
+            headers.put("Content-Length", Collections.singletonList(Integer.toString(response.body.length)));
+            ByteArrayEntity bytes = new ByteArrayEntity(response.body);
+            bytes.setContentType(response.headers.get("Content-Type"));
+            responseEntity = (trace != null) ? trace.count(bytes) : bytes;
+        }
+        return handler.handleResponse(response.statusCode, Collections.unmodifiableMap(headers), responseEntity);
+    }
+
+    /**
+     * Does nothing: the server is closed by its owner
+     */
+    public void close() {}
+}
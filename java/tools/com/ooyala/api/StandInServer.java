@@ -0,0 +1,906 @@
+package com.ooyala.api;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Embeddable stand-in for the Ooyala V2 API, to point setBaseURL at in load, soak and integration tests.
+ *
+ * The server listens on the loopback interface and checks the api_key, expires and signature parameters of
+ * every request exactly like the API does, so that a test fails if the client signs a request wrongly. It
+ * serves assets (with their metadata, labels, uploading URLs and upload status) and labels from memory, with
+ * the API's paging (limit, page_token and next_page links) and ETags. Gzip and deflate request bodies are
+ * decompressed, and large responses are gzipped for clients accepting it. Latency, errors and 429 responses can be
+ * injected to exercise retries and rate limiting, and the traffic can be recorded to a file and replayed.
+ *
+ * Connections are kept alive and served by a thread each, and every response is written in a single packet,
+ * so one client can send thousands of requests per second to it. The end-to-end benchmarks of benchmark/ use it.
+ *
+ * It is not part of the client: it lives in the tools/ source root, compiled with the client for the tests and
+ * the benchmarks.
+ *
+ * Usage:
+ *
+ *     StandInServer server = new StandInServer("7ab06", "329b5b204d0f11e0a2d060334bfffe90ab18xqh5");
+ *     server.setLatency(20, 10);
+ *     server.setThrottleRate(0.01);
+ *     OoyalaAPI api = new OoyalaAPI("7ab06", "329b5b204d0f11e0a2d060334bfffe90ab18xqh5");
+ *     api.setBaseURL(server.getBaseURL());
+ */
+public class StandInServer implements Closeable {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    /**
+     * The listening socket
+     */
+    private final ServerSocket serverSocket;
+
+    /**
+     * Runs one thread per connection
+     */
+    private final ExecutorService connections;
+
+    /**
+     * The open connections, closed with the server
+     */
+    private final Set<Socket> sockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    /**
+     * The secret keys, by API key
+     */
+    private final Map<String, String> accounts = new ConcurrentHashMap<String, String>();
+
+    /**
+     * The assets and labels
+     */
+    private final StandInStore store = new StandInStore();
+
+    private volatile boolean validatingSignatures = true;
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile double errorRate;
+    private volatile int errorStatusCode = 503;
+    private volatile double throttleRate;
+    private volatile int retryAfterSeconds = 1;
+    private volatile boolean compressingResponses = true;
+
+    /**
+     * Size (in bytes) from which responses are gzipped, for the clients accepting it
+     */
+    private static final int COMPRESSION_THRESHOLD = 1024;
+
+    /**
+     * The requests per second above which requests are answered with 429, or 0 for no limit
+     */
+    private double maxRequestsPerSecond;
+
+    /**
+     * The token bucket enforcing maxRequestsPerSecond
+     */
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * Receives the recorded exchanges, or null if the traffic is not recorded
+     */
+    private BufferedWriter recording;
+
+    /**
+     * The failure that stopped the recording, thrown by stopRecording(), or null
+     */
+    private IOException recordingFailure;
+
+    /**
+     * The replayed responses, by request (see replayKey()). The last response of a request is replayed
+     * again once the others were.
+     */
+    private final Map<String, Deque<StandInStore.Reply>> replayed = new HashMap<String, Deque<StandInStore.Reply>>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong unauthorized = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Starts a server on a free port of the loopback interface
+     * @param apiKey The API key of the account
+     * @param secretKey The secret key of the account
+     * @throws IOException if the server can not listen
+     */
+    public StandInServer(String apiKey, String secretKey) throws IOException {
+        this(apiKey, secretKey, 0);
+    }
+
+    /**
+     * Starts a server on a port of the loopback interface
+     * @param apiKey The API key of the account
+     * @param secretKey The secret key of the account
+     * @param port The port, or 0 for a free one
+     * @throws IOException if the server can not listen
+     */
+    public StandInServer(String apiKey, String secretKey, int port) throws IOException {
+        addAccount(apiKey, secretKey);
+        serverSocket = new ServerSocket(port, 1024, InetAddress.getByName("127.0.0.1"));
+        connections = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ooyala-stand-in-server");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        connections.execute(new Runnable() {
+            public void run() { accept(); }
+        });
+    }
+
+    /**
+     * Gets the base URL to set on the OoyalaAPI instance
+     * @return the base URL, ending with /v2/
+     */
+    public String getBaseURL() { return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/v2/"; }
+
+    /**
+     * Adds an account the requests can be signed with
+     * @param apiKey The API key of the account
+     * @param secretKey The secret key of the account
+     */
+    public void addAccount(String apiKey, String secretKey) { accounts.put(apiKey, secretKey); }
+
+    /**
+     * Sets whether the api_key, expires and signature parameters are checked. Requests failing the check
+     * get a 401 response.
+     * @param validatingSignatures false to accept unsigned requests. Defaults to true.
+     */
+    public void setValidatingSignatures(boolean validatingSignatures) { this.validatingSignatures = validatingSignatures; }
+
+    /**
+     * Sets the time every request takes
+     * @param millis The minimum latency in milliseconds. Defaults to 0.
+     * @param jitterMillis The maximum latency added at random to it, in milliseconds. Defaults to 0.
+     */
+    public void setLatency(long millis, long jitterMillis) {
+        this.latencyMillis = millis;
+        this.latencyJitterMillis = jitterMillis;
+    }
+
+    /**
+     * Sets the share of requests failing with a server error
+     * @param rate The probability (between 0 and 1) of a request failing. Defaults to 0.
+     * @param statusCode The status code of the failures (i.e. 500 or 503)
+     */
+    public void setErrorRate(double rate, int statusCode) {
+        this.errorRate = rate;
+        this.errorStatusCode = statusCode;
+    }
+
+    /**
+     * Sets the share of requests answered with 429 Too Many Requests, whatever the request rate
+     * @param rate The probability (between 0 and 1) of a request being throttled. Defaults to 0.
+     */
+    public void setThrottleRate(double rate) { this.throttleRate = rate; }
+
+    /**
+     * Sets the request rate above which requests are answered with 429 Too Many Requests, like the API's
+     * rate limit. Bursts of up to a second of requests are accepted.
+     * @param maxRequestsPerSecond The maximum rate, or 0 for no limit. Defaults to 0.
+     */
+    public synchronized void setMaxRequestsPerSecond(double maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.tokens = Math.max(maxRequestsPerSecond, 1);
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Sets the Retry-After header of the 429 responses
+     * @param seconds The number of seconds, or 0 to leave the header out. Defaults to 1.
+     */
+    public void setRetryAfter(int seconds) { this.retryAfterSeconds = seconds; }
+
+    /**
+     * Sets whether responses of at least 1KB are gzipped, for the clients sending Accept-Encoding: gzip
+     * @param compressingResponses false to always send uncompressed responses. Defaults to true.
+     */
+    public void setCompressingResponses(boolean compressingResponses) { this.compressingResponses = compressingResponses; }
+
+    /**
+     * Starts recording the traffic to a file, one JSON object per line with the method, path, parameters
+     * (without the authentication ones) and body of the request, and the status code and body of the response.
+     * Injected errors and 429s are not recorded.
+     * @param file The file, appended to
+     * @throws IOException if the file can not be opened
+     */
+    public synchronized void record(Path file) throws IOException {
+        stopRecording();
+        recording = Files.newBufferedWriter(file, UTF8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Stops recording the traffic and closes the file
+     * @throws IOException if the file can not be closed, or if an exchange could not be written to it, which
+     * stopped the recording then
+     */
+    public synchronized void stopRecording() throws IOException {
+        IOException failure = recordingFailure;
+        recordingFailure = null;
+        try {
+            if (recording != null)
+                recording.close();
+        } finally {
+            recording = null;
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Replays the traffic recorded in a file: requests matching a recorded one (same method, path, parameters
+     * and body, whatever the authentication parameters) get the recorded response instead of one from the
+     * in-memory resources. A request recorded several times gets the recorded responses in order, then the
+     * last one again.
+     * @param file The file written by record(Path)
+     * @throws IOException if the file can not be read or is not a recording
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void replay(Path file) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(file, UTF8);
+        try {
+            JSONParser parser = new JSONParser();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty())
+                    continue;
+                Map<String, Object> exchange = (Map<String, Object>)parser.parse(line);
+                String key = replayKey((String)exchange.get("method"), (String)exchange.get("path"),
+                        (Map<String, String>)exchange.get("parameters"), (String)exchange.get("body"));
+                Deque<StandInStore.Reply> replies = replayed.get(key);
+                if (replies == null)
+                    replayed.put(key, replies = new ArrayDeque<StandInStore.Reply>());
+                replies.add(new StandInStore.Reply(((Number)exchange.get("status")).intValue(), (String)exchange.get("response")));
+            }
+        } catch (ParseException e) {
+            throw new IOException("Invalid recording " + file + ": " + e, e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Creates an asset
+     * @param properties The properties of the asset (i.e. name and duration)
+     * @return the embed code of the asset
+     */
+    public String createAsset(Map<String, Object> properties) { return (String)store.createAsset(properties).get("embed_code"); }
+
+    /**
+     * Creates a label
+     * @param name The name of the label
+     * @return the id of the label
+     */
+    public String createLabel(String name) { return (String)store.createLabel(name).get("id"); }
+
+    /**
+     * Adds a label to an asset
+     * @param embedCode The embed code of the asset
+     * @param labelId The id of the label
+     * @return false if the asset or the label does not exist
+     */
+    public boolean label(String embedCode, String labelId) { return store.label(embedCode, labelId); }
+
+    /**
+     * Gets an asset
+     * @param embedCode The embed code of the asset
+     * @return a copy of the asset, or null if it does not exist
+     */
+    public Map<String, Object> getAsset(String embedCode) { return store.getAsset(embedCode); }
+
+    /**
+     * Gets the number of assets
+     * @return the number of assets
+     */
+    public int getAssetCount() { return store.getAssetCount(); }
+
+    /**
+     * Gets the number of labels
+     * @return the number of labels
+     */
+    public int getLabelCount() { return store.getLabelCount(); }
+
+    /**
+     * Gets the number of bytes uploaded to the uploading URLs of an asset
+     * @param embedCode The embed code of the asset
+     * @return the number of bytes
+     */
+    public long getUploadedBytes(String embedCode) { return store.getUploadedBytes(embedCode); }
+
+    /**
+     * Gets the number of requests received
+     * @return the number of requests
+     */
+    public long getRequestCount() { return requests.get(); }
+
+    /**
+     * Gets the number of requests answered with 401 because of a missing or wrong api_key, expires or signature
+     * @return the number of unauthorized requests
+     */
+    public long getUnauthorizedCount() { return unauthorized.get(); }
+
+    /**
+     * Gets the number of requests answered with 429, injected or above the maximum request rate
+     * @return the number of throttled requests
+     */
+    public long getThrottledCount() { return throttled.get(); }
+
+    /**
+     * Gets the number of requests answered with an injected error
+     * @return the number of failed requests
+     */
+    public long getFailedCount() { return failed.get(); }
+
+    /**
+     * Accepts connections until the server is closed
+     */
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                connections.execute(new Runnable() {
+                    public void run() { serve(socket); }
+                });
+            } catch (IOException e) {
+                /* closed */
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of a connection until the client closes it
+     * @param socket The connection
+     */
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 16384);
+            OutputStream out = socket.getOutputStream();
+            StringBuilder line = new StringBuilder(256);
+            boolean keepAlive = true;
+            while (keepAlive) {
+                String requestLine = readLine(in, line);
+                if (requestLine == null || requestLine.isEmpty())
+                    return;
+                String[] parts = requestLine.split(" ");
+                if (parts.length < 2)
+                    return;
+                Map<String, String> headers = new HashMap<String, String>();
+                String header;
+                while ((header = readLine(in, line)) != null && !header.isEmpty()) {
+                    int colon = header.indexOf(':');
+                    if (colon > 0)
+                        headers.put(header.substring(0, colon).trim().toLowerCase(), header.substring(colon + 1).trim());
+                }
+                if ("100-continue".equalsIgnoreCase(headers.get("expect"))) {
+                    out.write("HTTP/1.1 100 Continue\r\n\r\n".getBytes(ASCII));
+                    out.flush();
+                }
+                byte[] body = readBody(in, headers);
+                if (body == null)
+                    return;
+                keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+
+                out.write(serialize(respond(parts[0].toUpperCase(), parts[1], headers, body), keepAlive));
+                out.flush();
+            }
+        } catch (SocketException e) {
+            /* the client closed the connection */
+        } catch (IOException e) {
+            /* the connection broke */
+        } finally {
+            sockets.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Reads the body of a request, sent with a Content-Length or chunked
+     * @param in The request stream
+     * @param headers The request headers, with lower case names
+     * @return the body, or null if the client closed the connection
+     * @throws IOException if the body can not be read
+     */
+    private static byte[] readBody(InputStream in, Map<String, String> headers) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            StringBuilder line = new StringBuilder(16);
+            while (true) {
+                String size = readLine(in, line);
+                if (size == null)
+                    return null;
+                int semicolon = size.indexOf(';');
+                long length = Long.parseLong((semicolon >= 0 ? size.substring(0, semicolon) : size).trim(), 16);
+                if (length == 0) {
+                    String trailer;
+                    while ((trailer = readLine(in, line)) != null && !trailer.isEmpty()) {
+                        /* skip the trailers */
+                    }
+                    return body.toByteArray();
+                }
+                if (!copy(in, body, length) || readLine(in, line) == null)
+                    return null;
+            }
+        }
+        String contentLength = headers.get("content-length");
+        if (contentLength != null && !copy(in, body, Long.parseLong(contentLength)))
+            return null;
+        return body.toByteArray();
+    }
+
+    /**
+     * Copies bytes of the request stream
+     * @return false if the stream ended before
+     */
+    private static boolean copy(InputStream in, ByteArrayOutputStream out, long length) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (length > 0) {
+            int read = in.read(buffer, 0, (int)Math.min(buffer.length, length));
+            if (read < 0)
+                return false;
+            out.write(buffer, 0, read);
+            length -= read;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a line of the request
+     * @param in The request stream
+     * @param line The builder holding the line
+     * @return the line without its CRLF, or null at the end of the stream
+     * @throws IOException if the request can not be read
+     */
+    private static String readLine(InputStream in, StringBuilder line) throws IOException {
+        line.setLength(0);
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r')
+                    line.setLength(length - 1);
+                return line.toString();
+            }
+            line.append((char)c);
+        }
+        return null;
+    }
+
+    /**
+     * Handles a request
+     * @param HTTPMethod The HTTP method (verb), in upper case
+     * @param target The request target (i.e. "/v2/assets?api_key=...")
+     * @param headers The request headers, with lower case names
+     * @param body The request body, as sent
+     * @return the reply
+     * @throws InterruptedIOException if the server is closed while the request waits for its latency
+     */
+    private StandInStore.Reply handle(String HTTPMethod, String target, Map<String, String> headers, byte[] body) throws InterruptedIOException {
+        requests.incrementAndGet();
+        String contentEncoding = headers.get("content-encoding");
+        try {
+            body = decompress(body, contentEncoding);
+        } catch (IOException e) {
+            return StandInStore.Reply.error(400, "Invalid " + contentEncoding + " body: " + e);
+        }
+        int queryStart = target.indexOf('?');
+        String path = (queryStart >= 0) ? target.substring(0, queryStart) : target;
+        String query = (queryStart >= 0) ? target.substring(queryStart + 1) : "";
+
+        /* chunks sent to the uploading URLs, which are not signed */
+        if (path.startsWith("/upload/") && (HTTPMethod.equals("PUT") || HTTPMethod.equals("POST"))) {
+            String[] segments = path.split("/");
+            if (segments.length < 3 || !store.upload(segments[2], body.length))
+                return StandInStore.Reply.error(404, "Unknown uploading URL " + path);
+            return new StandInStore.Reply(200, "");
+        }
+        if (!path.startsWith("/v2/"))
+            return StandInStore.Reply.error(404, "Unknown resource " + path);
+        String requestPath = path.substring(4);
+
+        Map<String, String> parameters = new TreeMap<String, String>();
+        String signature = null;
+        try {
+            for (String pair : query.split("&")) {
+                if (pair.isEmpty())
+                    continue;
+                int equals = pair.indexOf('=');
+                String key = URLDecoder.decode((equals >= 0) ? pair.substring(0, equals) : pair, "UTF-8");
+                String value = (equals >= 0) ? pair.substring(equals + 1) : "";
+                if (key.equals("signature"))
+                    signature = value;
+                else
+                    parameters.put(key, URLDecoder.decode(value, "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        } catch (IllegalArgumentException e) {
+            return StandInStore.Reply.error(400, "Invalid query string");
+        }
+
+        if (validatingSignatures) {
+            String error = authenticate(HTTPMethod, requestPath, parameters, signature, body);
+            if (error != null) {
+                unauthorized.incrementAndGet();
+                return StandInStore.Reply.error(401, error);
+            }
+        }
+
+        long latency = latencyMillis + (latencyJitterMillis > 0 ? (long)(ThreadLocalRandom.current().nextDouble() * latencyJitterMillis) : 0);
+        if (latency > 0)
+            RateLimiter.sleep(latency);
+        if (isThrottled()) {
+            throttled.incrementAndGet();
+            return StandInStore.Reply.error(429, "Too many requests");
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            failed.incrementAndGet();
+            return StandInStore.Reply.error(errorStatusCode, "Injected error");
+        }
+
+        Map<String, String> resourceParameters = new TreeMap<String, String>(parameters);
+        resourceParameters.remove("api_key");
+        resourceParameters.remove("expires");
+        String bodyString = new String(body, charset(headers.get("content-type")));
+        String key = replayKey(HTTPMethod, requestPath, resourceParameters, bodyString);
+        StandInStore.Reply reply = replayed(key);
+        if (reply == null) {
+            Object json = null;
+            if (!bodyString.trim().isEmpty()) {
+                try {
+                    json = new JSONParser().parse(bodyString);
+                } catch (ParseException e) {
+                    return StandInStore.Reply.error(400, "Invalid JSON body: " + e);
+                }
+            }
+            reply = store.handle(HTTPMethod, requestPath, resourceParameters, json, "http://127.0.0.1:" + serverSocket.getLocalPort() + "/");
+        }
+        record(HTTPMethod, requestPath, resourceParameters, bodyString, reply);
+        return reply;
+    }
+
+    /**
+     * Decompresses a request body
+     * @param body The body, as sent
+     * @param contentEncoding The Content-Encoding header, or null
+     * @return the decompressed body
+     * @throws IOException if the body is not compressed as announced
+     */
+    private static byte[] decompress(byte[] body, String contentEncoding) throws IOException {
+        if (contentEncoding == null || contentEncoding.equalsIgnoreCase("identity"))
+            return body;
+        InputStream in;
+        if (contentEncoding.equalsIgnoreCase("gzip") || contentEncoding.equalsIgnoreCase("x-gzip"))
+            in = new GZIPInputStream(new ByteArrayInputStream(body));
+        else if (contentEncoding.equalsIgnoreCase("deflate"))
+            in = new InflaterInputStream(new ByteArrayInputStream(body));
+        else
+            throw new IOException("Unsupported Content-Encoding");
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream(body.length * 4);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0)
+            decompressed.write(buffer, 0, read);
+        return decompressed.toByteArray();
+    }
+
+    /**
+     * Checks the api_key, expires and signature parameters of a request. The signature is computed over
+     * the raw body, as the client signs byte[] and FileChannel bodies. String bodies are signed as encoded
+     * with the default charset but sent as ISO-8859-1, so a body with non ASCII characters is also checked
+     * against the signature of its decoded string.
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path, without /v2/
+     * @param parameters The query parameters, without the signature
+     * @param signature The URI encoded signature, or null
+     * @param body The request body
+     * @return why the request is not authorized, or null if it is
+     */
+    private String authenticate(String HTTPMethod, String requestPath, Map<String, String> parameters, String signature, byte[] body) {
+        String apiKey = parameters.get("api_key");
+        String expires = parameters.get("expires");
+        if (apiKey == null || expires == null || signature == null)
+            return "The api_key, expires and signature parameters are required";
+        String secretKey = accounts.get(apiKey);
+        if (secretKey == null)
+            return "Unknown api_key " + apiKey;
+        try {
+            if (Long.parseLong(expires) < System.currentTimeMillis() / 1000)
+                return "The request expired at " + expires;
+        } catch (NumberFormatException e) {
+            return "Invalid expires " + expires;
+        }
+
+        RequestSigner signer = RequestSigner.get();
+        StringBuilder stringToSign = signer.builder().append(secretKey).append(HTTPMethod).append("/v2/").append(requestPath);
+        for (Map.Entry<String, String> parameter : parameters.entrySet())
+            stringToSign.append(parameter.getKey()).append('=').append(parameter.getValue());
+        int signedLength = stringToSign.length();
+        MessageDigest digest = signer.digest(stringToSign);
+        digest.update(body);
+        if (RequestSigner.sign(digest).equals(signature))
+            return null;
+        for (byte b : body) {
+            if (b < 0) {
+                stringToSign.setLength(signedLength);
+                stringToSign.append(new String(body, ISO_8859_1));
+                if (signer.sign(stringToSign).equals(signature))
+                    return null;
+                break;
+            }
+        }
+        return "Invalid signature";
+    }
+
+    /**
+     * Indicates if a request is throttled, at random or because it exceeds the maximum request rate
+     * @return true if it is answered with 429
+     */
+    private boolean isThrottled() {
+        if (throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate)
+            return true;
+        synchronized (this) {
+            if (maxRequestsPerSecond <= 0)
+                return false;
+            long now = System.nanoTime();
+            tokens = Math.min(tokens + (now - refilledAt) * maxRequestsPerSecond / 1e9, Math.max(maxRequestsPerSecond, 1));
+            refilledAt = now;
+            if (tokens < 1)
+                return true;
+            tokens--;
+            return false;
+        }
+    }
+
+    /**
+     * Gets the key matching a request to its replayed responses
+     * @return the key
+     */
+    private static String replayKey(String HTTPMethod, String requestPath, Map<String, String> parameters, String body) {
+        StringBuilder key = new StringBuilder(HTTPMethod).append(' ').append(requestPath).append('?');
+        if (parameters != null) {
+            for (Map.Entry<String, String> parameter : new TreeMap<String, String>(parameters).entrySet())
+                key.append(parameter.getKey()).append('=').append(parameter.getValue()).append('&');
+        }
+        return key.append('\n').append(body != null ? body : "").toString();
+    }
+
+    /**
+     * Gets the next replayed response to a request
+     * @param key The key of the request
+     * @return the response, or null if the request was not recorded
+     */
+    private synchronized StandInStore.Reply replayed(String key) {
+        Deque<StandInStore.Reply> replies = replayed.get(key);
+        if (replies == null)
+            return null;
+        return (replies.size() > 1) ? replies.poll() : replies.peek();
+    }
+
+    /**
+     * Records an exchange, if the traffic is recorded
+     */
+    private synchronized void record(String HTTPMethod, String requestPath, Map<String, String> parameters, String body, StandInStore.Reply reply) {
+        if (recording == null)
+            return;
+        Map<String, Object> exchange = new LinkedHashMap<String, Object>();
+        exchange.put("method", HTTPMethod);
+        exchange.put("path", requestPath);
+        exchange.put("parameters", parameters);
+        exchange.put("body", body);
+        exchange.put("status", reply.statusCode);
+        exchange.put("response", reply.body);
+        try {
+            recording.write(JSONValue.toJSONString(exchange));
+            recording.newLine();
+            recording.flush();
+        } catch (IOException e) {
+            /* the recording stops at the first exchange missing from it, and stopRecording() throws the failure */
+            recordingFailure = e;
+            try {
+                recording.close();
+            } catch (IOException ignored) {
+            }
+            recording = null;
+        }
+    }
+
+    /**
+     * Gets the charset of a request body
+     * @param contentType The Content-Type header, or null
+     * @return its charset, or ISO-8859-1 (the default of HTTP and of StringEntity)
+     */
+    private static Charset charset(String contentType) {
+        if (contentType != null) {
+            int index = contentType.toLowerCase().indexOf("charset=");
+            if (index >= 0) {
+                try {
+                    return Charset.forName(contentType.substring(index + 8).replace("\"", "").trim());
+                } catch (IllegalArgumentException e) {
+                    /* unknown charset */
+                }
+            }
+        }
+        return ISO_8859_1;
+    }
+
+    /**
+     * A response, before it is written to a connection
+     */
+    static class Response {
+        final int statusCode;
+
+        /**
+         * The headers other than Content-Length and Connection
+         */
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+        /**
+         * The body, as sent (i.e. gzipped)
+         */
+        byte[] body;
+
+        Response(int statusCode, byte[] body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Answers a request, without any connection. Used by the connections of the server and by InProcessTransport.
+     * GET responses carry an ETag, and a request with a matching If-None-Match header gets a 304. Large bodies
+     * are gzipped if the client accepts it.
+     * @param HTTPMethod The HTTP method (verb), in upper case
+     * @param target The request target (i.e. "/v2/assets?api_key=...")
+     * @param headers The request headers, with lower case names
+     * @param body The request body, as sent
+     * @return the response
+     * @throws InterruptedIOException if the server is closed while the request waits for its latency
+     */
+    Response respond(String HTTPMethod, String target, Map<String, String> headers, byte[] body) throws InterruptedIOException {
+        StandInStore.Reply reply = handle(HTTPMethod, target, headers, body);
+        Response response = new Response(reply.statusCode, reply.body.getBytes(UTF8));
+        if (reply.statusCode == 200 && HTTPMethod.equals("GET")) {
+            String eTag = "\"" + Integer.toHexString(reply.body.hashCode()) + Integer.toHexString(response.body.length) + "\"";
+            if (eTag.equals(headers.get("if-none-match")))
+                response = new Response(304, new byte[0]);
+            response.headers.put("ETag", eTag);
+        }
+        if (response.statusCode == 429 && retryAfterSeconds > 0)
+            response.headers.put("Retry-After", Integer.toString(retryAfterSeconds));
+        String acceptEncoding = headers.get("accept-encoding");
+        if (compressingResponses && response.body.length >= COMPRESSION_THRESHOLD && acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip")) {
+            response.body = gzip(response.body);
+            response.headers.put("Content-Encoding", "gzip");
+        }
+        if (response.statusCode != 304)
+            response.headers.put("Content-Type", "application/json; charset=UTF-8");
+        return response;
+    }
+
+    /**
+     * Builds the bytes of a full response (status line, headers and body)
+     * @param response The response
+     * @param keepAlive false to close the connection after the response
+     * @return the bytes of the response
+     */
+    private static byte[] serialize(Response response, boolean keepAlive) {
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(response.statusCode).append(' ').append(reason(response.statusCode)).append("\r\n");
+        for (Map.Entry<String, String> header : response.headers.entrySet())
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        if (!keepAlive)
+            head.append("Connection: close\r\n");
+        if (response.statusCode != 304)
+            head.append("Content-Length: ").append(response.body.length).append("\r\n");
+        head.append("\r\n");
+
+        byte[] headBytes = head.toString().getBytes(ASCII);
+        byte[] bytes = new byte[headBytes.length + response.body.length];
+        System.arraycopy(headBytes, 0, bytes, 0, headBytes.length);
+        System.arraycopy(response.body, 0, bytes, headBytes.length, response.body.length);
+        return bytes;
+    }
+
+    /**
+     * Gzips a response body
+     * @param body The body
+     * @return the compressed body
+     */
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+        try {
+            GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+            gzip.write(body);
+            gzip.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Gets the reason phrase of a status code
+     * @param statusCode The status code
+     * @return the reason phrase
+     */
+    private static String reason(int statusCode) {
+        switch (statusCode) {
+            case 200: return "OK";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 429: return "Too Many Requests";
+            case 500: return "Internal Server Error";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            default: return "Status";
+        }
+    }
+
+    /**
+     * Stops the server, closes its connections and stops recording
+     */
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets)
+            socket.close();
+        connections.shutdownNow();
+        stopRecording();
+    }
+}
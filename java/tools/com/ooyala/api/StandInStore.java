@@ -0,0 +1,567 @@
+package com.ooyala.api;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.simple.JSONValue;
+
+/**
+ * The in-memory resources of a StandInServer: assets (with their metadata, labels and uploading URLs) and labels.
+ *
+ * Every method is synchronized; the store is small and requests are short, so a single lock keeps the
+ * resources consistent without costing much throughput.
+ */
+class StandInStore {
+
+    /**
+     * Default and maximum number of items of a page
+     */
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 500;
+
+    /**
+     * The response to a request, before it is written
+     */
+    static class Reply {
+        final int statusCode;
+        final String body;
+
+        Reply(int statusCode, String body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        /**
+         * Builds an error reply
+         * @param statusCode The HTTP status code
+         * @param message The message of the error
+         * @return the reply
+         */
+        static Reply error(int statusCode, String message) {
+            Map<String, Object> error = new HashMap<String, Object>();
+            error.put("message", message);
+            return new Reply(statusCode, JSONValue.toJSONString(error));
+        }
+
+        static Reply ok(Object json) { return new Reply(200, json != null ? JSONValue.toJSONString(json) : ""); }
+    }
+
+    private final Map<String, Map<String, Object>> assets = new LinkedHashMap<String, Map<String, Object>>();
+    private final Map<String, Map<String, Object>> metadata = new HashMap<String, Map<String, Object>>();
+    private final Map<String, Set<String>> assetLabels = new HashMap<String, Set<String>>();
+    private final Map<String, Map<String, Object>> labels = new LinkedHashMap<String, Map<String, Object>>();
+    private final Map<String, Long> uploadedBytes = new HashMap<String, Long>();
+
+    /**
+     * Formats the created_at and updated_at dates
+     */
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'+00:00'");
+
+    StandInStore() {
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Generates the identifier of a new resource, like the 32 characters embed codes of the API
+     * @return the identifier
+     */
+    private String newId() {
+        char[] id = new char[32];
+        String characters = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        for (int i = 0; i < id.length; i++)
+            id[i] = characters.charAt(ThreadLocalRandom.current().nextInt(characters.length()));
+        return new String(id);
+    }
+
+    /**
+     * Creates an asset
+     * @param properties The properties of the asset (i.e. name, asset_type, file_size and chunk_size)
+     * @return the asset, with its embed_code
+     */
+    synchronized Map<String, Object> createAsset(Map<String, Object> properties) {
+        String now = dateFormat.format(new Date());
+        Map<String, Object> asset = new LinkedHashMap<String, Object>();
+        asset.put("embed_code", newId());
+        asset.put("name", "");
+        asset.put("description", "");
+        asset.put("asset_type", "video");
+        asset.put("status", "live");
+        asset.put("duration", 0L);
+        if (properties != null)
+            asset.putAll(properties);
+        if (asset.get("file_size") != null)
+            asset.put("status", "uploading");
+        asset.put("created_at", now);
+        asset.put("updated_at", now);
+        assets.put((String)asset.get("embed_code"), asset);
+        return asset;
+    }
+
+    /**
+     * Creates a label
+     * @param name The name of the label
+     * @return the label, with its id
+     */
+    synchronized Map<String, Object> createLabel(String name) {
+        Map<String, Object> label = new LinkedHashMap<String, Object>();
+        label.put("id", newId());
+        label.put("name", name);
+        label.put("full_name", "/" + name);
+        label.put("parent_id", null);
+        labels.put((String)label.get("id"), label);
+        return label;
+    }
+
+    /**
+     * Adds a label to an asset
+     * @param embedCode The embed code of the asset
+     * @param labelId The id of the label
+     * @return false if the asset or the label does not exist
+     */
+    synchronized boolean label(String embedCode, String labelId) {
+        if (!assets.containsKey(embedCode) || !labels.containsKey(labelId))
+            return false;
+        Set<String> ids = assetLabels.get(embedCode);
+        if (ids == null)
+            assetLabels.put(embedCode, ids = new LinkedHashSet<String>());
+        if (ids.add(labelId))
+            touch(embedCode);
+        return true;
+    }
+
+    synchronized int getAssetCount() { return assets.size(); }
+    synchronized int getLabelCount() { return labels.size(); }
+
+    /**
+     * Gets a copy of an asset
+     * @param embedCode The embed code of the asset
+     * @return the asset, or null if it does not exist
+     */
+    synchronized Map<String, Object> getAsset(String embedCode) {
+        Map<String, Object> asset = assets.get(embedCode);
+        return (asset != null) ? new LinkedHashMap<String, Object>(asset) : null;
+    }
+
+    /**
+     * Handles a request to the API
+     * @param HTTPMethod The HTTP method (verb)
+     * @param requestPath The request path, without /v2/ (i.e. "assets/abc/labels")
+     * @param parameters The query parameters, without the authentication ones
+     * @param body The parsed JSON body, or null
+     * @param rootURL The URL of the root of the server (i.e. "http://127.0.0.1:8080/"), for the uploading URLs
+     * @return the reply
+     */
+    @SuppressWarnings("unchecked")
+    synchronized Reply handle(String HTTPMethod, String requestPath, Map<String, String> parameters, Object body, String rootURL) {
+        String[] segments = requestPath.split("/");
+        String collection = segments[0];
+        String id = (segments.length > 1) ? segments[1] : null;
+        String relation = (segments.length > 2) ? segments[2] : null;
+        Map<String, Object> properties = (body instanceof Map) ? (Map<String, Object>)body : null;
+
+        if (collection.equals("assets")) {
+            if (id == null) {
+                if (HTTPMethod.equals("GET"))
+                    return listAssets(parameters);
+                if (HTTPMethod.equals("POST"))
+                    return Reply.ok(createAsset(properties));
+                return methodNotAllowed(HTTPMethod, requestPath);
+            }
+            Map<String, Object> asset = assets.get(id);
+            if (asset == null)
+                return Reply.error(404, "Asset " + id + " not found");
+            if (relation == null)
+                return asset(HTTPMethod, requestPath, asset, properties);
+            if (relation.equals("metadata") && segments.length == 3)
+                return metadata(HTTPMethod, requestPath, id, properties);
+            if (relation.equals("labels"))
+                return assetLabels(HTTPMethod, requestPath, id, (segments.length > 3) ? segments[3] : null, body);
+            if (relation.equals("uploading_urls") && HTTPMethod.equals("GET"))
+                return uploadingURLs(asset, rootURL);
+            if (relation.equals("upload_status") && HTTPMethod.equals("PUT")) {
+                asset.put("status", "live");
+                return Reply.ok(asset);
+            }
+        } else if (collection.equals("labels")) {
+            if (id == null) {
+                if (HTTPMethod.equals("GET"))
+                    return page("labels", new ArrayList<Object>(labels.values()), parameters);
+                if (HTTPMethod.equals("POST"))
+                    return Reply.ok(createLabel(properties != null ? (String)properties.get("name") : ""));
+                return methodNotAllowed(HTTPMethod, requestPath);
+            }
+            Map<String, Object> label = labels.get(id);
+            if (label == null)
+                return Reply.error(404, "Label " + id + " not found");
+            if (relation == null)
+                return label(HTTPMethod, requestPath, id, label, properties);
+            if (relation.equals("assets") && HTTPMethod.equals("GET")) {
+                List<Object> labeled = new ArrayList<Object>();
+                for (Map.Entry<String, Set<String>> entry : assetLabels.entrySet()) {
+                    if (entry.getValue().contains(id))
+                        labeled.add(assets.get(entry.getKey()));
+                }
+                return page("labels/" + id + "/assets", labeled, parameters);
+            }
+        }
+        return Reply.error(404, "Unknown resource " + requestPath);
+    }
+
+    private static Reply methodNotAllowed(String HTTPMethod, String requestPath) {
+        return Reply.error(405, HTTPMethod + " is not supported on " + requestPath);
+    }
+
+    /**
+     * Handles a request to an asset
+     */
+    private Reply asset(String HTTPMethod, String requestPath, Map<String, Object> asset, Map<String, Object> properties) {
+        String embedCode = (String)asset.get("embed_code");
+        if (HTTPMethod.equals("GET"))
+            return Reply.ok(asset);
+        if (HTTPMethod.equals("PATCH") || HTTPMethod.equals("PUT")) {
+            if (properties == null)
+                return Reply.error(400, "The body must be a JSON object");
+            if (HTTPMethod.equals("PUT")) {
+                Map<String, Object> kept = new LinkedHashMap<String, Object>();
+                for (String key : new String[] { "embed_code", "status", "created_at" })
+                    kept.put(key, asset.get(key));
+                asset.clear();
+                asset.putAll(kept);
+            }
+            asset.putAll(properties);
+            asset.put("embed_code", embedCode);
+            asset.put("updated_at", dateFormat.format(new Date()));
+            return Reply.ok(asset);
+        }
+        if (HTTPMethod.equals("DELETE")) {
+            assets.remove(embedCode);
+            metadata.remove(embedCode);
+            assetLabels.remove(embedCode);
+            uploadedBytes.remove(embedCode);
+            return Reply.ok(null);
+        }
+        return methodNotAllowed(HTTPMethod, requestPath);
+    }
+
+    /**
+     * Handles a request to the metadata of an asset
+     */
+    private Reply metadata(String HTTPMethod, String requestPath, String embedCode, Map<String, Object> properties) {
+        Map<String, Object> values = metadata.get(embedCode);
+        if (values == null)
+            metadata.put(embedCode, values = new LinkedHashMap<String, Object>());
+        if (HTTPMethod.equals("GET"))
+            return Reply.ok(values);
+        if (HTTPMethod.equals("PATCH") || HTTPMethod.equals("PUT")) {
+            if (properties == null)
+                return Reply.error(400, "The body must be a JSON object");
+            if (HTTPMethod.equals("PUT"))
+                values.clear();
+            values.putAll(properties);
+            touch(embedCode);
+            return Reply.ok(values);
+        }
+        if (HTTPMethod.equals("DELETE")) {
+            values.clear();
+            touch(embedCode);
+            return Reply.ok(null);
+        }
+        return methodNotAllowed(HTTPMethod, requestPath);
+    }
+
+    /**
+     * Handles a request to the labels of an asset
+     */
+    private Reply assetLabels(String HTTPMethod, String requestPath, String embedCode, String labelId, Object body) {
+        if (labelId == null && HTTPMethod.equals("POST") && body instanceof List) {
+            for (Object id : (List<?>)body) {
+                if (!label(embedCode, String.valueOf(id)))
+                    return Reply.error(404, "Label " + id + " not found");
+            }
+        } else if (labelId != null && HTTPMethod.equals("PUT")) {
+            if (!label(embedCode, labelId))
+                return Reply.error(404, "Label " + labelId + " not found");
+        } else if (labelId != null && HTTPMethod.equals("DELETE")) {
+            Set<String> ids = assetLabels.get(embedCode);
+            if (ids == null || !ids.remove(labelId))
+                return Reply.error(404, "Label " + labelId + " not found");
+            touch(embedCode);
+            return Reply.ok(null);
+        } else if (labelId != null || !HTTPMethod.equals("GET")) {
+            return methodNotAllowed(HTTPMethod, requestPath);
+        }
+        List<Object> items = new ArrayList<Object>();
+        Set<String> ids = assetLabels.get(embedCode);
+        if (ids != null) {
+            for (String id : ids)
+                items.add(labels.get(id));
+        }
+        Map<String, Object> page = new LinkedHashMap<String, Object>();
+        page.put("items", items);
+        return Reply.ok(page);
+    }
+
+    /**
+     * Handles a request to a label
+     */
+    private Reply label(String HTTPMethod, String requestPath, String id, Map<String, Object> label, Map<String, Object> properties) {
+        if (HTTPMethod.equals("GET"))
+            return Reply.ok(label);
+        if (HTTPMethod.equals("PATCH")) {
+            if (properties == null)
+                return Reply.error(400, "The body must be a JSON object");
+            label.putAll(properties);
+            label.put("id", id);
+            label.put("full_name", "/" + label.get("name"));
+            touchLabeled(id);
+            return Reply.ok(label);
+        }
+        if (HTTPMethod.equals("DELETE")) {
+            touchLabeled(id);
+            labels.remove(id);
+            for (Set<String> ids : assetLabels.values())
+                ids.remove(id);
+            return Reply.ok(null);
+        }
+        return methodNotAllowed(HTTPMethod, requestPath);
+    }
+
+    /**
+     * Sets the updated_at date of an asset to now, after a change of its metadata or labels, so that the
+     * change is listed by a where=updated_at>... query like a change of the asset itself
+     */
+    private void touch(String embedCode) {
+        Map<String, Object> asset = assets.get(embedCode);
+        if (asset != null)
+            asset.put("updated_at", dateFormat.format(new Date()));
+    }
+
+    /**
+     * Sets the updated_at date of the assets with a label to now
+     */
+    private void touchLabeled(String labelId) {
+        for (Map.Entry<String, Set<String>> entry : assetLabels.entrySet()) {
+            if (entry.getValue().contains(labelId))
+                touch(entry.getKey());
+        }
+    }
+
+    /**
+     * Lists the assets, filtered by the where parameter and with the labels and metadata asked by the include parameter
+     */
+    private Reply listAssets(Map<String, String> parameters) {
+        List<String[]> conditions;
+        try {
+            conditions = parseWhere(parameters.get("where"));
+        } catch (IllegalArgumentException e) {
+            return Reply.error(400, e.getMessage());
+        }
+        String include = parameters.get("include");
+        boolean includeLabels = include != null && include.contains("labels");
+        boolean includeMetadata = include != null && include.contains("metadata");
+        List<Object> items = new ArrayList<Object>();
+        for (Map<String, Object> asset : assets.values()) {
+            String embedCode = (String)asset.get("embed_code");
+            if (!matches(asset, labelNames(embedCode), conditions))
+                continue;
+            if (!includeLabels && !includeMetadata) {
+                items.add(asset);
+                continue;
+            }
+            Map<String, Object> item = new LinkedHashMap<String, Object>(asset);
+            if (includeLabels) {
+                List<Object> assetLabelList = new ArrayList<Object>();
+                Set<String> ids = assetLabels.get(embedCode);
+                if (ids != null) {
+                    for (String id : ids)
+                        assetLabelList.add(labels.get(id));
+                }
+                item.put("labels", assetLabelList);
+            }
+            if (includeMetadata) {
+                Map<String, Object> values = metadata.get(embedCode);
+                item.put("metadata", (values != null) ? values : new LinkedHashMap<String, Object>());
+            }
+            items.add(item);
+        }
+        return page("assets", items, parameters);
+    }
+
+    /**
+     * Gets the names of the labels of an asset
+     */
+    private Set<String> labelNames(String embedCode) {
+        Set<String> names = new LinkedHashSet<String>();
+        Set<String> ids = assetLabels.get(embedCode);
+        if (ids != null) {
+            for (String id : ids)
+                names.add((String)labels.get(id).get("name"));
+        }
+        return names;
+    }
+
+    /**
+     * Parses a where clause: conditions joined by AND, each one either a comparison of a field with a quoted string or a
+     * number (i.e. updated_at>='2012-01-26T18:21:00+00:00' or duration > 60000) or labels INCLUDES 'name'
+     * @param where The where clause, or null
+     * @return the conditions, as [field, operator, value]
+     * @throws IllegalArgumentException if the clause is not supported
+     */
+    static List<String[]> parseWhere(String where) {
+        List<String[]> conditions = new ArrayList<String[]>();
+        if (where == null || where.trim().isEmpty())
+            return conditions;
+        for (String condition : where.trim().split("(?i)\\s+AND\\s+")) {
+            Matcher matcher = CONDITION.matcher(condition.trim());
+            if (!matcher.matches())
+                throw new IllegalArgumentException("Unsupported condition: " + condition);
+            String value = (matcher.group(3) != null) ? matcher.group(3) : matcher.group(4);
+            conditions.add(new String[] { matcher.group(1), matcher.group(2).toUpperCase(), value });
+        }
+        return conditions;
+    }
+
+    /**
+     * A condition of a where clause: a field, an operator and a quoted string or a number
+     */
+    private static final Pattern CONDITION = Pattern.compile("(\\w+)\\s*(>=|<=|!=|=|>|<|(?i:\\s+INCLUDES\\s+))\\s*(?:'([^']*)'|(-?\\d+(?:\\.\\d+)?))");
+
+    /**
+     * Checks if an asset matches the conditions of a where clause
+     */
+    private static boolean matches(Map<String, Object> asset, Set<String> labelNames, List<String[]> conditions) {
+        for (String[] condition : conditions) {
+            String operator = condition[1].trim();
+            if (operator.equals("INCLUDES")) {
+                if (!condition[0].equals("labels") || !labelNames.contains(condition[2]))
+                    return false;
+                continue;
+            }
+            Object value = asset.get(condition[0]);
+            if (value == null)
+                return false;
+            int comparison;
+            if (value instanceof Number) {
+                try {
+                    comparison = Double.compare(((Number)value).doubleValue(), Double.parseDouble(condition[2]));
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            } else {
+                comparison = value.toString().compareTo(condition[2]);
+            }
+            boolean matched;
+            if (operator.equals("="))
+                matched = comparison == 0;
+            else if (operator.equals("!="))
+                matched = comparison != 0;
+            else if (operator.equals(">"))
+                matched = comparison > 0;
+            else if (operator.equals(">="))
+                matched = comparison >= 0;
+            else if (operator.equals("<"))
+                matched = comparison < 0;
+            else
+                matched = comparison <= 0;
+            if (!matched)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Lists the URLs the chunks of an asset are uploaded to, one per chunk_size bytes of its file_size
+     */
+    private Reply uploadingURLs(Map<String, Object> asset, String rootURL) {
+        long fileSize = toLong(asset.get("file_size"), 0);
+        long chunkSize = Math.max(toLong(asset.get("chunk_size"), fileSize), 1);
+        List<Object> urls = new ArrayList<Object>();
+        for (long chunk = 0; chunk * chunkSize < fileSize; chunk++)
+            urls.add(rootURL + "upload/" + asset.get("embed_code") + "/" + chunk);
+        return Reply.ok(urls);
+    }
+
+    /**
+     * Records the upload of a chunk
+     * @param embedCode The embed code of the asset
+     * @param bytes The size of the chunk
+     * @return false if the asset does not exist
+     */
+    synchronized boolean upload(String embedCode, long bytes) {
+        if (!assets.containsKey(embedCode))
+            return false;
+        Long uploaded = uploadedBytes.get(embedCode);
+        uploadedBytes.put(embedCode, (uploaded != null ? uploaded : 0) + bytes);
+        return true;
+    }
+
+    /**
+     * Gets the number of bytes uploaded to an asset
+     * @param embedCode The embed code of the asset
+     * @return the number of bytes
+     */
+    synchronized long getUploadedBytes(String embedCode) {
+        Long uploaded = uploadedBytes.get(embedCode);
+        return (uploaded != null) ? uploaded : 0;
+    }
+
+    /**
+     * Builds a page of a list, with the next_page link of the API. The page_token is the index of the first item.
+     * @param requestPath The path of the list
+     * @param items All the items of the list
+     * @param parameters The query parameters (limit and page_token)
+     * @return the page
+     */
+    private static Reply page(String requestPath, List<Object> items, Map<String, String> parameters) {
+        long limit = Math.min(Math.max(toLong(parameters.get("limit"), DEFAULT_LIMIT), 1), MAX_LIMIT);
+        long start = Math.max(toLong(parameters.get("page_token"), 0), 0);
+        int end = (int)Math.min(start + limit, items.size());
+        Map<String, Object> page = new LinkedHashMap<String, Object>();
+        page.put("items", (start < end) ? items.subList((int)start, end) : new ArrayList<Object>());
+        if (end < items.size()) {
+            StringBuilder nextPage = new StringBuilder("/v2/").append(requestPath).append("?limit=").append(limit).append("&page_token=").append(end);
+            /* the next pages are filtered like the first one */
+            for (String parameter : new String[] { "where", "include" }) {
+                String value = parameters.get(parameter);
+                if (value == null)
+                    continue;
+                try {
+                    nextPage.append('&').append(parameter).append('=').append(URLEncoder.encode(value, "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            page.put("next_page", nextPage.toString());
+        }
+        return Reply.ok(page);
+    }
+
+    /**
+     * Converts a JSON number or a query parameter to a long
+     * @param value The value
+     * @param defaultValue The value to use when it is missing or not a number
+     * @return the long
+     */
+    private static long toLong(Object value, long defaultValue) {
+        if (value instanceof Number)
+            return ((Number)value).longValue();
+        try {
+            return (value != null) ? Long.parseLong(value.toString()) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}